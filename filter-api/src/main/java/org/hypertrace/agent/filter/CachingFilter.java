@@ -0,0 +1,113 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import org.hypertrace.agent.filter.DecisionCache.Fingerprint;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
+
+/**
+ * Serves the request header decisions of a filter from the {@link DecisionCache}. The body is
+ * always evaluated by the filter.
+ */
+class CachingFilter implements Filter {
+
+  private final Filter delegate;
+  private final String[] headerKeys;
+  private final DecisionCache cache;
+
+  CachingFilter(Filter delegate, Set<String> headerKeys, DecisionCache cache) {
+    this.delegate = delegate;
+    this.headerKeys = headerKeys.toArray(new String[0]);
+    this.cache = cache;
+  }
+
+  Filter getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public boolean evaluateRequestHeaders(Span span, Map<String, String> headers) {
+    Fingerprint fingerprint = fingerprint(headers);
+    Decision cached = cache.get(fingerprint);
+    if (cached != null) {
+      return cached.isBlock();
+    }
+    boolean block = delegate.evaluateRequestHeaders(span, headers);
+    cache.put(fingerprint, Decision.of(block));
+    return block;
+  }
+
+  @Override
+  public CompletionStage<Decision> evaluateRequestHeadersAsync(
+      Span span, Map<String, String> headers) {
+    Fingerprint fingerprint = fingerprint(headers);
+    Decision cached = cache.get(fingerprint);
+    if (cached != null) {
+      return CompletableFuture.completedFuture(cached);
+    }
+    // a failed evaluation is not cached
+    return delegate
+        .evaluateRequestHeadersAsync(span, headers)
+        .thenApply(
+            decision -> {
+              cache.put(fingerprint, decision);
+              return decision;
+            });
+  }
+
+  @Override
+  public Set<String> getDecisionHeaderKeys() {
+    return delegate.getDecisionHeaderKeys();
+  }
+
+  @Override
+  public int getPriority() {
+    return delegate.getPriority();
+  }
+
+  @Override
+  public boolean evaluateRequestBody(Span span, String body) {
+    return delegate.evaluateRequestBody(span, body);
+  }
+
+  @Override
+  public boolean onRequestBodyChunk(Span span, ByteBuffer chunk, Charset charset) {
+    return delegate.onRequestBodyChunk(span, chunk, charset);
+  }
+
+  @Override
+  public boolean onRequestBodyEnd(Span span) {
+    return delegate.onRequestBodyEnd(span);
+  }
+
+  private Fingerprint fingerprint(Map<String, String> headers) {
+    // lookups only, a HeadersView does not copy the headers for them
+    String[] values = new String[headerKeys.length];
+    for (int i = 0; i < headerKeys.length; i++) {
+      values[i] = headers.get(headerKeys[i]);
+    }
+    return new Fingerprint(delegate, values);
+  }
+}
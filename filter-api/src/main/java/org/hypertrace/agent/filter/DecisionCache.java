@@ -0,0 +1,172 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
+
+/**
+ * Bounded cache of the request header decisions of filters which declared the headers they depend
+ * on, see {@link Filter#getDecisionHeaderKeys()}.
+ *
+ * <p>Decisions expire after the TTL. When the cache is full, expired decisions are evicted and a
+ * new decision is not cached if none has expired.
+ */
+public final class DecisionCache {
+
+  static final long DEFAULT_TTL_MILLIS = 5000;
+  static final int DEFAULT_MAX_ENTRIES = 10_000;
+
+  private final long ttlNanos;
+  private final int maxEntries;
+  private final Map<Fingerprint, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  // full cache of unexpired decisions is scanned at most once per quarter of the TTL
+  private volatile long nextEvictionNanos;
+
+  DecisionCache(long ttlNanos, int maxEntries) {
+    this.ttlNanos = ttlNanos;
+    this.maxEntries = maxEntries;
+    this.nextEvictionNanos = System.nanoTime();
+  }
+
+  /** @return cache configured by the environment or null if caching is disabled */
+  static DecisionCache create() {
+    long ttlMillis =
+        longProperty(EnvironmentConfig.FILTER_DECISION_CACHE_TTL_MILLIS, DEFAULT_TTL_MILLIS);
+    long maxEntries =
+        longProperty(EnvironmentConfig.FILTER_DECISION_CACHE_MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+    if (ttlMillis <= 0 || maxEntries <= 0) {
+      return null;
+    }
+    return new DecisionCache(
+        TimeUnit.MILLISECONDS.toNanos(ttlMillis), (int) Math.min(maxEntries, Integer.MAX_VALUE));
+  }
+
+  /** Number of decisions served from the cache. */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /** Number of evaluations of cacheable filters which were not served from the cache. */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  /** @return cached decision or null if there is none */
+  Decision get(Fingerprint fingerprint) {
+    Entry entry = entries.get(fingerprint);
+    if (entry != null) {
+      if (System.nanoTime() - entry.expiresNanos < 0) {
+        hits.incrementAndGet();
+        return entry.decision;
+      }
+      entries.remove(fingerprint, entry);
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  void put(Fingerprint fingerprint, Decision decision) {
+    long now = System.nanoTime();
+    if (entries.size() >= maxEntries && !evictExpired(now)) {
+      return;
+    }
+    entries.put(fingerprint, new Entry(decision, now + ttlNanos));
+  }
+
+  private boolean evictExpired(long now) {
+    if (now - nextEvictionNanos < 0) {
+      return false;
+    }
+    nextEvictionNanos = now + ttlNanos / 4;
+    boolean evicted = false;
+    for (Map.Entry<Fingerprint, Entry> entry : entries.entrySet()) {
+      if (now - entry.getValue().expiresNanos >= 0
+          && entries.remove(entry.getKey(), entry.getValue())) {
+        evicted = true;
+      }
+    }
+    return evicted;
+  }
+
+  private static long longProperty(String name, long defaultValue) {
+    String value = EnvironmentConfig.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Identifies a filter and the values of the headers it depends on. The values are compared as
+   * well, a hash collision must not return the decision of another request.
+   */
+  static final class Fingerprint {
+    private final Filter filter;
+    private final String[] values;
+    private final int hash;
+
+    Fingerprint(Filter filter, String[] values) {
+      this.filter = filter;
+      this.values = values;
+      this.hash = 31 * System.identityHashCode(filter) + Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      Fingerprint other = (Fingerprint) o;
+      return filter == other.filter && hash == other.hash && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Entry {
+    final Decision decision;
+    final long expiresNanos;
+
+    Entry(Decision decision, long expiresNanos) {
+      this.decision = decision;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+}
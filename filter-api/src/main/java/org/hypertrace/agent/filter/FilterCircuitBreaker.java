@@ -0,0 +1,216 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hypertrace.agent.filter.api.Decision;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Enforces the evaluation time budget of a filter. A filter which exceeds the budget {@code
+ * threshold} times in a row is skipped for the cooldown period, the requests are allowed meanwhile.
+ * After the cooldown a single evaluation over the budget trips the breaker again.
+ *
+ * <p>A synchronous evaluation cannot be interrupted, therefore it is counted when it returns. A
+ * filter which hangs is detected by the following evaluations, which find an evaluation in flight
+ * and none completed within the budget. An asynchronous decision which is not complete within the
+ * budget allows the request.
+ */
+public final class FilterCircuitBreaker {
+
+  private static final Logger logger = LoggerFactory.getLogger(FilterCircuitBreaker.class);
+
+  static final AttributeKey<String> FILTER_TIMEOUT =
+      AttributeKey.stringKey("hypertrace.filter.timeout");
+  static final AttributeKey<String> FILTER_TRIPPED =
+      AttributeKey.stringKey("hypertrace.filter.tripped");
+  static final AttributeKey<String> FILTER_SKIPPED =
+      AttributeKey.stringKey("hypertrace.filter.skipped");
+
+  private static volatile ScheduledThreadPoolExecutor deadlineExecutor;
+
+  private final String filterName;
+  private final long timeoutNanos;
+  private final int threshold;
+  private final long cooldownNanos;
+
+  private final AtomicInteger consecutiveTimeouts = new AtomicInteger();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // start of the first evaluation in flight or end of the last completed one
+  private volatile long progressNanos;
+  private volatile boolean open;
+  private volatile long openUntilNanos;
+
+  private final AtomicLong timeouts = new AtomicLong();
+  private final AtomicLong trips = new AtomicLong();
+  private final AtomicLong skippedEvaluations = new AtomicLong();
+
+  FilterCircuitBreaker(String filterName, long timeoutNanos, int threshold, long cooldownNanos) {
+    this.filterName = filterName;
+    this.timeoutNanos = timeoutNanos;
+    this.threshold = Math.max(threshold, 1);
+    this.cooldownNanos = cooldownNanos;
+  }
+
+  /** Number of evaluations which exceeded the time budget. */
+  public long getTimeouts() {
+    return timeouts.get();
+  }
+
+  /** Number of times the filter has been skipped for a cooldown period. */
+  public long getTrips() {
+    return trips.get();
+  }
+
+  /** Number of evaluations skipped because the breaker was open. */
+  public long getSkippedEvaluations() {
+    return skippedEvaluations.get();
+  }
+
+  public boolean isOpen() {
+    return open;
+  }
+
+  /**
+   * Called before the evaluation, {@link #release(Span, long, long)} has to follow if the filter
+   * may be evaluated.
+   *
+   * @return false if the filter has to be skipped
+   */
+  boolean tryAcquire(Span span, long nowNanos) {
+    if (!open && inFlight.get() > 0 && nowNanos - progressNanos > timeoutNanos) {
+      // an evaluation hangs
+      onTimeout(span, nowNanos);
+    }
+    if (open) {
+      if (nowNanos - openUntilNanos < 0) {
+        skippedEvaluations.incrementAndGet();
+        span.setAttribute(FILTER_SKIPPED, filterName);
+        return false;
+      }
+      // half open, the next timeout trips the breaker again
+      consecutiveTimeouts.set(threshold - 1);
+      progressNanos = nowNanos;
+      open = false;
+    }
+    if (inFlight.getAndIncrement() == 0) {
+      progressNanos = nowNanos;
+    }
+    return true;
+  }
+
+  void release(Span span, long startNanos, long endNanos) {
+    progressNanos = endNanos;
+    inFlight.decrementAndGet();
+    if (endNanos - startNanos > timeoutNanos) {
+      onTimeout(span, endNanos);
+    } else {
+      consecutiveTimeouts.set(0);
+    }
+  }
+
+  /**
+   * Bounds the asynchronous decision by the time budget and releases the evaluation when the
+   * decision completes or the budget is exceeded, whichever comes first.
+   */
+  CompletionStage<Decision> withDeadline(
+      Span span, long startNanos, CompletionStage<Decision> decision) {
+    CompletableFuture<Decision> future = decision.toCompletableFuture();
+    if (future.isDone()) {
+      release(span, startNanos, System.nanoTime());
+      return future;
+    }
+    CompletableFuture<Decision> bounded = new CompletableFuture<>();
+    long remainingNanos = Math.max(0, timeoutNanos - (System.nanoTime() - startNanos));
+    ScheduledFuture<?> deadline =
+        deadlineExecutor()
+            .schedule(
+                () -> {
+                  if (bounded.complete(Decision.ALLOW)) {
+                    release(span, startNanos, System.nanoTime());
+                  }
+                },
+                remainingNanos + 1,
+                TimeUnit.NANOSECONDS);
+    future.whenComplete(
+        (result, t) -> {
+          deadline.cancel(false);
+          boolean completed =
+              t != null ? bounded.completeExceptionally(t) : bounded.complete(result);
+          if (completed) {
+            release(span, startNanos, System.nanoTime());
+          }
+        });
+    return bounded;
+  }
+
+  private void onTimeout(Span span, long nowNanos) {
+    timeouts.incrementAndGet();
+    span.setAttribute(FILTER_TIMEOUT, filterName);
+    if (consecutiveTimeouts.incrementAndGet() < threshold) {
+      return;
+    }
+    synchronized (this) {
+      if (open) {
+        return;
+      }
+      openUntilNanos = nowNanos + cooldownNanos;
+      open = true;
+      consecutiveTimeouts.set(0);
+    }
+    trips.incrementAndGet();
+    span.setAttribute(FILTER_TRIPPED, filterName);
+    logger.warn(
+        "Filter {} exceeded its time budget of {} ms {} times in a row, skipping it for {} ms",
+        filterName,
+        TimeUnit.NANOSECONDS.toMillis(timeoutNanos),
+        threshold,
+        TimeUnit.NANOSECONDS.toMillis(cooldownNanos));
+  }
+
+  private static ScheduledThreadPoolExecutor deadlineExecutor() {
+    ScheduledThreadPoolExecutor executor = deadlineExecutor;
+    if (executor == null) {
+      synchronized (FilterCircuitBreaker.class) {
+        executor = deadlineExecutor;
+        if (executor == null) {
+          executor =
+              new ScheduledThreadPoolExecutor(
+                  1,
+                  runnable -> {
+                    Thread thread = new Thread(runnable, "hypertrace-filter-deadline");
+                    thread.setDaemon(true);
+                    return thread;
+                  });
+          // most deadlines are cancelled, do not keep them in the queue
+          executor.setRemoveOnCancelPolicy(true);
+          deadlineExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+}
@@ -21,8 +21,12 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import org.hypertrace.agent.core.config.EnvironmentConfig;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.filter.api.Filter;
@@ -43,7 +47,9 @@ public class FilterRegistry {
 
   private FilterRegistry() {}
 
-  private static Filter filter;
+  private static volatile Filter filter;
+
+  private static final DecisionCache decisionCache = DecisionCache.create();
 
   /**
    * Get {@link Filter}
@@ -65,6 +71,68 @@ public class FilterRegistry {
     return filter;
   }
 
+  /**
+   * Returns true if at least one filter is registered. Instrumentations check it before collecting
+   * the data for the filter.
+   */
+  public static boolean hasFilters() {
+    Filter filter = getFilter();
+    if (filter instanceof MultiFilter) {
+      return !((MultiFilter) filter).isEmpty();
+    }
+    return filter != null;
+  }
+
+  /**
+   * Returns true if at least one registered filter evaluates the request body. Instrumentations
+   * which hold the request until the filters have evaluated its body pass it on right away
+   * otherwise.
+   */
+  public static boolean evaluatesRequestBody() {
+    Filter filter = getFilter();
+    if (filter instanceof MultiFilter) {
+      return ((MultiFilter) filter).evaluatesRequestBody();
+    }
+    return filter != null;
+  }
+
+  /**
+   * Returns the cache of the request header decisions, e.g. to report its hit and miss counts.
+   *
+   * @return the cache or null if caching is disabled
+   */
+  public static DecisionCache getDecisionCache() {
+    return decisionCache;
+  }
+
+  /**
+   * Returns the latencies of the registered filters, e.g. to find the filter which slows down the
+   * requests.
+   *
+   * @return latency histograms in evaluation order, keyed by the class name of the filter
+   */
+  public static Map<String, LatencyHistogram> getFilterLatencies() {
+    Filter filter = getFilter();
+    if (filter instanceof MultiFilter) {
+      return ((MultiFilter) filter).getLatencies();
+    }
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Returns the circuit breakers of the registered filters, which count the evaluations over the
+   * time budget and the trips. Empty if no budget is set.
+   *
+   * @return circuit breakers in evaluation order, keyed by the class name of the filter
+   */
+  public static Map<String, FilterCircuitBreaker> getFilterCircuitBreakers() {
+    Filter filter = getFilter();
+    if (filter instanceof MultiFilter) {
+      return ((MultiFilter) filter).getCircuitBreakers();
+    }
+    return Collections.emptyMap();
+  }
+
   private static Filter load() {
     ClassLoader cl = loadJars();
     ServiceLoader<FilterProvider> providers = ServiceLoader.load(FilterProvider.class, cl);
@@ -76,9 +144,40 @@ public class FilterRegistry {
         continue;
       }
       Filter filter = provider.create();
-      filters.add(filter);
+      filters.add(withDecisionCache(filter));
+    }
+    // stop at the first block unless disabled explicitly
+    String shortCircuit = EnvironmentConfig.getProperty(EnvironmentConfig.FILTER_SHORT_CIRCUIT);
+    return new MultiFilter(
+        filters,
+        !"false".equalsIgnoreCase(shortCircuit),
+        TimeUnit.MILLISECONDS.toNanos(
+            longProperty(EnvironmentConfig.FILTER_EVALUATION_TIMEOUT_MILLIS, 0)),
+        (int) longProperty(EnvironmentConfig.FILTER_CIRCUIT_BREAKER_THRESHOLD, 5),
+        TimeUnit.MILLISECONDS.toNanos(
+            longProperty(EnvironmentConfig.FILTER_CIRCUIT_BREAKER_COOLDOWN_MILLIS, 30_000)));
+  }
+
+  private static long longProperty(String name, long defaultValue) {
+    String value = EnvironmentConfig.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long parsed = Long.parseLong(value.trim());
+      return parsed >= 0 ? parsed : defaultValue;
+    } catch (NumberFormatException e) {
+      logger.warn("Invalid value {} of {}, using {}", value, name, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  private static Filter withDecisionCache(Filter filter) {
+    Set<String> headerKeys = filter.getDecisionHeaderKeys();
+    if (decisionCache == null || headerKeys == null) {
+      return filter;
     }
-    return new MultiFilter(filters);
+    return new CachingFilter(filter, headerKeys, decisionCache);
   }
 
   private static ClassLoader loadJars() {
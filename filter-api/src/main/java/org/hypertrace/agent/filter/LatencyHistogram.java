@@ -0,0 +1,102 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies with power of two buckets, bucket {@code i} counts latencies
+ * between {@code 2^i} and {@code 2^(i+1)} nanoseconds. Percentiles are therefore accurate to a
+ * factor of two, which is enough to find the slow filter.
+ */
+public final class LatencyHistogram {
+
+  // the last bucket counts everything above 2^39 ns (~9 minutes)
+  static final int BUCKETS = 40;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  void record(long nanos) {
+    if (nanos < 0) {
+      nanos = 0;
+    }
+    buckets.incrementAndGet(bucket(nanos));
+    totalNanos.addAndGet(nanos);
+    long max;
+    while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {}
+  }
+
+  static int bucket(long nanos) {
+    int bucket = 63 - Long.numberOfLeadingZeros(nanos | 1);
+    return Math.min(bucket, BUCKETS - 1);
+  }
+
+  public long getCount() {
+    long count = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      count += buckets.get(i);
+    }
+    return count;
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  /** @return counts of the buckets, index {@code i} counts latencies from {@code 2^i} ns */
+  public long[] getBucketCounts() {
+    long[] counts = new long[BUCKETS];
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+    }
+    return counts;
+  }
+
+  /**
+   * Returns the upper bound of the bucket which contains the percentile.
+   *
+   * @param percentile between 0 and 100, e.g. 99
+   * @return latency in nanoseconds or 0 if nothing has been recorded
+   */
+  public long getPercentileNanos(double percentile) {
+    long[] counts = getBucketCounts();
+    long count = 0;
+    for (long bucketCount : counts) {
+      count += bucketCount;
+    }
+    if (count == 0) {
+      return 0;
+    }
+    long rank = (long) Math.ceil(count * Math.min(Math.max(percentile, 0), 100) / 100);
+    long seen = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      seen += counts[i];
+      if (seen >= Math.max(rank, 1)) {
+        // the max is tighter than the bucket bound for the highest latencies
+        return Math.min((2L << i) - 1, getMaxNanos());
+      }
+    }
+    return getMaxNanos();
+  }
+}
@@ -17,55 +17,243 @@
 package org.hypertrace.agent.filter;
 
 import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.hypertrace.agent.filter.api.Decision;
 import org.hypertrace.agent.filter.api.Filter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Evaluates the registered filters in the order of their {@link Filter#getPriority() priority}.
+ * With short circuiting the evaluation stops at the first filter which blocks. The latency of every
+ * filter is recorded in a {@link LatencyHistogram}. If an evaluation time budget is set, every
+ * filter gets a {@link FilterCircuitBreaker} which skips it when it exceeds the budget repeatedly.
+ */
 class MultiFilter implements Filter {
 
   private static final Logger logger = LoggerFactory.getLogger(MultiFilter.class);
 
-  private final List<Filter> filters;
+  private final FilterEntry[] filters;
+  private final boolean shortCircuit;
+  private final boolean evaluatesRequestBody;
 
   public MultiFilter(List<Filter> filters) {
-    this.filters = filters;
+    this(filters, true);
+  }
+
+  MultiFilter(List<Filter> filters, boolean shortCircuit) {
+    this(filters, shortCircuit, 0, 0, 0);
+  }
+
+  /**
+   * @param timeoutNanos evaluation time budget of a filter, 0 disables the circuit breakers
+   * @param tripThreshold number of consecutive evaluations over the budget which trip the breaker
+   * @param cooldownNanos time for which a tripped filter is skipped
+   */
+  MultiFilter(
+      List<Filter> filters,
+      boolean shortCircuit,
+      long timeoutNanos,
+      int tripThreshold,
+      long cooldownNanos) {
+    List<Filter> sorted = new ArrayList<>(filters);
+    // the sort is stable, filters of the same priority keep the registration order
+    sorted.sort((first, second) -> Integer.compare(second.getPriority(), first.getPriority()));
+    this.filters = new FilterEntry[sorted.size()];
+    boolean evaluatesRequestBody = false;
+    for (int i = 0; i < this.filters.length; i++) {
+      this.filters[i] =
+          new FilterEntry(sorted.get(i), timeoutNanos, tripThreshold, cooldownNanos);
+      evaluatesRequestBody |= this.filters[i].evaluatesRequestBody;
+    }
+    this.shortCircuit = shortCircuit;
+    this.evaluatesRequestBody = evaluatesRequestBody;
+  }
+
+  boolean isEmpty() {
+    return filters.length == 0;
+  }
+
+  /** @return true if a filter overrides one of the request body methods of {@link Filter} */
+  boolean evaluatesRequestBody() {
+    return evaluatesRequestBody;
+  }
+
+  /** @return latencies of the filters in evaluation order, keyed by the filter class name */
+  Map<String, LatencyHistogram> getLatencies() {
+    return byName(entry -> entry.latency);
+  }
+
+  /** @return circuit breakers of the filters in evaluation order, keyed by the filter class name */
+  Map<String, FilterCircuitBreaker> getCircuitBreakers() {
+    return byName(entry -> entry.circuitBreaker);
+  }
+
+  private <T> Map<String, T> byName(Function<FilterEntry, T> value) {
+    Map<String, T> values = new LinkedHashMap<>();
+    for (int i = 0; i < filters.length; i++) {
+      String name = filters[i].name;
+      T filterValue = value.apply(filters[i]);
+      if (filterValue != null) {
+        values.put(values.containsKey(name) ? name + "#" + i : name, filterValue);
+      }
+    }
+    return values;
   }
 
   @Override
   public boolean evaluateRequestHeaders(Span span, Map<String, String> headers) {
-    boolean shouldBlock = false;
-    for (Filter filter : filters) {
+    return evaluate(
+        span, "Request headers", filter -> filter.evaluateRequestHeaders(span, headers));
+  }
+
+  @Override
+  public CompletionStage<Decision> evaluateRequestHeadersAsync(
+      Span span, Map<String, String> headers) {
+    CompletableFuture<Decision> result = new CompletableFuture<>();
+    AtomicBoolean blocked = new AtomicBoolean();
+    // the extra count is released after all filters have been started
+    AtomicInteger pending = new AtomicInteger(filters.length + 1);
+    for (FilterEntry entry : filters) {
+      if (shortCircuit && result.isDone()) {
+        // a preceding filter has blocked already
+        break;
+      }
+      long start = System.nanoTime();
+      if (entry.circuitBreaker != null && !entry.circuitBreaker.tryAcquire(span, start)) {
+        // the skipped filter allows the request
+        completeIfDone(result, pending, blocked);
+        continue;
+      }
+      CompletionStage<Decision> decision;
       try {
-        if (filter.evaluateRequestHeaders(span, headers)) {
-          shouldBlock = true;
-        }
+        decision = entry.filter.evaluateRequestHeadersAsync(span, headers);
       } catch (Throwable t) {
         logger.warn(
-            "Throwable thrown while evaluating Request headers for filter {}",
-            filter.getClass().getName(),
-            t);
+            "Throwable thrown while evaluating Request headers for filter {}", entry.name, t);
+        decision = CompletableFuture.completedFuture(Decision.ALLOW);
+      }
+      if (entry.circuitBreaker != null) {
+        decision = entry.circuitBreaker.withDeadline(span, start, decision);
       }
+      decision.whenComplete(
+          (filterDecision, t) -> {
+            entry.latency.record(System.nanoTime() - start);
+            if (t != null) {
+              logger.warn("Request headers evaluation failed for filter {}", entry.name, t);
+            } else if (filterDecision == Decision.BLOCK) {
+              blocked.set(true);
+              if (shortCircuit) {
+                result.complete(Decision.BLOCK);
+              }
+            }
+            completeIfDone(result, pending, blocked);
+          });
+    }
+    completeIfDone(result, pending, blocked);
+    return result;
+  }
+
+  private static void completeIfDone(
+      CompletableFuture<Decision> result, AtomicInteger pending, AtomicBoolean blocked) {
+    if (pending.decrementAndGet() == 0) {
+      result.complete(Decision.of(blocked.get()));
     }
-    return shouldBlock;
   }
 
   @Override
   public boolean evaluateRequestBody(Span span, String body) {
+    return evaluate(span, "Request body", filter -> filter.evaluateRequestBody(span, body));
+  }
+
+  @Override
+  public boolean onRequestBodyChunk(Span span, ByteBuffer chunk, Charset charset) {
+    // every filter reads the chunk from its position
+    return evaluate(
+        span,
+        "Request body chunk",
+        filter -> filter.onRequestBodyChunk(span, chunk.duplicate(), charset));
+  }
+
+  @Override
+  public boolean onRequestBodyEnd(Span span) {
+    return evaluate(span, "Request body end", filter -> filter.onRequestBodyEnd(span));
+  }
+
+  private boolean evaluate(Span span, String what, Evaluation evaluation) {
     boolean shouldBlock = false;
-    for (Filter filter : filters) {
+    for (FilterEntry entry : filters) {
+      long start = System.nanoTime();
+      if (entry.circuitBreaker != null && !entry.circuitBreaker.tryAcquire(span, start)) {
+        continue;
+      }
       try {
-        if (filter.evaluateRequestBody(span, body)) {
+        if (evaluation.evaluate(entry.filter)) {
           shouldBlock = true;
         }
       } catch (Throwable t) {
-        logger.warn(
-            "Throwable thrown while evaluating Request body for filter {}",
-            filter.getClass().getName(),
-            t);
+        logger.warn("Throwable thrown while evaluating {} for filter {}", what, entry.name, t);
+      } finally {
+        long end = System.nanoTime();
+        entry.latency.record(end - start);
+        if (entry.circuitBreaker != null) {
+          entry.circuitBreaker.release(span, start, end);
+        }
+      }
+      if (shouldBlock && shortCircuit) {
+        break;
       }
     }
     return shouldBlock;
   }
+
+  private interface Evaluation {
+    boolean evaluate(Filter filter);
+  }
+
+  private static final class FilterEntry {
+    final Filter filter;
+    final String name;
+    final LatencyHistogram latency = new LatencyHistogram();
+    final FilterCircuitBreaker circuitBreaker;
+    final boolean evaluatesRequestBody;
+
+    FilterEntry(Filter filter, long timeoutNanos, int tripThreshold, long cooldownNanos) {
+      this.filter = filter;
+      Filter named =
+          filter instanceof CachingFilter ? ((CachingFilter) filter).getDelegate() : filter;
+      this.name = named.getClass().getName();
+      this.circuitBreaker =
+          timeoutNanos > 0
+              ? new FilterCircuitBreaker(name, timeoutNanos, tripThreshold, cooldownNanos)
+              : null;
+      this.evaluatesRequestBody = overridesBodyMethods(named.getClass());
+    }
+
+    private static boolean overridesBodyMethods(Class<?> filterClass) {
+      return overrides(filterClass, "evaluateRequestBody", Span.class, String.class)
+          || overrides(
+              filterClass, "onRequestBodyChunk", Span.class, ByteBuffer.class, Charset.class)
+          || overrides(filterClass, "onRequestBodyEnd", Span.class);
+    }
+
+    private static boolean overrides(
+        Class<?> filterClass, String name, Class<?>... parameterTypes) {
+      try {
+        return filterClass.getMethod(name, parameterTypes).getDeclaringClass() != Filter.class;
+      } catch (NoSuchMethodException e) {
+        return true;
+      }
+    }
+  }
 }
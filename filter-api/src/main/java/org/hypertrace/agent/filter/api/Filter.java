@@ -17,7 +17,12 @@
 package org.hypertrace.agent.filter.api;
 
 import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import org.hypertrace.agent.filter.FilterRegistry;
 
 /**
@@ -29,16 +34,87 @@ public interface Filter {
   /**
    * Evaluate the execution.
    *
-   * @param headers are used for blocking evaluation.
+   * @param headers are used for blocking evaluation. The keys are span attribute names of the
+   *     headers. The map is read-only and might be a {@link HeadersView} over the headers of the
+   *     request, it should not be used after the call returns.
    * @return filter result
    */
   boolean evaluateRequestHeaders(Span span, Map<String, String> headers);
 
   /**
-   * Evaluate the execution.
+   * Evaluate the execution without blocking the calling thread, e.g. when the filter consults a
+   * remote policy engine. Event loop servers call this method instead of {@link
+   * #evaluateRequestHeaders(Span, Map)} and stop reading from the connection until the decision
+   * completes. The default implementation evaluates the headers synchronously.
+   *
+   * @param headers same as for {@link #evaluateRequestHeaders(Span, Map)}, but valid until the
+   *     returned stage completes
+   * @return stage completed with the decision, a failed stage allows the request
+   */
+  default CompletionStage<Decision> evaluateRequestHeadersAsync(
+      Span span, Map<String, String> headers) {
+    return CompletableFuture.completedFuture(Decision.of(evaluateRequestHeaders(span, headers)));
+  }
+
+  /**
+   * Returns the keys of the headers map which {@link #evaluateRequestHeaders(Span, Map)} depends
+   * on. A filter which returns them declares that its decision is a pure function of these headers,
+   * the registry then caches the decisions keyed by their values and the filter is not called for
+   * a cached request. The filter should not annotate the span in that case.
+   *
+   * @return attribute names of the headers, e.g. {@code http.request.header.authorization}, or
+   *     null if the decisions must not be cached
+   */
+  default Set<String> getDecisionHeaderKeys() {
+    return null;
+  }
+
+  /**
+   * Returns the priority of the filter. Filters with a higher priority are evaluated first, filters
+   * of the same priority in the order of registration. Since the evaluation stops at the first
+   * filter which blocks, cheap filters and filters which block often should have a higher priority.
+   *
+   * @return priority of the filter, 0 by default
+   */
+  default int getPriority() {
+    return 0;
+  }
+
+  /**
+   * Evaluate the execution. Instrumentations hold the request until its body has been evaluated
+   * only if a registered filter overrides this method, {@link #onRequestBodyChunk(Span, ByteBuffer,
+   * Charset)} or {@link #onRequestBodyEnd(Span)}.
    *
    * @param body request body
+   * @return filter result, false by default
+   */
+  default boolean evaluateRequestBody(Span span, String body) {
+    return false;
+  }
+
+  /**
+   * Evaluate a chunk of the request body as it is read, without waiting for the whole body. The
+   * chunks of a request are passed in order and can be correlated by the span, {@link
+   * #onRequestBodyEnd(Span)} is called after the last one.
+   *
+   * <p>Instrumentations which can still reject the request block it when the filter returns true
+   * and do not pass further chunks. The servlet input stream is consumed by the application, there
+   * the filter can only annotate the span.
+   *
+   * @param chunk read-only bytes between position and limit, valid only during the call
+   * @param charset charset of the request body
+   * @return filter result
+   */
+  default boolean onRequestBodyChunk(Span span, ByteBuffer chunk, Charset charset) {
+    return false;
+  }
+
+  /**
+   * Evaluate the execution after the last chunk of the request body.
+   *
    * @return filter result
    */
-  boolean evaluateRequestBody(Span span, String body);
+  default boolean onRequestBodyEnd(Span span) {
+    return false;
+  }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter.api;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * Read-only view of request headers passed to {@link Filter#evaluateRequestHeaders}. The keys are
+ * the span attribute names of the headers, e.g. {@code http.request.header.content-type}.
+ *
+ * <p>Lookups by key go straight to the headers of the container, the headers are copied only if a
+ * filter iterates the view. The view is valid only during the filter call, or until the stage
+ * returned by {@link Filter#evaluateRequestHeadersAsync} completes.
+ */
+public abstract class HeadersView extends AbstractMap<String, String> {
+
+  private final String prefix;
+  private Map<String, String> copy;
+
+  /** @param prefix prefix of the keys, e.g. {@code http.request.header.} */
+  protected HeadersView(String prefix) {
+    this.prefix = prefix;
+  }
+
+  /**
+   * Returns the value of a header.
+   *
+   * @param name lower case header name without the prefix
+   * @return header value or null if the header is not present
+   */
+  protected abstract String getHeader(String name);
+
+  /** Passes every header to the consumer, the key has to be the attribute name of the header. */
+  protected abstract void forEachHeader(BiConsumer<String, String> consumer);
+
+  @Override
+  public String get(Object key) {
+    if (copy != null) {
+      return copy.get(key);
+    }
+    if (!(key instanceof String)) {
+      return null;
+    }
+    String attributeName = (String) key;
+    if (!attributeName.startsWith(prefix)) {
+      return null;
+    }
+    return getHeader(attributeName.substring(prefix.length()));
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    if (copy == null) {
+      Map<String, String> headers = new LinkedHashMap<>();
+      forEachHeader(headers::put);
+      copy = Collections.unmodifiableMap(headers);
+    }
+    return copy.entrySet();
+  }
+}
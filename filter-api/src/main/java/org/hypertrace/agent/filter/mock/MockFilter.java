@@ -17,10 +17,20 @@
 package org.hypertrace.agent.filter.mock;
 
 import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.filter.api.Decision;
 import org.hypertrace.agent.filter.api.Filter;
 
-/** Mock filter, blocks execution if an attribute with "mockblock" key is present. */
+/**
+ * Mock filter, blocks execution if an attribute with "mockblock" key is present or if a chunk of
+ * the request body contains "mockblock". With a "mockdelay" attribute the asynchronous decision
+ * completes later on another thread.
+ */
 class MockFilter implements Filter {
 
   MockFilter() {}
@@ -35,8 +45,36 @@ class MockFilter implements Filter {
     return false;
   }
 
+  @Override
+  public CompletionStage<Decision> evaluateRequestHeadersAsync(
+      Span span, Map<String, String> headers) {
+    Decision decision = Decision.of(evaluateRequestHeaders(span, headers));
+    if (headers.containsKey("http.request.header.mockdelay")
+        || headers.containsKey("rpc.request.metadata.mockdelay")) {
+      return CompletableFuture.supplyAsync(
+          () -> {
+            try {
+              TimeUnit.MILLISECONDS.sleep(50);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            return decision;
+          });
+    }
+    return CompletableFuture.completedFuture(decision);
+  }
+
   @Override
   public boolean evaluateRequestBody(Span span, String body) {
     return false;
   }
+
+  @Override
+  public boolean onRequestBodyChunk(Span span, ByteBuffer chunk, Charset charset) {
+    if (charset.decode(chunk).toString().contains("mockblock")) {
+      span.setAttribute("hypertrace.mock.filter.result", "true");
+      return true;
+    }
+    return false;
+  }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CachingFilterTest {
+
+  private static final String AUTHORIZATION = "http.request.header.authorization";
+
+  @Test
+  public void cachesByDeclaredHeaders() {
+    CountingFilter filter = new CountingFilter();
+    DecisionCache cache = new DecisionCache(TimeUnit.MINUTES.toNanos(1), 10);
+    CachingFilter cachingFilter = new CachingFilter(filter, filter.getDecisionHeaderKeys(), cache);
+
+    Assertions.assertTrue(cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers("bad")));
+    // other headers are not part of the fingerprint
+    Map<String, String> headers = headers("bad");
+    headers.put("http.request.header.user-agent", "test");
+    Assertions.assertTrue(cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers));
+    Assertions.assertFalse(cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers("ok")));
+
+    Assertions.assertEquals(2, filter.evaluations);
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals(2, cache.getMisses());
+  }
+
+  @Test
+  public void asyncDecisionIsCachedOnCompletion() {
+    CountingFilter filter = new CountingFilter();
+    DecisionCache cache = new DecisionCache(TimeUnit.MINUTES.toNanos(1), 10);
+    CachingFilter cachingFilter = new CachingFilter(filter, filter.getDecisionHeaderKeys(), cache);
+
+    CompletionStage<Decision> first =
+        cachingFilter.evaluateRequestHeadersAsync(Span.getInvalid(), headers("bad"));
+    Assertions.assertEquals(0, cache.size());
+    filter.pending.complete(Decision.BLOCK);
+    Assertions.assertEquals(Decision.BLOCK, first.toCompletableFuture().getNow(null));
+
+    CompletionStage<Decision> second =
+        cachingFilter.evaluateRequestHeadersAsync(Span.getInvalid(), headers("bad"));
+    Assertions.assertEquals(Decision.BLOCK, second.toCompletableFuture().getNow(null));
+    Assertions.assertEquals(1, filter.asyncEvaluations);
+  }
+
+  @Test
+  public void expiredAndFull() {
+    CountingFilter filter = new CountingFilter();
+    DecisionCache cache = new DecisionCache(0, 1);
+    CachingFilter cachingFilter = new CachingFilter(filter, filter.getDecisionHeaderKeys(), cache);
+
+    cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers("bad"));
+    cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers("bad"));
+    cachingFilter.evaluateRequestHeaders(Span.getInvalid(), headers("ok"));
+    Assertions.assertEquals(3, filter.evaluations);
+    Assertions.assertEquals(0, cache.getHits());
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  private static Map<String, String> headers(String authorization) {
+    Map<String, String> headers = new HashMap<>();
+    headers.put(AUTHORIZATION, authorization);
+    return headers;
+  }
+
+  static class CountingFilter implements Filter {
+    int evaluations;
+    int asyncEvaluations;
+    final CompletableFuture<Decision> pending = new CompletableFuture<>();
+
+    @Override
+    public boolean evaluateRequestHeaders(Span span, Map<String, String> headers) {
+      evaluations++;
+      return "bad".equals(headers.get(AUTHORIZATION));
+    }
+
+    @Override
+    public CompletionStage<Decision> evaluateRequestHeadersAsync(
+        Span span, Map<String, String> headers) {
+      asyncEvaluations++;
+      return pending;
+    }
+
+    @Override
+    public Set<String> getDecisionHeaderKeys() {
+      return Collections.singleton(AUTHORIZATION);
+    }
+
+    @Override
+    public boolean evaluateRequestBody(Span span, String body) {
+      return false;
+    }
+  }
+}
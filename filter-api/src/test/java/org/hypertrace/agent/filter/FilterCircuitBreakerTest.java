@@ -0,0 +1,112 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class FilterCircuitBreakerTest {
+
+  @Test
+  public void slowFilterIsSkippedAfterThreshold() {
+    SlowFilter filter = new SlowFilter();
+    MultiFilter multiFilter =
+        new MultiFilter(
+            Collections.singletonList(filter),
+            true,
+            TimeUnit.MILLISECONDS.toNanos(1),
+            2,
+            TimeUnit.MINUTES.toNanos(1));
+    FilterCircuitBreaker circuitBreaker =
+        multiFilter.getCircuitBreakers().get(SlowFilter.class.getName());
+
+    Assertions.assertTrue(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertFalse(circuitBreaker.isOpen());
+    Assertions.assertTrue(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertTrue(circuitBreaker.isOpen());
+
+    // fail open
+    Assertions.assertFalse(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertEquals(2, filter.evaluations);
+    Assertions.assertEquals(2, circuitBreaker.getTimeouts());
+    Assertions.assertEquals(1, circuitBreaker.getTrips());
+    Assertions.assertEquals(1, circuitBreaker.getSkippedEvaluations());
+  }
+
+  @Test
+  public void pendingDecisionAllowsAfterDeadline()
+      throws InterruptedException, ExecutionException, TimeoutException {
+    SlowFilter filter = new SlowFilter();
+    filter.decision = new CompletableFuture<>();
+    MultiFilter multiFilter =
+        new MultiFilter(
+            Collections.singletonList(filter),
+            true,
+            TimeUnit.MILLISECONDS.toNanos(10),
+            5,
+            TimeUnit.MINUTES.toNanos(1));
+
+    CompletionStage<Decision> decision =
+        multiFilter.evaluateRequestHeadersAsync(Span.getInvalid(), Collections.emptyMap());
+    Assertions.assertEquals(
+        Decision.ALLOW, decision.toCompletableFuture().get(10, TimeUnit.SECONDS));
+    // the late decision is ignored
+    filter.decision.complete(Decision.BLOCK);
+    Assertions.assertEquals(
+        1, multiFilter.getCircuitBreakers().get(SlowFilter.class.getName()).getTimeouts());
+  }
+
+  static class SlowFilter implements Filter {
+    int evaluations;
+    CompletableFuture<Decision> decision;
+
+    @Override
+    public boolean evaluateRequestHeaders(Span span, Map<String, String> headers) {
+      evaluations++;
+      try {
+        Thread.sleep(5);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return true;
+    }
+
+    @Override
+    public CompletionStage<Decision> evaluateRequestHeadersAsync(
+        Span span, Map<String, String> headers) {
+      return decision != null ? decision : Filter.super.evaluateRequestHeadersAsync(span, headers);
+    }
+
+    @Override
+    public boolean evaluateRequestBody(Span span, String body) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.filter;
+
+import io.opentelemetry.api.trace.Span;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MultiFilterTest {
+
+  private final List<String> evaluated = new ArrayList<>();
+
+  @Test
+  public void evaluatesByPriorityAndStopsAtBlock() {
+    MultiFilter multiFilter =
+        new MultiFilter(
+            Arrays.asList(
+                new TestFilter("expensive", 0, false),
+                new TestFilter("blocking", 10, true),
+                new TestFilter("cheap", 20, false)),
+            true);
+
+    Assertions.assertTrue(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertEquals(Arrays.asList("cheap", "blocking"), evaluated);
+
+    Map<String, LatencyHistogram> latencies = multiFilter.getLatencies();
+    Assertions.assertEquals(3, latencies.size());
+    LatencyHistogram[] histograms = latencies.values().toArray(new LatencyHistogram[0]);
+    Assertions.assertEquals(1, histograms[0].getCount());
+    Assertions.assertEquals(1, histograms[1].getCount());
+    Assertions.assertEquals(0, histograms[2].getCount());
+  }
+
+  @Test
+  public void evaluatesAllWithoutShortCircuit() {
+    MultiFilter multiFilter =
+        new MultiFilter(
+            Arrays.asList(new TestFilter("first", 0, true), new TestFilter("second", 0, false)),
+            false);
+
+    Assertions.assertTrue(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertEquals(Arrays.asList("first", "second"), evaluated);
+  }
+
+  @Test
+  public void asyncBlockCompletesBeforePendingFilters() {
+    TestFilter pending = new TestFilter("pending", 0, false);
+    pending.decision = new CompletableFuture<>();
+    MultiFilter multiFilter =
+        new MultiFilter(Arrays.asList(pending, new TestFilter("blocking", 0, true)), true);
+
+    CompletionStage<Decision> decision =
+        multiFilter.evaluateRequestHeadersAsync(Span.getInvalid(), Collections.emptyMap());
+    Assertions.assertEquals(Decision.BLOCK, decision.toCompletableFuture().getNow(null));
+
+    multiFilter =
+        new MultiFilter(Arrays.asList(pending, new TestFilter("blocking", 0, true)), false);
+    decision = multiFilter.evaluateRequestHeadersAsync(Span.getInvalid(), Collections.emptyMap());
+    Assertions.assertFalse(decision.toCompletableFuture().isDone());
+    pending.decision.complete(Decision.ALLOW);
+    Assertions.assertEquals(Decision.BLOCK, decision.toCompletableFuture().getNow(null));
+  }
+
+  @Test
+  public void asyncCompletesWhenBreakerIsOpen() {
+    MultiFilter multiFilter =
+        new MultiFilter(
+            Collections.singletonList(new FilterCircuitBreakerTest.SlowFilter()),
+            true,
+            TimeUnit.MILLISECONDS.toNanos(1),
+            1,
+            TimeUnit.MINUTES.toNanos(1));
+    Assertions.assertTrue(
+        multiFilter.evaluateRequestHeaders(Span.getInvalid(), Collections.emptyMap()));
+    Assertions.assertTrue(
+        multiFilter
+            .getCircuitBreakers()
+            .get(FilterCircuitBreakerTest.SlowFilter.class.getName())
+            .isOpen());
+
+    CompletionStage<Decision> decision =
+        multiFilter.evaluateRequestHeadersAsync(Span.getInvalid(), Collections.emptyMap());
+    Assertions.assertEquals(Decision.ALLOW, decision.toCompletableFuture().getNow(null));
+  }
+
+  @Test
+  public void evaluatesRequestBodyIfAFilterOverridesBodyMethods() {
+    Filter headersOnly = (span, headers) -> false;
+    Assertions.assertFalse(
+        new MultiFilter(Collections.singletonList(headersOnly)).evaluatesRequestBody());
+    Assertions.assertTrue(
+        new MultiFilter(Arrays.asList(headersOnly, new TestFilter("body", 0, false)))
+            .evaluatesRequestBody());
+  }
+
+  @Test
+  public void percentile() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      histogram.record(1000);
+    }
+    histogram.record(1_000_000);
+
+    Assertions.assertEquals(100, histogram.getCount());
+    Assertions.assertEquals(1_000_000, histogram.getMaxNanos());
+    // 1000 ns is counted in the bucket from 512 to 1023 ns
+    Assertions.assertEquals(1023, histogram.getPercentileNanos(99));
+    Assertions.assertEquals(1_000_000, histogram.getPercentileNanos(100));
+  }
+
+  class TestFilter implements Filter {
+    private final String name;
+    private final int priority;
+    private final boolean block;
+    CompletableFuture<Decision> decision;
+
+    TestFilter(String name, int priority, boolean block) {
+      this.name = name;
+      this.priority = priority;
+      this.block = block;
+    }
+
+    @Override
+    public boolean evaluateRequestHeaders(Span span, Map<String, String> headers) {
+      evaluated.add(name);
+      return block;
+    }
+
+    @Override
+    public CompletionStage<Decision> evaluateRequestHeadersAsync(
+        Span span, Map<String, String> headers) {
+      return decision != null ? decision : Filter.super.evaluateRequestHeadersAsync(span, headers);
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public boolean evaluateRequestBody(Span span, String body) {
+      return false;
+    }
+  }
+}
@@ -25,7 +25,6 @@ import static net.bytebuddy.matcher.ElementMatchers.not;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 
 import com.google.auto.service.AutoService;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.Java8BytecodeBridge;
 import io.opentelemetry.javaagent.tooling.InstrumentationModule;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
@@ -39,6 +38,7 @@ import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import org.apache.http.HttpMessage;
 import org.apache.http.HttpResponse;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 
 @AutoService(InstrumentationModule.class)
 public class ApacheClientInstrumentationModule extends InstrumentationModule {
@@ -94,7 +94,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
   static class HttpClient_ExecuteAdvice_request0 {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static boolean enter(@Advice.Argument(0) HttpMessage request) {
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(HttpMessage.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.APACHE_HTTP_MESSAGE);
       if (callDepth > 0) {
         return false;
       }
@@ -106,7 +106,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
     public static void exit(
         @Advice.Enter boolean returnFromEnter, @Advice.Thrown Throwable throwable) {
       if (returnFromEnter) {
-        CallDepthThreadLocalMap.reset(HttpMessage.class);
+        CallDepthSlots.reset(CallDepthSlots.APACHE_HTTP_MESSAGE);
       }
     }
   }
@@ -114,7 +114,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
   static class HttpClient_ExecuteAdvice_request1 {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static boolean enter(@Advice.Argument(1) HttpMessage request) {
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(HttpMessage.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.APACHE_HTTP_MESSAGE);
       if (callDepth > 0) {
         return false;
       }
@@ -126,7 +126,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
     public static void exit(
         @Advice.Enter boolean returnFromEnter, @Advice.Thrown Throwable throwable) {
       if (returnFromEnter) {
-        CallDepthThreadLocalMap.reset(HttpMessage.class);
+        CallDepthSlots.reset(CallDepthSlots.APACHE_HTTP_MESSAGE);
       }
     }
   }
@@ -134,7 +134,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
   static class HttpClient_ExecuteAdvice_response {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static boolean enter() {
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(HttpResponse.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.APACHE_HTTP_RESPONSE);
       if (callDepth > 0) {
         return false;
       }
@@ -147,7 +147,7 @@ public class ApacheClientInstrumentationModule extends InstrumentationModule {
         return;
       }
 
-      CallDepthThreadLocalMap.reset(HttpResponse.class);
+      CallDepthSlots.reset(CallDepthSlots.APACHE_HTTP_RESPONSE);
       if (response instanceof HttpResponse) {
         HttpResponse httpResponse = (HttpResponse) response;
         ApacheHttpClientUtils.traceResponse(Java8BytecodeBridge.currentSpan(), httpResponse);
@@ -29,13 +29,12 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpEntityEnclosingRequest;
 import org.apache.http.HttpMessage;
 import org.apache.http.HttpResponse;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,13 +62,12 @@ public class ApacheHttpClientUtils {
   }
 
   public static void traceRequest(Span span, HttpMessage request) {
-    AgentConfig agentConfig = HypertraceConfig.get();
-    if (agentConfig.getDataCapture().getHttpHeaders().getRequest().getValue()) {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    if (captureSettings.captureHttpRequestHeaders()) {
       ApacheHttpClientUtils.addRequestHeaders(span, request.headerIterator());
     }
 
-    if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
-        && request instanceof HttpEntityEnclosingRequest) {
+    if (captureSettings.captureHttpRequestBody() && request instanceof HttpEntityEnclosingRequest) {
       HttpEntityEnclosingRequest entityRequest = (HttpEntityEnclosingRequest) request;
       HttpEntity entity = entityRequest.getEntity();
       ApacheHttpClientUtils.traceEntity(
@@ -78,12 +76,12 @@ public class ApacheHttpClientUtils {
   }
 
   public static void traceResponse(Span span, HttpResponse response) {
-    AgentConfig agentConfig = HypertraceConfig.get();
-    if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    if (captureSettings.captureHttpResponseHeaders()) {
       ApacheHttpClientUtils.addResponseHeaders(span, response.headerIterator());
     }
 
-    if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()) {
+    if (captureSettings.captureHttpResponseBody()) {
       HttpEntity entity = response.getEntity();
       ApacheHttpClientUtils.traceEntity(
           span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, entity);
@@ -97,12 +95,14 @@ public class ApacheHttpClientUtils {
     }
 
     Header contentType = entity.getContentType();
-    if (contentType == null || !ContentTypeUtils.shouldCapture(contentType.getValue())) {
+    if (contentType == null || contentType.getValue() == null) {
       return;
     }
-
-    String charsetStr = ContentTypeUtils.parseCharset(contentType.getValue());
-    Charset charset = ContentTypeCharsetUtils.toCharset(charsetStr);
+    ParsedContentType parsedContentType = ContentTypeUtils.parse(contentType.getValue());
+    if (!parsedContentType.shouldCapture()) {
+      return;
+    }
+    Charset charset = parsedContentType.getCharset();
 
     if (entity.isRepeatable()) {
       try {
@@ -116,6 +116,7 @@ public class ApacheHttpClientUtils {
         } catch (UnsupportedEncodingException e) {
           log.error("Could not parse charset from encoding {}", charsetStr, e);
         }
+        byteArrayOutputStream.release();
       } catch (IOException e) {
         log.error("Could not read request input stream from repeatable request entity/body", e);
       }
@@ -151,6 +151,7 @@ public class HttpEntityInstrumentation implements TypeInstrumentation {
       } catch (UnsupportedEncodingException e) {
         // should not happen, the charset has been parsed before
       }
+      bufferedOutStream.release();
     }
   }
 }
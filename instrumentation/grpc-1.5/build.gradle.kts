@@ -90,3 +90,24 @@ dependencies {
         }
     }
 }
+
+// the deferred mode is read once per JVM and the mock filter, which prints the messages for its body
+// evaluation, would take precedence, therefore the deferred mode is tested in a JVM of its own
+val deferredBodyTest by tasks.registering(Test::class) {
+    useJUnitPlatform()
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    filter {
+        includeTestsMatching("*GrpcDeferredBodyTest")
+    }
+    jvmArgs = mutableListOf(
+            "-Dht.data.capture.rpc.body.deferred.json=true",
+            "-Dht.filter.provider.MockFilterProvider.disabled=true")
+}
+
+tasks.test {
+    filter {
+        excludeTestsMatching("*GrpcDeferredBodyTest")
+    }
+    dependsOn(deferredBodyTest)
+}
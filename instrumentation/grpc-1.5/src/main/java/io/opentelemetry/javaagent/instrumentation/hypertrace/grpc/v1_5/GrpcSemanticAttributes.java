@@ -51,6 +51,10 @@ public class GrpcSemanticAttributes {
     return key;
   }
 
+  public static String addHypertracePrefix(String key) {
+    return PREFIX + key;
+  }
+
   public static String addColon(String key) {
     return ":" + key;
   }
@@ -16,6 +16,7 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5;
 
+import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Message;
 import com.google.protobuf.util.JsonFormat;
 import io.grpc.Metadata;
@@ -23,12 +24,17 @@ import io.grpc.Metadata.Key;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.io.IOException;
-import java.util.LinkedHashMap;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedCharArrayWriter;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
+import org.hypertrace.agent.filter.api.HeadersView;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,16 +45,70 @@ public class GrpcSpanDecorator {
   private static final Logger log = LoggerFactory.getLogger(GrpcSpanDecorator.class);
   private static final JsonFormat.Printer PRINTER = JsonFormat.printer();
 
+  private static final boolean DEFERRED_JSON =
+      Boolean.parseBoolean(
+          EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_RPC_BODY_DEFERRED_JSON));
+
   public static void addMessageAttribute(Object message, Span span, AttributeKey<String> key) {
+    if (DEFERRED_JSON
+        && message instanceof Message
+        && PendingBodies.isEnabled()
+        && deferMessage((Message) message, span, key)) {
+      return;
+    }
+    String json = messageToJson(message);
+    if (json != null) {
+      span.setAttribute(key, json);
+    }
+  }
+
+  /**
+   * Returns the JSON of the protobuf message or null if it is not a protobuf message. The JSON is
+   * truncated to the maximum body size, the printer stops there instead of printing the whole
+   * message.
+   */
+  public static String messageToJson(Object message) {
     if (message instanceof Message) {
       Message mb = (Message) message;
+      BoundedCharArrayWriter writer = BoundedBuffersFactory.createWriter();
       try {
-        BoundedCharArrayWriter writer = BoundedBuffersFactory.createWriter();
-        PRINTER.appendTo(mb, writer);
-        span.setAttribute(key, writer.toString());
+        PRINTER.appendTo(mb, new BoundedAppendable(writer));
+        return writer.toString();
+      } catch (CapacityReachedException e) {
+        return writer.toString();
       } catch (IOException e) {
         log.error("Failed to decode message to JSON", e);
+      } finally {
+        writer.release();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Records the serialized message, it is printed as JSON when the span is exported. Serializing is
+   * much cheaper than printing JSON on the thread which sends or receives the message. Each message
+   * of a stream replaces the pending previous one, as the attribute would be overwritten.
+   *
+   * @return false if the message is larger than the capture buffer, a truncated message cannot be
+   *     parsed
+   */
+  private static boolean deferMessage(Message message, Span span, AttributeKey<String> key) {
+    int size = message.getSerializedSize();
+    BoundedByteArrayOutputStream buffer =
+        BoundedBuffersFactory.createStream(size, StandardCharsets.UTF_8);
+    try {
+      if (size > buffer.remainingCapacity()) {
+        return false;
       }
+      message.writeTo(buffer);
+      return buffer.size() == size
+          && PendingBodies.defer(
+              span, key, buffer, new JsonDecoder(message.getDefaultInstanceForType()));
+    } catch (IOException e) {
+      return false;
+    } finally {
+      buffer.release();
     }
   }
 
@@ -68,25 +128,133 @@ public class GrpcSpanDecorator {
     }
   }
 
-  public static void addMetadataAttributes(Map<String, String> metadata, Span span) {
-    for (Map.Entry<String, String> entry : metadata.entrySet()) {
-      span.setAttribute(entry.getKey(), entry.getValue());
+  /** Parses the serialized message with the parser of its type and prints it as JSON. */
+  private static final class JsonDecoder implements PendingBodies.Decoder {
+
+    private final Message prototype;
+
+    JsonDecoder(Message prototype) {
+      this.prototype = prototype;
+    }
+
+    @Override
+    public String decode(byte[] bytes) {
+      try {
+        return messageToJson(prototype.getParserForType().parseFrom(bytes));
+      } catch (InvalidProtocolBufferException e) {
+        log.debug(
+            "Failed to parse message of type {}",
+            prototype.getDescriptorForType().getFullName(),
+            e);
+        return null;
+      }
     }
   }
 
-  public static Map<String, String> metadataToMap(Metadata metadata) {
-    Map<String, String> mapHeaders = new LinkedHashMap<>(metadata.keys().size());
-    for (String key : metadata.keys()) {
-      if (key.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
-        continue;
+  /**
+   * Stops the printer once the writer is full by throwing {@link CapacityReachedException}. The
+   * writer alone would drop the rest of the JSON, but the printer would still print the whole
+   * message.
+   */
+  private static final class BoundedAppendable implements Appendable {
+
+    private final BoundedCharArrayWriter writer;
+
+    BoundedAppendable(BoundedCharArrayWriter writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public Appendable append(CharSequence csq) throws IOException {
+      String s = String.valueOf(csq);
+      return append(s, 0, s.length());
+    }
+
+    @Override
+    public Appendable append(CharSequence csq, int start, int end) throws IOException {
+      String s = String.valueOf(csq);
+      int size = writer.size();
+      writer.write(s, start, end - start);
+      if (writer.size() - size < end - start) {
+        // full or the memory budget is used up
+        throw CapacityReachedException.INSTANCE;
       }
-      Key<String> stringKey = Key.of(key, Metadata.ASCII_STRING_MARSHALLER);
-      Iterable<String> stringValues = metadata.getAll(stringKey);
-      for (String stringValue : stringValues) {
-        key = GrpcSemanticAttributes.removeHypertracePrefixAndAddColon(key);
-        mapHeaders.put(HypertraceSemanticAttributes.rpcRequestMetadata(key).getKey(), stringValue);
+      return this;
+    }
+
+    @Override
+    public Appendable append(char c) throws IOException {
+      int size = writer.size();
+      writer.write(c);
+      if (writer.size() == size) {
+        throw CapacityReachedException.INSTANCE;
+      }
+      return this;
+    }
+  }
+
+  private static final class CapacityReachedException extends IOException {
+
+    // thrown for every truncated message, without a stack trace
+    static final CapacityReachedException INSTANCE = new CapacityReachedException();
+
+    private CapacityReachedException() {
+      super("Capture buffer is full");
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /** Returns a {@link HeadersView} of the request metadata used by filters. */
+  public static Map<String, String> requestMetadataView(Metadata metadata) {
+    return new MetadataView(metadata);
+  }
+
+  private static final class MetadataView extends HeadersView {
+
+    private static final String PREFIX =
+        HypertraceSemanticAttributes.rpcRequestMetadata("").getKey();
+
+    private final Metadata metadata;
+
+    MetadataView(Metadata metadata) {
+      super(PREFIX);
+      this.metadata = metadata;
+    }
+
+    @Override
+    protected String getHeader(String name) {
+      if (name.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
+        return null;
+      }
+      if (name.startsWith(":")) {
+        name = GrpcSemanticAttributes.addHypertracePrefix(name.substring(1));
+      }
+      try {
+        return metadata.get(Key.of(name, Metadata.ASCII_STRING_MARSHALLER));
+      } catch (IllegalArgumentException e) {
+        // not a valid metadata key
+        return null;
+      }
+    }
+
+    @Override
+    protected void forEachHeader(BiConsumer<String, String> consumer) {
+      for (String key : metadata.keys()) {
+        if (key.endsWith(Metadata.BINARY_HEADER_SUFFIX)) {
+          continue;
+        }
+        Key<String> stringKey = Key.of(key, Metadata.ASCII_STRING_MARSHALLER);
+        Iterable<String> stringValues = metadata.getAll(stringKey);
+        for (String stringValue : stringValues) {
+          key = GrpcSemanticAttributes.removeHypertracePrefixAndAddColon(key);
+          consumer.accept(
+              HypertraceSemanticAttributes.rpcRequestMetadata(key).getKey(), stringValue);
+        }
       }
     }
-    return mapHeaders;
   }
 }
@@ -28,6 +28,7 @@ import io.grpc.MethodDescriptor;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5.GrpcInstrumentationName;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5.GrpcSpanDecorator;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 
@@ -59,7 +60,7 @@ public class GrpcClientInterceptor implements ClientInterceptor {
     @Override
     public void start(Listener<RespT> responseListener, Metadata headers) {
       super.start(new TracingClientCallListener<>(responseListener, span), headers);
-      if (HypertraceConfig.get().getDataCapture().getRpcMetadata().getRequest().getValue()) {
+      if (CaptureSettings.get().captureRpcRequestMetadata()) {
         GrpcSpanDecorator.addMetadataAttributes(
             headers, span, HypertraceSemanticAttributes::rpcRequestMetadata);
       }
@@ -68,7 +69,7 @@ public class GrpcClientInterceptor implements ClientInterceptor {
     @Override
     public void sendMessage(ReqT message) {
       super.sendMessage(message);
-      if (HypertraceConfig.get().getDataCapture().getRpcBody().getRequest().getValue()) {
+      if (CaptureSettings.get().captureRpcRequestBody()) {
         GrpcSpanDecorator.addMessageAttribute(
             message, span, HypertraceSemanticAttributes.RPC_REQUEST_BODY);
       }
@@ -87,7 +88,7 @@ public class GrpcClientInterceptor implements ClientInterceptor {
     @Override
     public void onMessage(RespT message) {
       delegate().onMessage(message);
-      if (HypertraceConfig.get().getDataCapture().getRpcBody().getResponse().getValue()) {
+      if (CaptureSettings.get().captureRpcResponseBody()) {
         GrpcSpanDecorator.addMessageAttribute(
             message, span, HypertraceSemanticAttributes.RPC_RESPONSE_BODY);
       }
@@ -96,7 +97,7 @@ public class GrpcClientInterceptor implements ClientInterceptor {
     @Override
     public void onHeaders(Metadata headers) {
       super.onHeaders(headers);
-      if (HypertraceConfig.get().getDataCapture().getRpcMetadata().getResponse().getValue()) {
+      if (CaptureSettings.get().captureRpcResponseMetadata()) {
         GrpcSpanDecorator.addMetadataAttributes(
             headers, span, HypertraceSemanticAttributes::rpcResponseMetadata);
       }
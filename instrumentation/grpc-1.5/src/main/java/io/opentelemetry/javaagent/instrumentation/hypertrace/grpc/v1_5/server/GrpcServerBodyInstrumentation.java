@@ -25,13 +25,13 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
 import io.grpc.ServerBuilder;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.util.Map;
 import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 
 public class GrpcServerBodyInstrumentation implements TypeInstrumentation {
 
@@ -55,7 +55,7 @@ public class GrpcServerBodyInstrumentation implements TypeInstrumentation {
   public static class AddInterceptorAdvice {
     @Advice.OnMethodEnter(suppress = Throwable.class)
     public static void onEnter(@Advice.This ServerBuilder<?> serverBuilder) {
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(GrpcServerInterceptor.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.GRPC_SERVER);
       if (callDepth == 0) {
         serverBuilder.intercept(new GrpcServerInterceptor());
       }
@@ -63,7 +63,7 @@ public class GrpcServerBodyInstrumentation implements TypeInstrumentation {
 
     @Advice.OnMethodExit(onThrowable = Throwable.class, suppress = Throwable.class)
     public static void onExit() {
-      CallDepthThreadLocalMap.decrementCallDepth(GrpcServerInterceptor.class);
+      CallDepthSlots.decrement(CallDepthSlots.GRPC_SERVER);
     }
   }
 }
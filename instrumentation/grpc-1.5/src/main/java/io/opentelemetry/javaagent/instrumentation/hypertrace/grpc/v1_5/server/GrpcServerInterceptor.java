@@ -25,12 +25,21 @@ import io.grpc.ServerCallHandler;
 import io.grpc.ServerInterceptor;
 import io.grpc.Status;
 import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5.GrpcInstrumentationName;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5.GrpcSpanDecorator;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Decision;
 
 public class GrpcServerInterceptor implements ServerInterceptor {
 
@@ -44,22 +53,127 @@ public class GrpcServerInterceptor implements ServerInterceptor {
 
     Span currentSpan = Span.current();
 
-    Map<String, String> mapHeaders = GrpcSpanDecorator.metadataToMap(headers);
+    if (CaptureSettings.get().captureRpcRequestMetadata()) {
+      GrpcSpanDecorator.addMetadataAttributes(
+          headers, currentSpan, HypertraceSemanticAttributes::rpcRequestMetadata);
+    }
 
-    if (HypertraceConfig.get().getDataCapture().getRpcMetadata().getRequest().getValue()) {
-      GrpcSpanDecorator.addMetadataAttributes(mapHeaders, currentSpan);
+    if (FilterRegistry.hasFilters()) {
+      CompletableFuture<Decision> decision =
+          FilterRegistry.getFilter()
+              .evaluateRequestHeadersAsync(
+                  currentSpan, GrpcSpanDecorator.requestMetadataView(headers))
+              .toCompletableFuture();
+      if (!decision.isDone()) {
+        // the call requests no messages until it is started
+        PendingDecisionListener<ReqT> listener = new PendingDecisionListener<>();
+        Runnable startCall =
+            () -> listener.start(applyDecision(call, headers, next, currentSpan, decision));
+        // the decision completes on a thread of the filter, the call is started in the contexts
+        // of the call
+        Runnable applyDecision = io.grpc.Context.current().wrap(Context.current().wrap(startCall));
+        decision.whenComplete((result, error) -> applyDecision.run());
+        return listener;
+      }
+      return applyDecision(call, headers, next, currentSpan, decision);
     }
+    return startCall(call, headers, next, currentSpan);
+  }
 
-    boolean block = FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, mapHeaders);
+  private static <ReqT, RespT> Listener<ReqT> applyDecision(
+      ServerCall<ReqT, RespT> call,
+      Metadata headers,
+      ServerCallHandler<ReqT, RespT> next,
+      Span span,
+      CompletableFuture<Decision> decision) {
+    boolean block;
+    try {
+      block = decision.getNow(Decision.ALLOW) == Decision.BLOCK;
+    } catch (CompletionException | CancellationException e) {
+      // failed evaluation, the filters log their failures
+      block = false;
+    }
     if (block) {
       call.close(Status.PERMISSION_DENIED, new Metadata());
       @SuppressWarnings("unchecked")
       ServerCall.Listener<ReqT> noop = NoopServerCallListener.INSTANCE;
       return noop;
     }
+    return startCall(call, headers, next, span);
+  }
+
+  private static <ReqT, RespT> Listener<ReqT> startCall(
+      ServerCall<ReqT, RespT> call,
+      Metadata headers,
+      ServerCallHandler<ReqT, RespT> next,
+      Span span) {
+    Listener<ReqT> serverCall = next.startCall(new TracingServerCall<>(call, span), headers);
+    return new TracingServerCallListener<>(serverCall, call, span);
+  }
+
+  /**
+   * Holds the events of a call until the filters have decided and passes them to the listener of
+   * the started call afterwards.
+   */
+  static final class PendingDecisionListener<ReqT> extends ServerCall.Listener<ReqT> {
+
+    // guarded by this
+    private List<Consumer<Listener<ReqT>>> pendingEvents = new ArrayList<>();
+    private Listener<ReqT> delegate;
+
+    void start(Listener<ReqT> listener) {
+      while (true) {
+        List<Consumer<Listener<ReqT>>> events;
+        synchronized (this) {
+          if (pendingEvents.isEmpty()) {
+            delegate = listener;
+            pendingEvents = null;
+            return;
+          }
+          events = pendingEvents;
+          pendingEvents = new ArrayList<>();
+        }
+        // events which arrive meanwhile are passed in the next round, keeping the order
+        events.forEach(event -> event.accept(listener));
+      }
+    }
+
+    private void dispatch(Consumer<Listener<ReqT>> event) {
+      Listener<ReqT> listener;
+      synchronized (this) {
+        listener = delegate;
+        if (listener == null) {
+          pendingEvents.add(event);
+          return;
+        }
+      }
+      event.accept(listener);
+    }
+
+    @Override
+    public void onMessage(ReqT message) {
+      dispatch(listener -> listener.onMessage(message));
+    }
+
+    @Override
+    public void onHalfClose() {
+      dispatch(Listener::onHalfClose);
+    }
+
+    @Override
+    public void onCancel() {
+      dispatch(Listener::onCancel);
+    }
 
-    Listener<ReqT> serverCall = next.startCall(new TracingServerCall<>(call, currentSpan), headers);
-    return new TracingServerCallListener<>(serverCall, currentSpan);
+    @Override
+    public void onComplete() {
+      dispatch(Listener::onComplete);
+    }
+
+    @Override
+    public void onReady() {
+      dispatch(Listener::onReady);
+    }
   }
 
   static final class TracingServerCall<ReqT, RespT>
@@ -75,7 +189,7 @@ public class GrpcServerInterceptor implements ServerInterceptor {
     @Override
     public void sendMessage(RespT message) {
       super.sendMessage(message);
-      if (HypertraceConfig.get().getDataCapture().getRpcBody().getResponse().getValue()) {
+      if (CaptureSettings.get().captureRpcResponseBody()) {
         GrpcSpanDecorator.addMessageAttribute(
             message, span, HypertraceSemanticAttributes.RPC_RESPONSE_BODY);
       }
@@ -84,7 +198,7 @@ public class GrpcServerInterceptor implements ServerInterceptor {
     @Override
     public void sendHeaders(Metadata headers) {
       super.sendHeaders(headers);
-      if (HypertraceConfig.get().getDataCapture().getRpcMetadata().getResponse().getValue()) {
+      if (CaptureSettings.get().captureRpcResponseMetadata()) {
         GrpcSpanDecorator.addMetadataAttributes(
             headers, span, HypertraceSemanticAttributes::rpcResponseMetadata);
       }
@@ -94,20 +208,64 @@ public class GrpcServerInterceptor implements ServerInterceptor {
   static final class TracingServerCallListener<ReqT>
       extends ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT> {
 
+    private final ServerCall<ReqT, ?> call;
     private final Span span;
+    private boolean blocked;
 
-    TracingServerCallListener(Listener<ReqT> delegate, Span span) {
+    TracingServerCallListener(Listener<ReqT> delegate, ServerCall<ReqT, ?> call, Span span) {
       super(delegate);
+      this.call = call;
       this.span = span;
     }
 
     @Override
     public void onMessage(ReqT message) {
+      if (blocked) {
+        return;
+      }
+      boolean captureBody = CaptureSettings.get().captureRpcRequestBody();
+      if (!FilterRegistry.evaluatesRequestBody()) {
+        delegate().onMessage(message);
+        if (captureBody) {
+          GrpcSpanDecorator.addMessageAttribute(
+              message, span, HypertraceSemanticAttributes.RPC_REQUEST_BODY);
+        }
+        return;
+      }
+      // every message is a chunk of the request body, filters see it before the application
+      String body = GrpcSpanDecorator.messageToJson(message);
+      if (body != null
+          && FilterRegistry.getFilter()
+              .onRequestBodyChunk(
+                  span,
+                  StandardCharsets.UTF_8.encode(body).asReadOnlyBuffer(),
+                  StandardCharsets.UTF_8)) {
+        block();
+        return;
+      }
       delegate().onMessage(message);
-      if (HypertraceConfig.get().getDataCapture().getRpcBody().getRequest().getValue()) {
-        GrpcSpanDecorator.addMessageAttribute(
-            message, span, HypertraceSemanticAttributes.RPC_REQUEST_BODY);
+      // the JSON has been printed for the filters already
+      if (captureBody && body != null) {
+        span.setAttribute(HypertraceSemanticAttributes.RPC_REQUEST_BODY, body);
+      }
+    }
+
+    @Override
+    public void onHalfClose() {
+      if (blocked) {
+        return;
+      }
+      if (FilterRegistry.evaluatesRequestBody()
+          && FilterRegistry.getFilter().onRequestBodyEnd(span)) {
+        block();
+        return;
       }
+      delegate().onHalfClose();
+    }
+
+    private void block() {
+      blocked = true;
+      call.close(Status.PERMISSION_DENIED, new Metadata());
     }
   }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5;
+
+import com.google.protobuf.util.JsonFormat;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
+import org.hypertrace.agent.testing.AbstractInstrumenterTest;
+import org.hypertrace.example.GreeterGrpc;
+import org.hypertrace.example.Helloworld.Request;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs with {@code ht.data.capture.rpc.body.deferred.json} and without filters, see the {@code
+ * deferredBodyTest} task.
+ */
+public class GrpcDeferredBodyTest extends AbstractInstrumenterTest {
+
+  private static final Request REQUEST = Request.newBuilder().setName("request name").build();
+
+  private static Server SERVER;
+  private static ManagedChannel CHANNEL;
+
+  @BeforeAll
+  public static void startServer() throws IOException {
+    // done by the exporter customizer in the agent
+    PendingBodies.enable();
+    SERVER = ServerBuilder.forPort(0).addService(new NoopGreeterService()).build();
+    SERVER.start();
+    CHANNEL =
+        ManagedChannelBuilder.forTarget(String.format("localhost:%d", SERVER.getPort()))
+            .usePlaintext(true)
+            .build();
+  }
+
+  @AfterAll
+  public static void close() {
+    CHANNEL.shutdownNow();
+    SERVER.shutdownNow();
+  }
+
+  @Test
+  public void serverRequestBodyIsAddedAtExport()
+      throws IOException, TimeoutException, InterruptedException {
+    GreeterGrpc.newBlockingStub(CHANNEL).sayHello(REQUEST);
+
+    // the message has only been serialized while the call was served
+    Assertions.assertNull(NoopGreeterService.lastRequestBody);
+
+    TEST_WRITER.waitForSpans(2);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(1, traces.size());
+    SpanData serverSpan =
+        traces.get(0).stream()
+            .filter(span -> span.getKind() == SpanKind.SERVER)
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+    Assertions.assertEquals(NoopGreeterService.lastSpanId, serverSpan.getSpanId());
+    Assertions.assertEquals(
+        JsonFormat.printer().print(REQUEST),
+        serverSpan.getAttributes().get(HypertraceSemanticAttributes.RPC_REQUEST_BODY));
+  }
+}
@@ -34,6 +34,7 @@ import io.opentelemetry.sdk.trace.data.SpanData;
 import java.io.IOException;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import org.hypertrace.agent.core.config.EnvironmentConfig;
 import org.hypertrace.agent.core.config.HypertraceConfig;
@@ -185,6 +186,25 @@ public class GrpcInstrumentationTest extends AbstractInstrumenterTest {
 
   @Test
   @Order(3)
+  public void asyncDecisionStartsCallInCallContext() throws TimeoutException, InterruptedException {
+    Metadata delayHeaders = new Metadata();
+    delayHeaders.put(Metadata.Key.of("mockdelay", Metadata.ASCII_STRING_MARSHALLER), "true");
+
+    GreeterBlockingStub blockingStub =
+        GreeterGrpc.newBlockingStub(CHANNEL).withDeadlineAfter(1, TimeUnit.MINUTES);
+    blockingStub = MetadataUtils.attachHeaders(blockingStub, delayHeaders);
+    blockingStub.sayHello(REQUEST);
+
+    TEST_WRITER.waitForSpans(2);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(1, traces.size());
+    SpanData serverSpan = traces.get(0).get(1);
+    Assertions.assertEquals(serverSpan.getSpanId(), NoopGreeterService.lastSpanId);
+    Assertions.assertNotNull(NoopGreeterService.lastDeadline);
+  }
+
+  @Test
+  @Order(4)
   public void disabledInstrumentation_dynamicConfig()
       throws TimeoutException, InterruptedException {
     URL configUrl = getClass().getClassLoader().getResource("ht-config-all-disabled.yaml");
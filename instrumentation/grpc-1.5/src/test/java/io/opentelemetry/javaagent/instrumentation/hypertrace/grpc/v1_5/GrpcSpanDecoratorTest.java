@@ -0,0 +1,44 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5;
+
+import java.util.Arrays;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.example.Helloworld.Request;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GrpcSpanDecoratorTest {
+
+  @Test
+  public void messageToJsonStopsAtMaxSize() {
+    char[] name = new char[BoundedBuffersFactory.MAX_SIZE * 2];
+    Arrays.fill(name, 'a');
+    Request request = Request.newBuilder().setName(new String(name)).build();
+
+    String json = GrpcSpanDecorator.messageToJson(request);
+
+    Assertions.assertEquals(BoundedBuffersFactory.MAX_SIZE, json.length());
+    Assertions.assertTrue(json.startsWith("{\n  \"name\": \"aaa"));
+  }
+
+  @Test
+  public void messageToJson() {
+    Request request = Request.newBuilder().setName("name").build();
+    Assertions.assertEquals("{\n  \"name\": \"name\"\n}", GrpcSpanDecorator.messageToJson(request));
+  }
+}
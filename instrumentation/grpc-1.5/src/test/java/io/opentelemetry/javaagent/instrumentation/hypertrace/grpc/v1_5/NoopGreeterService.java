@@ -16,7 +16,11 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.grpc.v1_5;
 
+import io.grpc.Deadline;
 import io.grpc.stub.StreamObserver;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.example.GreeterGrpc;
 import org.hypertrace.example.Helloworld;
 import org.hypertrace.example.Helloworld.Request;
@@ -27,8 +31,21 @@ public class NoopGreeterService extends GreeterGrpc.GreeterImplBase {
   private static final Response RESPONSE =
       Helloworld.Response.newBuilder().setMessage("response message").build();
 
+  // contexts in which the last call was served
+  static volatile String lastSpanId;
+  static volatile Deadline lastDeadline;
+  // request body attribute of the span while the last call was served
+  static volatile String lastRequestBody;
+
   @Override
   public void sayHello(Request request, StreamObserver<Response> responseObserver) {
+    lastSpanId = Span.current().getSpanContext().getSpanId();
+    lastDeadline = io.grpc.Context.current().getDeadline();
+    lastRequestBody =
+        ((ReadableSpan) Span.current())
+            .toSpanData()
+            .getAttributes()
+            .get(HypertraceSemanticAttributes.RPC_REQUEST_BODY);
     responseObserver.onNext(RESPONSE);
     responseObserver.onCompleted();
   }
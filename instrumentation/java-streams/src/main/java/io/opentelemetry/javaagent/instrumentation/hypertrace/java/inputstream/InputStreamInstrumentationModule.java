@@ -26,7 +26,6 @@ import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
 import com.google.auto.service.AutoService;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.tooling.InstrumentationModule;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.IOException;
@@ -39,6 +38,7 @@ import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry.SpanAndBuffer;
 
@@ -128,7 +128,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
       if (spanAndBuffer == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
@@ -152,7 +152,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
       if (spanAndBuffer == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
@@ -178,7 +178,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
       if (spanAndBuffer == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
@@ -202,7 +202,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
       if (spanAndBuffer == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
@@ -228,7 +228,7 @@ public class InputStreamInstrumentationModule extends InstrumentationModule {
       if (spanAndBuffer == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
@@ -21,15 +21,16 @@ import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.api.trace.Tracer;
 import io.opentelemetry.context.Context;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry.SpanAndBuffer;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +68,10 @@ public class InputStreamUtils {
     } catch (UnsupportedEncodingException e) {
       log.error("Failed to parse encofing from charset {}", charset, e);
     }
+    if (buffer instanceof BoundedByteArrayOutputStream) {
+      // the stream is removed from the registry right after the body is added
+      ((BoundedByteArrayOutputStream) buffer).release();
+    }
   }
 
   public static SpanAndBuffer check(InputStream inputStream) {
@@ -76,7 +81,7 @@ public class InputStreamUtils {
       return null;
     }
 
-    CallDepthThreadLocalMap.incrementCallDepth(InputStream.class);
+    CallDepthSlots.increment(CallDepthSlots.INPUT_STREAM);
     return spanAndBuffer;
   }
 
@@ -84,12 +89,14 @@ public class InputStreamUtils {
     if (read != -1) {
       spanAndBuffer.byteArrayBuffer.write((byte) read);
     } else if (read == -1) {
-      InputStreamUtils.addBody(
-          spanAndBuffer.span,
-          spanAndBuffer.attributeKey,
-          spanAndBuffer.byteArrayBuffer,
-          spanAndBuffer.charset);
-      GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
+      // the body is added by whoever removes the stream, it might have been reaped already
+      if (GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream) != null) {
+        InputStreamUtils.addBody(
+            spanAndBuffer.span,
+            spanAndBuffer.attributeKey,
+            spanAndBuffer.byteArrayBuffer,
+            spanAndBuffer.charset);
+      }
     }
   }
 
@@ -98,12 +105,14 @@ public class InputStreamUtils {
     if (read > 0) {
       spanAndBuffer.byteArrayBuffer.write(b, 0, read);
     } else if (read == -1) {
-      InputStreamUtils.addBody(
-          spanAndBuffer.span,
-          spanAndBuffer.attributeKey,
-          spanAndBuffer.byteArrayBuffer,
-          spanAndBuffer.charset);
-      GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
+      // the body is added by whoever removes the stream, it might have been reaped already
+      if (GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream) != null) {
+        InputStreamUtils.addBody(
+            spanAndBuffer.span,
+            spanAndBuffer.attributeKey,
+            spanAndBuffer.byteArrayBuffer,
+            spanAndBuffer.charset);
+      }
     }
   }
 
@@ -112,12 +121,14 @@ public class InputStreamUtils {
     if (read > 0) {
       spanAndBuffer.byteArrayBuffer.write(b, off, read);
     } else if (read == -1) {
-      InputStreamUtils.addBody(
-          spanAndBuffer.span,
-          spanAndBuffer.attributeKey,
-          spanAndBuffer.byteArrayBuffer,
-          spanAndBuffer.charset);
-      GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
+      // the body is added by whoever removes the stream, it might have been reaped already
+      if (GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream) != null) {
+        InputStreamUtils.addBody(
+            spanAndBuffer.span,
+            spanAndBuffer.attributeKey,
+            spanAndBuffer.byteArrayBuffer,
+            spanAndBuffer.charset);
+      }
     }
   }
 
@@ -130,12 +141,14 @@ public class InputStreamUtils {
   public static void readNBytes(
       InputStream inputStream, SpanAndBuffer spanAndBuffer, int read, byte[] b, int off, int len) {
     if (read == 0) {
-      InputStreamUtils.addBody(
-          spanAndBuffer.span,
-          spanAndBuffer.attributeKey,
-          spanAndBuffer.byteArrayBuffer,
-          spanAndBuffer.charset);
-      GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
+      // the body is added by whoever removes the stream, it might have been reaped already
+      if (GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream) != null) {
+        InputStreamUtils.addBody(
+            spanAndBuffer.span,
+            spanAndBuffer.attributeKey,
+            spanAndBuffer.byteArrayBuffer,
+            spanAndBuffer.charset);
+      }
     } else {
       spanAndBuffer.byteArrayBuffer.write(b, off, read);
     }
@@ -146,14 +159,13 @@ public class InputStreamUtils {
       return;
     }
     SpanAndBuffer spanAndBuffer =
-        GlobalObjectRegistry.inputStreamToSpanAndBufferMap.get(inputStream);
+        GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
     if (spanAndBuffer != null) {
       InputStreamUtils.addBody(
           spanAndBuffer.span,
           spanAndBuffer.attributeKey,
           spanAndBuffer.byteArrayBuffer,
           spanAndBuffer.charset);
-      GlobalObjectRegistry.inputStreamToSpanAndBufferMap.remove(inputStream);
     }
   }
 }
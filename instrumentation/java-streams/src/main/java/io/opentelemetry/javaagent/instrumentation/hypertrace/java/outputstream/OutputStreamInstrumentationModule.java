@@ -24,7 +24,6 @@ import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
 import com.google.auto.service.AutoService;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.tooling.InstrumentationModule;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.IOException;
@@ -37,6 +36,7 @@ import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
@@ -104,7 +104,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(OutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -116,7 +116,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(OutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.OUTPUT_STREAM);
       }
     }
   }
@@ -129,7 +129,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(OutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -141,7 +141,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(OutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.OUTPUT_STREAM);
       }
     }
   }
@@ -157,7 +157,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(OutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -169,7 +169,7 @@ public class OutputStreamInstrumentationModule extends InstrumentationModule {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(OutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.OUTPUT_STREAM);
       }
     }
   }
@@ -23,12 +23,14 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.util.List;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry.SpanAndBuffer;
 import org.hypertrace.agent.testing.AbstractInstrumenterTest;
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
 
 public class InputStreamInstrumentationModuleTest extends AbstractInstrumenterTest {
@@ -91,6 +93,40 @@ public class InputStreamInstrumentationModuleTest extends AbstractInstrumenterTe
         STR);
   }
 
+  @Test
+  public void readOnVirtualThread() {
+    Method startVirtualThread;
+    try {
+      startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+    } catch (NoSuchMethodException e) {
+      Assumptions.assumeTrue(false, "virtual threads are not supported by this JDK");
+      return;
+    }
+    InputStream inputStream = new ByteArrayInputStream(STR.getBytes());
+    read(
+        inputStream,
+        () -> {
+          try {
+            Thread thread =
+                (Thread)
+                    startVirtualThread.invoke(
+                        null,
+                        (Runnable)
+                            () -> {
+                              try {
+                                while (inputStream.read(new byte[2]) != -1) {}
+                              } catch (IOException e) {
+                                e.printStackTrace();
+                              }
+                            });
+            thread.join();
+          } catch (ReflectiveOperationException | InterruptedException e) {
+            throw new IllegalStateException(e);
+          }
+        },
+        STR);
+  }
+
   private void read(InputStream inputStream, Runnable read, String expected) {
     Span span = TEST_TRACER.spanBuilder("test-span").startSpan();
 
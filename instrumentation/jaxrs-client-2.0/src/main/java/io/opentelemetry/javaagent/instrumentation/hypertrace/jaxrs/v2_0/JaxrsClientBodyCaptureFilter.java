@@ -28,8 +28,7 @@ import javax.ws.rs.client.ClientRequestFilter;
 import javax.ws.rs.client.ClientResponseContext;
 import javax.ws.rs.client.ClientResponseFilter;
 import javax.ws.rs.core.MultivaluedMap;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -47,10 +46,10 @@ public class JaxrsClientBodyCaptureFilter implements ClientRequestFilter, Client
 
     Context currentContext = (Context) contextObj;
     Span currentSpan = Span.fromContext(currentContext);
-    AgentConfig agentConfig = HypertraceConfig.get();
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     try {
-      if (agentConfig.getDataCapture().getHttpHeaders().getRequest().getValue()) {
+      if (captureSettings.captureHttpRequestHeaders()) {
         captureHeaders(
             currentSpan,
             HypertraceSemanticAttributes::httpRequestHeader,
@@ -70,10 +69,10 @@ public class JaxrsClientBodyCaptureFilter implements ClientRequestFilter, Client
 
     Context currentContext = (Context) contextObj;
     Span currentSpan = Span.fromContext(currentContext);
-    AgentConfig agentConfig = HypertraceConfig.get();
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     try {
-      if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+      if (captureSettings.captureHttpResponseHeaders()) {
         captureHeaders(
             currentSpan,
             HypertraceSemanticAttributes::httpResponseHeader,
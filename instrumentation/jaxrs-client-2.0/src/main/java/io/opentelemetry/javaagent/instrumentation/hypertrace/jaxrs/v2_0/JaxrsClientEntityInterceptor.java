@@ -30,8 +30,7 @@ import javax.ws.rs.ext.ReaderInterceptor;
 import javax.ws.rs.ext.ReaderInterceptorContext;
 import javax.ws.rs.ext.WriterInterceptor;
 import javax.ws.rs.ext.WriterInterceptorContext;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry;
 import org.hypertrace.agent.core.instrumentation.GlobalObjectRegistry.SpanAndBuffer;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
@@ -53,10 +52,10 @@ public class JaxrsClientEntityInterceptor implements ReaderInterceptor, WriterIn
       throws IOException, WebApplicationException {
 
     MediaType mediaType = responseContext.getMediaType();
-    AgentConfig agentConfig = HypertraceConfig.get();
+    CaptureSettings captureSettings = CaptureSettings.get();
     if (mediaType == null
         || !ContentTypeUtils.shouldCapture(mediaType.toString())
-        || !agentConfig.getDataCapture().getHttpBody().getResponse().getValue()) {
+        || !captureSettings.captureHttpResponseBody()) {
       return responseContext.proceed();
     }
 
@@ -113,8 +112,8 @@ public class JaxrsClientEntityInterceptor implements ReaderInterceptor, WriterIn
     Context context = (Context) contextObj;
     Span currentSpan = Span.fromContext(context);
 
-    AgentConfig agentConfig = HypertraceConfig.get();
-    if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()) {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    if (captureSettings.captureHttpRequestBody()) {
       MediaType mediaType = requestContext.getMediaType();
       if (mediaType == null || !ContentTypeUtils.shouldCapture(mediaType.toString())) {
         requestContext.proceed();
@@ -141,6 +140,7 @@ public class JaxrsClientEntityInterceptor implements ReaderInterceptor, WriterIn
       GlobalObjectRegistry.outputStreamToBufferMap.remove(entityStream);
       currentSpan.setAttribute(
           HypertraceSemanticAttributes.HTTP_REQUEST_BODY, buffer.toStringWithSuppliedCharset());
+      buffer.release();
     }
   }
 }
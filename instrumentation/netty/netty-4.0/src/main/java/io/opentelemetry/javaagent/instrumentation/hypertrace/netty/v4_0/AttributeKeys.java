@@ -17,7 +17,7 @@
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0;
 
 import io.netty.util.AttributeKey;
-import java.util.Map;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerExchanges;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
@@ -30,7 +30,7 @@ public class AttributeKeys {
       io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
           HypertraceSemanticAttributes.HTTP_REQUEST_BODY.getKey());
 
-  public static final AttributeKey<Map<String, String>> REQUEST_HEADERS =
+  public static final AttributeKey<HttpServerExchanges> SERVER_EXCHANGES =
       io.opentelemetry.javaagent.instrumentation.netty.v4_0.AttributeKeys.attributeKey(
-          AttributeKeys.class.getName() + ".request-headers");
+          AttributeKeys.class.getName() + ".server-exchanges");
 }
@@ -16,6 +16,8 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0;
 
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.handler.codec.http.HttpContent;
@@ -24,9 +26,11 @@ import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
 import io.opentelemetry.api.trace.Span;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
 
 public class DataCaptureUtils {
 
@@ -44,25 +48,74 @@ public class DataCaptureUtils {
       // not capturing body e.g. unknown content type
       return;
     }
+    if (captureBody(span, buffer, attributeKey.name(), httpContentOrBuffer)) {
+      bufferAttr.remove();
+    }
+  }
+
+  /**
+   * Captures the content and adds the body to the span at the last content.
+   *
+   * @return true if the body is complete, the buffer has been released then
+   */
+  public static boolean captureBody(
+      Span span,
+      BoundedByteArrayOutputStream buffer,
+      String attributeName,
+      Object httpContentOrBuffer) {
+    if (!captureContent(buffer, httpContentOrBuffer)) {
+      return false;
+    }
+    addBody(span, buffer, attributeName);
+    return true;
+  }
 
+  /**
+   * Copies the content to the buffer.
+   *
+   * @return true if this was the last content
+   */
+  public static boolean captureContent(
+      BoundedByteArrayOutputStream buffer, Object httpContentOrBuffer) {
     ByteBuf content = castToBuf(httpContentOrBuffer);
     if (content != null && content.isReadable()) {
-      final ByteArrayOutputStream finalBuffer = buffer;
-      content.forEachByte(
-          value -> {
-            finalBuffer.write(value);
-            return true;
-          });
+      copy(content, buffer);
     }
+    return httpContentOrBuffer instanceof LastHttpContent;
+  }
 
-    if (httpContentOrBuffer instanceof LastHttpContent) {
-      bufferAttr.remove();
+  /** Adds the captured body to the span and releases the buffer. */
+  public static void addBody(Span span, BoundedByteArrayOutputStream buffer, String attributeName) {
+    if ((buffer.size() > 0 || !buffer.isBudgetLimited())
+        && !PendingBodies.defer(span, stringKey(attributeName), buffer)) {
       try {
-        span.setAttribute(attributeKey.name(), buffer.toStringWithSuppliedCharset());
+        span.setAttribute(attributeName, buffer.toStringWithSuppliedCharset());
       } catch (UnsupportedEncodingException e) {
         // ignore charset was parsed before
       }
     }
+    buffer.release();
+  }
+
+  /** Copies the readable bytes in bulk, up to the remaining capacity of the buffer. */
+  private static void copy(ByteBuf content, BoundedByteArrayOutputStream buffer) {
+    int length = Math.min(content.readableBytes(), buffer.remainingCapacity());
+    if (length == 0) {
+      return;
+    }
+    int index = content.readerIndex();
+    if (content.nioBufferCount() > 0) {
+      // views of the content, direct memory is copied without an intermediate array
+      for (ByteBuffer nioBuffer : content.nioBuffers(index, length)) {
+        buffer.write(nioBuffer);
+      }
+    } else {
+      try {
+        content.getBytes(index, buffer, length);
+      } catch (IOException e) {
+        // the buffer does not throw
+      }
+    }
   }
 
   private static ByteBuf castToBuf(Object msg) {
@@ -33,19 +33,16 @@ import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.DataCapt
 import java.nio.charset.Charset;
 import java.util.HashMap;
 import java.util.Map;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 
 public class HttpClientRequestTracingHandler extends ChannelOutboundHandlerAdapter {
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
-
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
     Channel channel = ctx.channel();
@@ -59,25 +56,27 @@ public class HttpClientRequestTracingHandler extends ChannelOutboundHandlerAdapt
       return;
     }
     Span span = Span.fromContext(context);
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     if (msg instanceof HttpRequest) {
       HttpRequest httpRequest = (HttpRequest) msg;
 
       Map<String, String> headersMap = headersToMap(httpRequest);
-      if (agentConfig.getDataCapture().getHttpHeaders().getRequest().getValue()) {
+      if (captureSettings.captureHttpRequestHeaders()) {
         headersMap.forEach((key, value) -> span.setAttribute(key, value));
       }
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpRequest);
-      if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
-          && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
+      ParsedContentType parsedContentType =
+          contentType == null ? null : ContentTypeUtils.parse(contentType.toString());
+      if (captureSettings.captureHttpRequestBody()
+          && parsedContentType != null
+          && parsedContentType.shouldCapture()) {
 
         CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpRequest);
         int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
+        Charset charset = parsedContentType.getCharset();
 
         // set the buffer to capture response body
         // the buffer is used byt captureBody method
@@ -88,7 +87,7 @@ public class HttpClientRequestTracingHandler extends ChannelOutboundHandlerAdapt
     }
 
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && agentConfig.getDataCapture().getHttpBody().getRequest().getValue()) {
+        && captureSettings.captureHttpRequestBody()) {
       DataCaptureUtils.captureBody(span, channel, AttributeKeys.REQUEST_BODY_BUFFER, msg);
     }
 
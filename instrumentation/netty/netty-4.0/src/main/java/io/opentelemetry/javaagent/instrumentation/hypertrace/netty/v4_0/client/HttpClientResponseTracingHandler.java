@@ -36,19 +36,16 @@ import io.opentelemetry.javaagent.instrumentation.netty.v4_0.client.NettyHttpCli
 import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
 import java.nio.charset.Charset;
 import java.util.Map;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 
 public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapter {
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
-
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
     Channel channel = ctx.channel();
@@ -62,23 +59,25 @@ public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapt
       return;
     }
     Span span = Span.fromContext(context);
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     if (msg instanceof HttpResponse) {
       HttpResponse httpResponse = (HttpResponse) msg;
-      if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+      if (captureSettings.captureHttpResponseHeaders()) {
         captureHeaders(span, httpResponse);
       }
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpResponse);
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
-          && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
+      ParsedContentType parsedContentType =
+          contentType == null ? null : ContentTypeUtils.parse(contentType.toString());
+      if (captureSettings.captureHttpResponseBody()
+          && parsedContentType != null
+          && parsedContentType.shouldCapture()) {
 
         CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpResponse);
         int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
+        Charset charset = parsedContentType.getCharset();
 
         // set the buffer to capture response body
         // the buffer is used byt captureBody method
@@ -89,7 +88,7 @@ public class HttpClientResponseTracingHandler extends ChannelInboundHandlerAdapt
     }
 
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && agentConfig.getDataCapture().getHttpBody().getResponse().getValue()) {
+        && captureSettings.captureHttpResponseBody()) {
       DataCaptureUtils.captureBody(span, ctx.channel(), AttributeKeys.RESPONSE_BODY_BUFFER, msg);
     }
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
+import java.util.ArrayDeque;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * Capture state of the requests in flight on a channel. With HTTP/1.1 pipelining a client sends
+ * requests before the responses to the previous ones have been written, the server context kept in
+ * the channel by the OpenTelemetry instrumentation belongs to the last request then. Requests are
+ * read and responses are written in the same order, therefore the request handler appends an
+ * exchange and the response handler completes the oldest one.
+ *
+ * <p>The state is accessed only on the event loop of the channel. HTTP/2 streams of an {@code
+ * Http2MultiplexHandler} are child channels, each of them has its own exchanges.
+ */
+public final class HttpServerExchanges {
+
+  private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>(2);
+
+  static HttpServerExchanges get(Channel channel) {
+    Attribute<HttpServerExchanges> attr = channel.attr(AttributeKeys.SERVER_EXCHANGES);
+    HttpServerExchanges exchanges = attr.get();
+    if (exchanges == null) {
+      exchanges = new HttpServerExchanges();
+      attr.set(exchanges);
+    }
+    return exchanges;
+  }
+
+  /** @return exchanges of the channel or null if no request has been read */
+  static HttpServerExchanges find(Channel channel) {
+    return channel.attr(AttributeKeys.SERVER_EXCHANGES).get();
+  }
+
+  Exchange start(Context context) {
+    Exchange exchange = new Exchange(context);
+    exchanges.addLast(exchange);
+    return exchange;
+  }
+
+  /** @return exchange of the request which has been read last or null */
+  Exchange latest() {
+    return exchanges.peekLast();
+  }
+
+  /** @return exchange of the request which is being read or null */
+  Exchange reading() {
+    Exchange exchange = exchanges.peekLast();
+    return exchange != null && !exchange.requestComplete ? exchange : null;
+  }
+
+  /** @return exchange of the response which is written next or null */
+  Exchange responding() {
+    return exchanges.peekFirst();
+  }
+
+  void finish(Exchange exchange) {
+    exchanges.remove(exchange);
+    exchange.release();
+  }
+
+  void finishAll() {
+    Exchange exchange;
+    while ((exchange = exchanges.pollFirst()) != null) {
+      exchange.release();
+    }
+  }
+
+  static final class Exchange {
+    final Context context;
+    final Span span;
+    BoundedByteArrayOutputStream requestBody;
+    BoundedByteArrayOutputStream responseBody;
+    int responseStatus;
+    String[] responseHeaders;
+    boolean requestComplete;
+    // writes the response to a blocked request once the preceding responses have been written
+    Runnable blockResponse;
+
+    Exchange(Context context) {
+      this.context = context;
+      this.span = Span.fromContext(context);
+    }
+
+    // bodies which have not been completed, e.g. the response was written before the request body
+    // was read or the channel was closed
+    void release() {
+      if (requestBody != null) {
+        requestBody.release();
+        requestBody = null;
+      }
+      if (responseBody != null) {
+        responseBody.release();
+        responseBody = null;
+      }
+    }
+  }
+}
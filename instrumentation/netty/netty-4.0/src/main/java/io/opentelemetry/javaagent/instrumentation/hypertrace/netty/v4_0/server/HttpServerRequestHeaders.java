@@ -0,0 +1,50 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server;
+
+import io.netty.handler.codec.http.HttpHeaders;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.filter.api.HeadersView;
+
+/** {@link HeadersView} over Netty request headers. */
+class HttpServerRequestHeaders extends HeadersView {
+
+  private static final String PREFIX = HypertraceSemanticAttributes.httpRequestHeader("").getKey();
+
+  private final HttpHeaders headers;
+
+  HttpServerRequestHeaders(HttpHeaders headers) {
+    super(PREFIX);
+    this.headers = headers;
+  }
+
+  @Override
+  protected String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  @Override
+  protected void forEachHeader(BiConsumer<String, String> consumer) {
+    for (Map.Entry<String, String> entry : headers) {
+      consumer.accept(
+          HypertraceSemanticAttributes.httpRequestHeader(entry.getKey()).getKey(),
+          entry.getValue());
+    }
+  }
+}
@@ -24,70 +24,59 @@ import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
 import io.netty.handler.codec.http.FullHttpMessage;
 import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpResponse;
 import io.netty.handler.codec.http.LastHttpContent;
-import io.netty.util.Attribute;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
 import io.opentelemetry.context.Scope;
-import io.opentelemetry.instrumentation.api.tracer.HttpStatusConverter;
-import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.AttributeKeys;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.DataCaptureUtils;
-import io.opentelemetry.javaagent.instrumentation.netty.v4_0.server.NettyHttpServerTracer;
-import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_0.server.HttpServerExchanges.Exchange;
 import java.nio.charset.Charset;
-import java.util.Map;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
-import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 
 public class HttpServerResponseTracingHandler extends ChannelOutboundHandlerAdapter {
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
-
   @Override
   public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise prm) {
-    Context context = NettyHttpServerTracer.tracer().getServerContext(ctx.channel());
-    if (context == null) {
+    HttpServerExchanges exchanges = HttpServerExchanges.find(ctx.channel());
+    Exchange exchange = exchanges == null ? null : exchanges.responding();
+    if (exchange == null || (msg instanceof HttpResponse && isInformational((HttpResponse) msg))) {
+      // 100 Continue precedes the response of the same request
       ctx.write(msg, prm);
       return;
     }
-    Span span = Span.fromContext(context);
+    Context context = exchange.context;
+    Span span = exchange.span;
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     if (msg instanceof HttpResponse) {
       HttpResponse httpResponse = (HttpResponse) msg;
-      if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
-        captureHeaders(span, httpResponse);
+      exchange.responseStatus = httpResponse.getStatus().code();
+      if (captureSettings.captureHttpResponseHeaders()) {
+        exchange.responseHeaders = ResponseCompletion.detachHeaders(httpResponse);
       }
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpResponse);
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
-          && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
+      ParsedContentType parsedContentType =
+          contentType == null ? null : ContentTypeUtils.parse(contentType.toString());
+      if (captureSettings.captureHttpResponseBody()
+          && parsedContentType != null
+          && parsedContentType.shouldCapture()) {
 
         CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpResponse);
         int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
-
-        // set the buffer to capture response body
-        // the buffer is used byt captureBody method
-        Attribute<BoundedByteArrayOutputStream> bufferAttr =
-            ctx.channel().attr(AttributeKeys.RESPONSE_BODY_BUFFER);
-        bufferAttr.set(BoundedBuffersFactory.createStream(contentLength, charset));
+        Charset charset = parsedContentType.getCharset();
+        exchange.responseBody = BoundedBuffersFactory.createStream(contentLength, charset);
       }
     }
 
-    if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && agentConfig.getDataCapture().getHttpBody().getResponse().getValue()) {
-      DataCaptureUtils.captureBody(span, ctx.channel(), AttributeKeys.RESPONSE_BODY_BUFFER, msg);
+    if ((msg instanceof HttpContent || msg instanceof ByteBuf) && exchange.responseBody != null) {
+      DataCaptureUtils.captureContent(exchange.responseBody, msg);
     }
 
     try (Scope ignored = context.makeCurrent()) {
@@ -96,20 +85,29 @@ public class HttpServerResponseTracingHandler extends ChannelOutboundHandlerAdap
       tracer().endExceptionally(context, throwable);
       throw throwable;
     }
-    if (msg instanceof HttpResponse) {
-      HttpResponse httpResponse = (HttpResponse) msg;
-      span.setAttribute(SemanticAttributes.HTTP_STATUS_CODE, httpResponse.getStatus().code());
-      span.setStatus(HttpStatusConverter.statusFromHttpStatus(httpResponse.getStatus().code()));
-    }
     if (msg instanceof FullHttpMessage || msg instanceof LastHttpContent) {
-      span.end();
+      ResponseCompletion completion =
+          new ResponseCompletion(
+              span,
+              exchange.responseStatus,
+              exchange.responseHeaders,
+              exchange.responseBody,
+              System.nanoTime());
+      // the completion owns the body buffer now
+      exchange.responseBody = null;
+      exchanges.finish(exchange);
+      completion.submit();
+      Exchange next = exchanges.responding();
+      if (next != null && next.blockResponse != null) {
+        Runnable blockResponse = next.blockResponse;
+        next.blockResponse = null;
+        ctx.executor().execute(blockResponse);
+      }
     }
   }
 
-  private static void captureHeaders(Span span, HttpMessage httpMessage) {
-    for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
-      span.setAttribute(
-          HypertraceSemanticAttributes.httpResponseHeader(entry.getKey()), entry.getValue());
-    }
+  private static boolean isInformational(HttpResponse httpResponse) {
+    int code = httpResponse.getStatus().code();
+    return code >= 100 && code < 200 && code != 101;
   }
 }
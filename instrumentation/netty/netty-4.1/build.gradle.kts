@@ -3,6 +3,7 @@ plugins {
     id("net.bytebuddy.byte-buddy")
     id("io.opentelemetry.instrumentation.auto-instrumentation")
     muzzle
+    id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 muzzle {
@@ -0,0 +1,146 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+import io.opentelemetry.api.trace.Span;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the bulk copy of {@link DataCaptureUtils#captureBody} with the byte by byte copy through
+ * {@link ByteBuf#forEachByte} which it replaced. The body is passed through an {@link
+ * EmbeddedChannel} in pooled direct buffers, as one {@link LastHttpContent} or in chunks.
+ *
+ * <p>Run with {@code ./gradlew :instrumentation:netty:netty-4.1:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataCaptureBenchmark {
+
+  private static final AttributeKey<BoundedByteArrayOutputStream> BODY_BUFFER =
+      AttributeKey.valueOf("hypertrace.benchmark.body.buffer");
+
+  @Param({"1024", "65536"})
+  public int bodySize;
+
+  @Param({"1", "16"})
+  public int chunks;
+
+  private ByteBuf[] content;
+  private EmbeddedChannel bulkChannel;
+  private EmbeddedChannel byteByByteChannel;
+
+  @Setup
+  public void setup() {
+    content = new ByteBuf[chunks];
+    int chunkSize = bodySize / chunks;
+    for (int i = 0; i < chunks; i++) {
+      content[i] = PooledByteBufAllocator.DEFAULT.directBuffer(chunkSize);
+      for (int j = 0; j < chunkSize; j++) {
+        content[i].writeByte('a' + j % 26);
+      }
+    }
+    bulkChannel = new EmbeddedChannel(new BulkCaptureHandler());
+    byteByByteChannel = new EmbeddedChannel(new ByteByByteCaptureHandler());
+  }
+
+  @TearDown
+  public void tearDown() {
+    bulkChannel.finish();
+    byteByByteChannel.finish();
+    for (ByteBuf buf : content) {
+      buf.release();
+    }
+  }
+
+  @Benchmark
+  public void bulkCopy() {
+    writeBody(bulkChannel);
+  }
+
+  @Benchmark
+  public void byteByByteCopy() {
+    writeBody(byteByByteChannel);
+  }
+
+  private void writeBody(EmbeddedChannel channel) {
+    channel
+        .attr(BODY_BUFFER)
+        .set(BoundedBuffersFactory.createStream(bodySize, StandardCharsets.UTF_8));
+    for (int i = 0; i < chunks - 1; i++) {
+      channel.writeInbound(new DefaultHttpContent(content[i].duplicate().retain()));
+    }
+    channel.writeInbound(new DefaultLastHttpContent(content[chunks - 1].duplicate().retain()));
+  }
+
+  static final class BulkCaptureHandler extends ChannelInboundHandlerAdapter {
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      DataCaptureUtils.captureBody(Span.getInvalid(), ctx.channel(), BODY_BUFFER, msg);
+      ReferenceCountUtil.release(msg);
+    }
+  }
+
+  /** The capture before the bulk copy, decoding the body at the last content. */
+  static final class ByteByByteCaptureHandler extends ChannelInboundHandlerAdapter {
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      BoundedByteArrayOutputStream buffer = ctx.channel().attr(BODY_BUFFER).get();
+      ByteBuf content = ((HttpContent) msg).content();
+      content.forEachByte(
+          value -> {
+            buffer.write(value);
+            return true;
+          });
+      if (msg instanceof LastHttpContent) {
+        ctx.channel().attr(BODY_BUFFER).remove();
+        Span.getInvalid().setAttribute(BODY_BUFFER.name(), buffer.toString(StandardCharsets.UTF_8));
+        buffer.release();
+      }
+      ReferenceCountUtil.release(msg);
+    }
+  }
+}
@@ -17,7 +17,7 @@
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1;
 
 import io.netty.util.AttributeKey;
-import java.util.Map;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerExchanges;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
@@ -29,6 +29,6 @@ public class AttributeKeys {
   public static final AttributeKey<BoundedByteArrayOutputStream> REQUEST_BODY_BUFFER =
       AttributeKey.valueOf(HypertraceSemanticAttributes.HTTP_REQUEST_BODY.getKey());
 
-  public static final AttributeKey<Map<String, String>> REQUEST_HEADERS =
-      AttributeKey.valueOf(AttributeKeys.class, "request-headers");
+  public static final AttributeKey<HttpServerExchanges> SERVER_EXCHANGES =
+      AttributeKey.valueOf(AttributeKeys.class.getName() + ".server-exchanges");
 }
@@ -16,50 +16,370 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
-import io.netty.util.Attribute;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.ReferenceCountUtil;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
-import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.AttributeKeys;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerExchanges.Exchange;
 import io.opentelemetry.javaagent.instrumentation.netty.v4_1.server.NettyHttpServerTracer;
-import java.util.Map;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 import org.hypertrace.agent.filter.FilterRegistry;
+import org.hypertrace.agent.filter.api.Decision;
+import org.hypertrace.agent.filter.api.Filter;
 
+/**
+ * Evaluates the request headers and body with the filters and answers blocked requests with 403.
+ *
+ * <p>The header evaluation is asynchronous: if the decision is not available right away, the
+ * handler stops reading from the channel and holds the request and the messages already read until
+ * the decision completes. The decision is applied on the event loop of the channel.
+ *
+ * <p>If a filter evaluates the request body, the request and its body are held until the last
+ * content, up to the maximum body size of the data capture config, so the application does not see
+ * a request which the filters block because of its body. The held chunks are then passed to the
+ * filters, followed by the whole body. If the body is larger, the held part is evaluated and passed
+ * on, the remaining chunks are evaluated one by one before they are passed on. Requests which
+ * expect {@code 100 Continue} are not held because the client waits for the application to accept
+ * them. A request blocked after a part of it has been passed on is answered by closing the
+ * channel, the application might be responding already.
+ *
+ * <p>The filters see the span of the {@link HttpServerExchanges exchange} started for the request
+ * when it was read. The response to a blocked pipelined request is written after the responses to
+ * the preceding requests.
+ */
 public class HttpServerBlockingRequestHandler extends ChannelInboundHandlerAdapter {
 
+  // state is accessed only on the event loop
+  // messages held while a decision is pending
+  private Queue<Object> pendingMessages;
+  // body of the current request which is evaluated by the filters
+  private RequestBody requestBody;
+  // a request has been blocked, the channel is closed after the response
+  private boolean blocked;
+  // reading has been stopped for a pending decision, a replayed request might wait for another
+  private boolean readSuspended;
+  // auto read of the channel before reading was stopped
+  private boolean autoReadBeforeDecision;
+
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
-    Channel channel = ctx.channel();
+    if (msg instanceof HttpRequest && !blocked && FilterRegistry.hasFilters()) {
+      // a held request is passed on after the following requests have been read, the exchange
+      // has to be looked up now
+      Exchange exchange = readingExchange(ctx.channel());
+      if (exchange != null) {
+        msg = new FilteredRequest((HttpRequest) msg, exchange);
+      }
+    }
+    read(ctx, msg);
+  }
+
+  private void read(ChannelHandlerContext ctx, Object msg) {
+    if (blocked) {
+      release(msg);
+      return;
+    }
+    if (pendingMessages != null) {
+      pendingMessages.add(msg);
+      return;
+    }
+    if (requestBody != null && msg instanceof HttpContent) {
+      filterBody(ctx, (HttpContent) msg);
+      return;
+    }
+    if (msg instanceof FilteredRequest) {
+      filterHeaders(ctx, (FilteredRequest) msg);
+      return;
+    }
+    ctx.fireChannelRead(msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) {
+    Queue<Object> messages = pendingMessages;
+    pendingMessages = null;
+    if (messages != null) {
+      messages.forEach(HttpServerBlockingRequestHandler::release);
+    }
+    RequestBody body = requestBody;
+    requestBody = null;
+    if (body != null) {
+      body.release();
+    }
+    ctx.fireChannelInactive();
+  }
+
+  /** @return exchange started by the request tracing handler for the request which is read */
+  private static Exchange readingExchange(Channel channel) {
     Context context = NettyHttpServerTracer.tracer().getServerContext(channel);
-    if (context == null) {
-      ctx.fireChannelRead(msg);
+    HttpServerExchanges exchanges = HttpServerExchanges.find(channel);
+    Exchange exchange = exchanges == null ? null : exchanges.latest();
+    return exchange != null && context != null && exchange.context == context ? exchange : null;
+  }
+
+  private void filterHeaders(ChannelHandlerContext ctx, FilteredRequest filtered) {
+    HttpRequest httpRequest = filtered.request;
+    CompletableFuture<Decision> decision =
+        FilterRegistry.getFilter()
+            .evaluateRequestHeadersAsync(
+                filtered.exchange.span, new HttpServerRequestHeaders(httpRequest.headers()))
+            .toCompletableFuture();
+    if (!decision.isDone()) {
+      awaitDecision(ctx, filtered, decision);
+      return;
+    }
+    if (isBlock(decision)) {
+      ReferenceCountUtil.release(httpRequest);
+      block(ctx, filtered.exchange, httpRequest.protocolVersion());
+      return;
+    }
+    startBody(ctx, httpRequest, filtered.exchange);
+  }
+
+  private void awaitDecision(
+      ChannelHandlerContext ctx, FilteredRequest filtered, CompletableFuture<Decision> decision) {
+    if (!readSuspended) {
+      // the application might have turned auto read off for its own back pressure
+      readSuspended = true;
+      autoReadBeforeDecision = ctx.channel().config().isAutoRead();
+      ctx.channel().config().setAutoRead(false);
+    }
+    pendingMessages = new ArrayDeque<>();
+    pendingMessages.add(filtered);
+    decision.whenComplete(
+        (result, error) -> ctx.executor().execute(() -> applyDecision(ctx, decision)));
+  }
+
+  private void applyDecision(ChannelHandlerContext ctx, CompletableFuture<Decision> decision) {
+    Queue<Object> messages = pendingMessages;
+    pendingMessages = null;
+    if (messages == null) {
+      // the channel has been closed
+      return;
+    }
+    FilteredRequest filtered = (FilteredRequest) messages.poll();
+    if (isBlock(decision)) {
+      ReferenceCountUtil.release(filtered.request);
+      messages.forEach(HttpServerBlockingRequestHandler::release);
+      block(ctx, filtered.exchange, filtered.request.protocolVersion());
+      return;
+    }
+    startBody(ctx, filtered.request, filtered.exchange);
+    // a pipelined request might be held again
+    for (Object msg = messages.poll(); msg != null; msg = messages.poll()) {
+      read(ctx, msg);
+    }
+    if (pendingMessages == null && !blocked) {
+      readSuspended = false;
+      ctx.channel().config().setAutoRead(autoReadBeforeDecision);
+    }
+  }
+
+  private void startBody(ChannelHandlerContext ctx, HttpRequest request, Exchange exchange) {
+    if (!FilterRegistry.evaluatesRequestBody()) {
+      ctx.fireChannelRead(request);
       return;
     }
-    Span span = Span.fromContext(context);
+    CharSequence contentType = DataCaptureUtils.getContentType(request);
+    ParsedContentType parsedContentType =
+        contentType == null ? null : ContentTypeUtils.parse(contentType.toString());
+    Charset charset =
+        parsedContentType == null
+            ? ContentTypeCharsetUtils.toCharset(null)
+            : parsedContentType.getCharset();
+    RequestBody body =
+        new RequestBody(
+            exchange, charset, request.protocolVersion(), BoundedBuffersFactory.MAX_SIZE);
+    requestBody = body;
+    if (request instanceof HttpContent) {
+      // full request
+      filterBody(ctx, (HttpContent) request);
+    } else if (HttpUtil.is100ContinueExpected(request)) {
+      body.streaming = true;
+      ctx.fireChannelRead(request);
+    } else {
+      body.held.add(request);
+    }
+  }
 
-    if (msg instanceof HttpRequest) {
-      Attribute<Map<String, String>> headersAttr = channel.attr(AttributeKeys.REQUEST_HEADERS);
-      Map<String, String> headers = headersAttr.getAndRemove();
-      if (headers != null && FilterRegistry.getFilter().evaluateRequestHeaders(span, headers)) {
-        forbidden(ctx, (HttpRequest) msg);
+  private void filterBody(ChannelHandlerContext ctx, HttpContent content) {
+    RequestBody body = requestBody;
+    boolean last = content instanceof LastHttpContent;
+    if (last) {
+      requestBody = null;
+    }
+    Filter filter = FilterRegistry.getFilter();
+    if (body.streaming) {
+      if (body.evaluateChunk(filter, content) || (last && filter.onRequestBodyEnd(body.span))) {
+        requestBody = null;
+        ReferenceCountUtil.release(content);
+        abort(ctx);
         return;
       }
+      ctx.fireChannelRead(content);
+      return;
+    }
+
+    body.held.add(content);
+    body.heldBytes += content.content().readableBytes();
+    boolean block;
+    if (last) {
+      block = body.evaluateHeld(filter) || body.evaluateEnd(filter);
+    } else if (body.heldBytes > body.maxHeldBytes) {
+      block = body.evaluateHeld(filter);
+      body.streaming = true;
+    } else {
+      return;
+    }
+    if (block) {
+      requestBody = null;
+      body.release();
+      block(ctx, body.exchange, body.version);
+      return;
+    }
+    for (Object msg = body.held.poll(); msg != null; msg = body.held.poll()) {
+      ctx.fireChannelRead(msg);
     }
-    ctx.fireChannelRead(msg);
   }
 
-  static void forbidden(ChannelHandlerContext ctx, HttpRequest request) {
+  private static boolean isBlock(CompletableFuture<Decision> decision) {
+    try {
+      return decision.getNow(Decision.ALLOW) == Decision.BLOCK;
+    } catch (CompletionException | CancellationException e) {
+      // failed evaluation, the filters log their failures
+      return false;
+    }
+  }
+
+  private void block(ChannelHandlerContext ctx, Exchange exchange, HttpVersion version) {
+    blocked = true;
+    // do not read the rest of the request, the channel is closed after the response
+    ctx.channel().config().setAutoRead(false);
+    if (HttpServerExchanges.find(ctx.channel()).responding() != exchange) {
+      // pipelined request, the responses to the preceding requests are written first
+      exchange.blockResponse = () -> writeBlockResponse(ctx, version);
+      return;
+    }
+    writeBlockResponse(ctx, version);
+  }
+
+  /**
+   * Blocks a request which the application has seen already. It might be writing its response, a
+   * 403 would be a second response on the connection, the channel is closed instead.
+   */
+  private void abort(ChannelHandlerContext ctx) {
+    blocked = true;
+    ctx.channel().config().setAutoRead(false);
+    ctx.close();
+  }
+
+  private static void writeBlockResponse(ChannelHandlerContext ctx, HttpVersion version) {
     DefaultFullHttpResponse blockResponse =
-        new DefaultFullHttpResponse(request.protocolVersion(), HttpResponseStatus.FORBIDDEN);
+        new DefaultFullHttpResponse(version, HttpResponseStatus.FORBIDDEN);
     blockResponse.headers().add("Content-Length", "0");
-    ReferenceCountUtil.release(request);
     ctx.writeAndFlush(blockResponse).addListener(ChannelFutureListener.CLOSE);
   }
+
+  private static void release(Object msg) {
+    if (msg instanceof FilteredRequest) {
+      ReferenceCountUtil.release(((FilteredRequest) msg).request);
+    } else {
+      ReferenceCountUtil.release(msg);
+    }
+  }
+
+  /** Request which is evaluated by the filters with the exchange it was read for. */
+  private static final class FilteredRequest {
+    final HttpRequest request;
+    final Exchange exchange;
+
+    FilteredRequest(HttpRequest request, Exchange exchange) {
+      this.request = request;
+      this.exchange = exchange;
+    }
+  }
+
+  private static final class RequestBody {
+    final Exchange exchange;
+    final Span span;
+    final Charset charset;
+    final HttpVersion version;
+    final int maxHeldBytes;
+    // the request and the contents which have not been passed on
+    final Queue<Object> held = new ArrayDeque<>();
+    int heldBytes;
+    // the body is larger than the held bytes, chunks are evaluated and passed on as they are read
+    boolean streaming;
+
+    RequestBody(Exchange exchange, Charset charset, HttpVersion version, int maxHeldBytes) {
+      this.exchange = exchange;
+      this.span = exchange.span;
+      this.charset = charset;
+      this.version = version;
+      this.maxHeldBytes = maxHeldBytes;
+    }
+
+    boolean evaluateChunk(Filter filter, HttpContent content) {
+      ByteBuf buf = content.content();
+      return buf.isReadable()
+          && filter.onRequestBodyChunk(span, buf.nioBuffer().asReadOnlyBuffer(), charset);
+    }
+
+    boolean evaluateHeld(Filter filter) {
+      for (Object msg : held) {
+        if (msg instanceof HttpContent && evaluateChunk(filter, (HttpContent) msg)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Evaluates the end of the body and the whole body if it has been held. */
+    boolean evaluateEnd(Filter filter) {
+      if (filter.onRequestBodyEnd(span)) {
+        return true;
+      }
+      if (streaming || heldBytes == 0 || heldBytes > maxHeldBytes) {
+        return false;
+      }
+      byte[] bytes = new byte[heldBytes];
+      int offset = 0;
+      for (Object msg : held) {
+        if (msg instanceof HttpContent) {
+          ByteBuf buf = ((HttpContent) msg).content();
+          int length = buf.readableBytes();
+          buf.getBytes(buf.readerIndex(), bytes, offset, length);
+          offset += length;
+        }
+      }
+      return filter.evaluateRequestBody(span, new String(bytes, charset));
+    }
+
+    void release() {
+      for (Object msg = held.poll(); msg != null; msg = held.poll()) {
+        ReferenceCountUtil.release(msg);
+      }
+    }
+  }
 }
@@ -21,84 +21,93 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.handler.codec.http.HttpContent;
-import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpRequest;
-import io.netty.util.Attribute;
-import io.opentelemetry.api.common.AttributeKey;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.context.Context;
-import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.AttributeKeys;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.DataCaptureUtils;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.HttpServerExchanges.Exchange;
 import io.opentelemetry.javaagent.instrumentation.netty.v4_1.server.NettyHttpServerTracer;
 import java.nio.charset.Charset;
-import java.util.HashMap;
 import java.util.Map;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
-import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
-import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
+import org.hypertrace.agent.core.instrumentation.utils.ParsedContentType;
 
 public class HttpServerRequestTracingHandler extends ChannelInboundHandlerAdapter {
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
-
   @Override
   public void channelRead(ChannelHandlerContext ctx, Object msg) {
     Channel channel = ctx.channel();
-    Context context = NettyHttpServerTracer.tracer().getServerContext(channel);
-    if (context == null) {
-      ctx.fireChannelRead(msg);
-      return;
+    Exchange exchange;
+    if (msg instanceof HttpRequest) {
+      Context context = NettyHttpServerTracer.tracer().getServerContext(channel);
+      if (context == null) {
+        ctx.fireChannelRead(msg);
+        return;
+      }
+      exchange = HttpServerExchanges.get(channel).start(context);
+    } else {
+      HttpServerExchanges exchanges = HttpServerExchanges.find(channel);
+      exchange = exchanges == null ? null : exchanges.reading();
+      if (exchange == null) {
+        ctx.fireChannelRead(msg);
+        return;
+      }
     }
-    Span span = Span.fromContext(context);
+    Span span = exchange.span;
+    CaptureSettings captureSettings = CaptureSettings.get();
 
     if (msg instanceof HttpRequest) {
       HttpRequest httpRequest = (HttpRequest) msg;
 
-      Map<String, String> headersMap = headersToMap(httpRequest);
-      if (agentConfig.getDataCapture().getHttpHeaders().getRequest().getValue()) {
-        headersMap.forEach((key, value) -> span.setAttribute(key, value));
+      if (captureSettings.captureHttpRequestHeaders()) {
+        for (Map.Entry<String, String> entry : httpRequest.headers()) {
+          span.setAttribute(
+              HypertraceSemanticAttributes.httpRequestHeader(entry.getKey()), entry.getValue());
+        }
       }
-      // used by blocking handler
-      channel.attr(AttributeKeys.REQUEST_HEADERS).set(headersMap);
 
       CharSequence contentType = DataCaptureUtils.getContentType(httpRequest);
-      if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
-          && contentType != null
-          && ContentTypeUtils.shouldCapture(contentType.toString())) {
+      ParsedContentType parsedContentType =
+          contentType == null ? null : ContentTypeUtils.parse(contentType.toString());
+      if (captureSettings.captureHttpRequestBody()
+          && parsedContentType != null
+          && parsedContentType.shouldCapture()) {
 
         CharSequence contentLengthHeader = DataCaptureUtils.getContentLength(httpRequest);
         int contentLength = ContentLengthUtils.parseLength(contentLengthHeader);
 
-        String charsetString = ContentTypeUtils.parseCharset(contentType.toString());
-        Charset charset = ContentTypeCharsetUtils.toCharset(charsetString);
-
-        // set the buffer to capture response body
-        // the buffer is used byt captureBody method
-        Attribute<BoundedByteArrayOutputStream> bufferAttr =
-            ctx.channel().attr(AttributeKeys.REQUEST_BODY_BUFFER);
-        bufferAttr.set(BoundedBuffersFactory.createStream(contentLength, charset));
+        Charset charset = parsedContentType.getCharset();
+        exchange.requestBody = BoundedBuffersFactory.createStream(contentLength, charset);
       }
     }
 
+    if (msg instanceof LastHttpContent) {
+      exchange.requestComplete = true;
+    }
     if ((msg instanceof HttpContent || msg instanceof ByteBuf)
-        && agentConfig.getDataCapture().getHttpBody().getRequest().getValue()) {
-      DataCaptureUtils.captureBody(span, channel, AttributeKeys.REQUEST_BODY_BUFFER, msg);
+        && exchange.requestBody != null
+        && DataCaptureUtils.captureBody(
+            span,
+            exchange.requestBody,
+            HypertraceSemanticAttributes.HTTP_REQUEST_BODY.getKey(),
+            msg)) {
+      exchange.requestBody = null;
     }
 
     ctx.fireChannelRead(msg);
   }
 
-  private static Map<String, String> headersToMap(HttpMessage httpMessage) {
-    Map<String, String> map = new HashMap<>();
-    for (Map.Entry<String, String> entry : httpMessage.headers().entries()) {
-      AttributeKey<String> key = HypertraceSemanticAttributes.httpRequestHeader(entry.getKey());
-      map.put(key.getKey(), entry.getValue());
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    HttpServerExchanges exchanges = HttpServerExchanges.find(ctx.channel());
+    if (exchanges != null) {
+      exchanges.finishAll();
     }
-    return map;
+    super.channelInactive(ctx);
   }
 }
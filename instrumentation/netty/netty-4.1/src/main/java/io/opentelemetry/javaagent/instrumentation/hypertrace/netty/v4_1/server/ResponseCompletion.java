@@ -0,0 +1,94 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
+
+import io.netty.handler.codec.http.HttpMessage;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.instrumentation.api.tracer.HttpStatusConverter;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.DataCaptureUtils;
+import io.opentelemetry.semconv.trace.attributes.SemanticAttributes;
+import java.util.List;
+import java.util.Map;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.SpanCompleter;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+
+/**
+ * Sets the response attributes and ends the server span. The event loop only detaches the headers
+ * and the body buffer, decoding them and setting the attributes is left to the {@link
+ * SpanCompleter} worker if it is enabled.
+ */
+final class ResponseCompletion implements Runnable {
+
+  private final Span span;
+  private final int statusCode;
+  // names and values, alternating
+  private final String[] headers;
+  private final BoundedByteArrayOutputStream body;
+  private final long endNanoTime;
+
+  ResponseCompletion(
+      Span span,
+      int statusCode,
+      String[] headers,
+      BoundedByteArrayOutputStream body,
+      long endNanoTime) {
+    this.span = span;
+    this.statusCode = statusCode;
+    this.headers = headers;
+    this.body = body;
+    this.endNanoTime = endNanoTime;
+  }
+
+  static String[] detachHeaders(HttpMessage httpMessage) {
+    List<Map.Entry<String, String>> entries = httpMessage.headers().entries();
+    String[] headers = new String[entries.size() * 2];
+    int i = 0;
+    for (Map.Entry<String, String> entry : entries) {
+      headers[i++] = entry.getKey();
+      headers[i++] = entry.getValue();
+    }
+    return headers;
+  }
+
+  /** Hands the completion over to the worker or runs it if the worker cannot take it. */
+  void submit() {
+    SpanCompleter completer = SpanCompleter.get();
+    if (completer == null || !completer.submit(this)) {
+      run();
+    }
+  }
+
+  @Override
+  public void run() {
+    if (headers != null) {
+      for (int i = 0; i < headers.length; i += 2) {
+        span.setAttribute(
+            HypertraceSemanticAttributes.httpResponseHeader(headers[i]), headers[i + 1]);
+      }
+    }
+    if (body != null) {
+      DataCaptureUtils.addBody(
+          span, body, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY.getKey());
+    }
+    if (statusCode > 0) {
+      span.setAttribute(SemanticAttributes.HTTP_STATUS_CODE, statusCode);
+      span.setStatus(HttpStatusConverter.statusFromHttpStatus(statusCode));
+    }
+    SpanCompleter.end(span, endNanoTime);
+  }
+}
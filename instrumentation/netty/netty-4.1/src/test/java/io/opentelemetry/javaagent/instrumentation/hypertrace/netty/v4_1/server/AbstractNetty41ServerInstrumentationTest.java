@@ -16,20 +16,30 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server;
 
+import static io.opentelemetry.api.common.AttributeKey.stringKey;
 import static io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.NettyTestServer.RESPONSE_BODY;
 import static io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.NettyTestServer.RESPONSE_HEADER_NAME;
 import static io.opentelemetry.javaagent.instrumentation.hypertrace.netty.v4_1.server.NettyTestServer.RESPONSE_HEADER_VALUE;
 
 import io.opentelemetry.sdk.trace.data.SpanData;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeoutException;
+import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okio.Buffer;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.testing.AbstractInstrumenterTest;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Assertions;
@@ -172,4 +182,177 @@ public abstract class AbstractNetty41ServerInstrumentationTest extends AbstractI
             .getAttributes()
             .get(HypertraceSemanticAttributes.httpResponseHeader(RESPONSE_BODY)));
   }
+
+  @Test
+  public void blockingBody() throws IOException, TimeoutException, InterruptedException {
+    Request request =
+        new Request.Builder()
+            .url(String.format("http://localhost:%d/post", port))
+            .header(REQUEST_HEADER_NAME, REQUEST_HEADER_VALUE)
+            .post(
+                RequestBody.create(
+                    "{\"mockblock\":true}", MediaType.get("application/json; charset=utf-8")))
+            .build();
+
+    try (Response response = httpClient.newCall(request).execute()) {
+      Assertions.assertEquals(403, response.code());
+      Assertions.assertTrue(response.body().string().isEmpty());
+    }
+
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    TEST_WRITER.waitForTraces(1);
+    Assertions.assertEquals(1, traces.size());
+    List<SpanData> trace = traces.get(0);
+    Assertions.assertEquals(1, trace.size());
+    SpanData spanData = trace.get(0);
+
+    Assertions.assertEquals(
+        "true", spanData.getAttributes().get(stringKey("hypertrace.mock.filter.result")));
+    Assertions.assertNull(
+        spanData
+            .getAttributes()
+            .get(HypertraceSemanticAttributes.httpResponseHeader(RESPONSE_HEADER_NAME)));
+  }
+
+  @Test
+  public void pipelined() throws IOException, TimeoutException, InterruptedException {
+    String requests =
+        pipelinedRequest("{\"first\":1}") + pipelinedRequest("{\"second\":2}");
+    try (Socket socket = new Socket("localhost", port)) {
+      OutputStream outputStream = socket.getOutputStream();
+      // both requests are sent before the first response is read
+      outputStream.write(requests.getBytes(StandardCharsets.UTF_8));
+      outputStream.flush();
+
+      InputStream inputStream = socket.getInputStream();
+      StringBuilder responses = new StringBuilder();
+      byte[] buffer = new byte[1024];
+      while (countOccurrences(responses.toString(), RESPONSE_BODY) < 2) {
+        int read = inputStream.read(buffer);
+        Assertions.assertTrue(read > 0, "connection closed before both responses were read");
+        responses.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+      }
+    }
+
+    TEST_WRITER.waitForTraces(2);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(2, traces.size());
+    Set<String> requestBodies = new HashSet<>();
+    for (List<SpanData> trace : traces) {
+      Assertions.assertEquals(1, trace.size());
+      SpanData spanData = trace.get(0);
+      requestBodies.add(
+          spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+      Assertions.assertEquals(
+          RESPONSE_BODY,
+          spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+    }
+    Set<String> expectedBodies = new HashSet<>();
+    expectedBodies.add("{\"first\":1}");
+    expectedBodies.add("{\"second\":2}");
+    Assertions.assertEquals(expectedBodies, requestBodies);
+  }
+
+  @Test
+  public void pipelinedBlocking() throws IOException, TimeoutException, InterruptedException {
+    String requests =
+        pipelinedRequest("{\"first\":1}")
+            + pipelinedRequest("{\"second\":2}", "mockblock: true\r\n");
+    String responses;
+    try (Socket socket = new Socket("localhost", port)) {
+      OutputStream outputStream = socket.getOutputStream();
+      outputStream.write(requests.getBytes(StandardCharsets.UTF_8));
+      outputStream.flush();
+      responses = readUntilClosed(socket.getInputStream());
+    }
+    // the response to the blocked request follows the response to the first one
+    int allowed = responses.indexOf("HTTP/1.1 200");
+    int blocked = responses.indexOf("HTTP/1.1 403");
+    Assertions.assertTrue(allowed >= 0 && blocked > allowed, responses);
+
+    TEST_WRITER.waitForTraces(2);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(2, traces.size());
+    int blockedSpans = 0;
+    for (List<SpanData> trace : traces) {
+      Assertions.assertEquals(1, trace.size());
+      SpanData spanData = trace.get(0);
+      // the filter annotates the span of the request it has blocked
+      if (spanData.getAttributes().get(HypertraceSemanticAttributes.httpRequestHeader("mockblock"))
+          != null) {
+        blockedSpans++;
+        Assertions.assertEquals(
+            "true", spanData.getAttributes().get(stringKey("hypertrace.mock.filter.result")));
+        Assertions.assertNull(
+            spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+      } else {
+        Assertions.assertNull(
+            spanData.getAttributes().get(stringKey("hypertrace.mock.filter.result")));
+        Assertions.assertEquals(
+            RESPONSE_BODY,
+            spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+      }
+    }
+    Assertions.assertEquals(1, blockedSpans);
+  }
+
+  @Test
+  public void blockingBodyChunkAfterCaptureLimit() throws IOException {
+    // the first chunk exceeds the limit, it is passed to the application before the second one is
+    // read
+    char[] firstChunk = new char[BoundedBuffersFactory.MAX_SIZE + 1];
+    Arrays.fill(firstChunk, 'a');
+    String request =
+        "POST /post HTTP/1.1\r\n"
+            + "Host: localhost\r\n"
+            + "Content-Type: application/json\r\n"
+            + "Transfer-Encoding: chunked\r\n\r\n"
+            + chunk(new String(firstChunk))
+            + chunk("mockblock")
+            + "0\r\n\r\n";
+    try (Socket socket = new Socket("localhost", port)) {
+      socket.setSoTimeout(10_000);
+      OutputStream outputStream = socket.getOutputStream();
+      outputStream.write(request.getBytes(StandardCharsets.UTF_8));
+      outputStream.flush();
+      // no 403 after the application has seen the request, the connection is closed
+      Assertions.assertEquals("", readUntilClosed(socket.getInputStream()));
+    }
+  }
+
+  private static String chunk(String data) {
+    return Integer.toHexString(data.length()) + "\r\n" + data + "\r\n";
+  }
+
+  private static String readUntilClosed(InputStream inputStream) throws IOException {
+    StringBuilder text = new StringBuilder();
+    byte[] buffer = new byte[1024];
+    for (int read = inputStream.read(buffer); read > 0; read = inputStream.read(buffer)) {
+      text.append(new String(buffer, 0, read, StandardCharsets.UTF_8));
+    }
+    return text.toString();
+  }
+
+  private static String pipelinedRequest(String body) {
+    return pipelinedRequest(body, "");
+  }
+
+  private static String pipelinedRequest(String body, String headers) {
+    return "POST /post HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + headers
+        + "Content-Type: application/json\r\n"
+        + "Content-Length: "
+        + body.length()
+        + "\r\n\r\n"
+        + body;
+  }
+
+  private static int countOccurrences(String text, String pattern) {
+    int count = 0;
+    for (int i = text.indexOf(pattern); i >= 0; i = text.indexOf(pattern, i + pattern.length())) {
+      count++;
+    }
+    return count;
+  }
 }
@@ -28,6 +28,7 @@ import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 import okio.Buffer;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeUtils;
@@ -47,20 +48,20 @@ public class OkHttpTracingInterceptor implements Interceptor {
     Span span = Span.current();
 
     Request request = chain.request();
-    if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getRequest().getValue()) {
+    if (CaptureSettings.get().captureHttpRequestHeaders()) {
       captureHeaders(span, request.headers(), HypertraceSemanticAttributes::httpRequestHeader);
     }
     captureRequestBody(span, request.body());
 
     Response response = chain.proceed(request);
-    if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getResponse().getValue()) {
+    if (CaptureSettings.get().captureHttpResponseHeaders()) {
       captureHeaders(span, response.headers(), HypertraceSemanticAttributes::httpResponseHeader);
     }
     return captureResponseBody(span, response);
   }
 
   private static void captureRequestBody(Span span, RequestBody requestBody) {
-    if (!HypertraceConfig.get().getDataCapture().getHttpBody().getRequest().getValue()) {
+    if (!CaptureSettings.get().captureHttpRequestBody()) {
       return;
     }
     if (requestBody == null) {
@@ -80,7 +81,7 @@ public class OkHttpTracingInterceptor implements Interceptor {
   }
 
   private static Response captureResponseBody(Span span, final Response response) {
-    if (!HypertraceConfig.get().getDataCapture().getHttpBody().getResponse().getValue()) {
+    if (!CaptureSettings.get().captureHttpResponseBody()) {
       return response;
     }
     if (response.body() == null) {
@@ -26,15 +26,14 @@ import static net.bytebuddy.matcher.ElementMatchers.not;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 
 import com.google.auto.service.AutoService;
-import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.api.Java8BytecodeBridge;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common.ServletRequestHeaders;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common.ServletSpanDecorator;
 import io.opentelemetry.javaagent.tooling.InstrumentationModule;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.util.Collections;
 import java.util.Enumeration;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import javax.servlet.ServletRequest;
@@ -45,6 +44,7 @@ import net.bytebuddy.asm.Advice;
 import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.filter.FilterRegistry;
@@ -144,21 +144,19 @@ public class Servlet2BodyInstrumentationModule extends InstrumentationModule {
       ServletSpanDecorator.addSessionId(currentSpan, httpRequest);
 
       // set request headers
-      @SuppressWarnings("unchecked")
-      Enumeration<String> headerNames = httpRequest.getHeaderNames();
-      Map<String, String> headers = new HashMap<>();
-      while (headerNames.hasMoreElements()) {
-        String headerName = headerNames.nextElement();
-        String headerValue = httpRequest.getHeader(headerName);
-        AttributeKey<String> attributeKey =
-            HypertraceSemanticAttributes.httpRequestHeader(headerName);
-
-        if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getRequest().getValue()) {
-          currentSpan.setAttribute(attributeKey, headerValue);
+      if (CaptureSettings.get().captureHttpRequestHeaders()) {
+        @SuppressWarnings("unchecked")
+        Enumeration<String> headerNames = httpRequest.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+          String headerName = headerNames.nextElement();
+          currentSpan.setAttribute(
+              HypertraceSemanticAttributes.httpRequestHeader(headerName),
+              httpRequest.getHeader(headerName));
         }
-        headers.put(attributeKey.getKey(), headerValue);
       }
-      if (FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, headers)) {
+      if (FilterRegistry.hasFilters()
+          && FilterRegistry.getFilter()
+              .evaluateRequestHeaders(currentSpan, new ServletRequestHeaders(httpRequest))) {
         httpResponse.setStatus(403);
         return true;
       }
@@ -191,7 +189,7 @@ public class Servlet2BodyInstrumentationModule extends InstrumentationModule {
       BufferingHttpServletResponse bufferingResponse = (BufferingHttpServletResponse) response;
       BufferingHttpServletRequest bufferingRequest = (BufferingHttpServletRequest) request;
 
-      if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getResponse().getValue()) {
+      if (CaptureSettings.get().captureHttpResponseHeaders()) {
         // set response headers
         Map<String, List<String>> bufferedHeaders = bufferingResponse.getBufferedHeaders();
         for (Map.Entry<String, List<String>> nameToHeadersEntry : bufferedHeaders.entrySet()) {
@@ -203,12 +201,12 @@ public class Servlet2BodyInstrumentationModule extends InstrumentationModule {
         }
       }
       // Bodies are captured at the end after all user processing.
-      if (HypertraceConfig.get().getDataCapture().getHttpBody().getRequest().getValue()) {
+      if (CaptureSettings.get().captureHttpRequestBody()) {
         currentSpan.setAttribute(
             HypertraceSemanticAttributes.HTTP_REQUEST_BODY,
             bufferingRequest.getBufferedBodyAsString());
       }
-      if (HypertraceConfig.get().getDataCapture().getHttpBody().getResponse().getValue()) {
+      if (CaptureSettings.get().captureHttpResponseBody()) {
         currentSpan.setAttribute(
             HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, bufferingResponse.getBufferAsString());
       }
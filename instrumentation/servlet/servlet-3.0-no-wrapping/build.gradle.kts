@@ -30,6 +30,8 @@ afterEvaluate{
 val versions: Map<String, String> by extra
 
 dependencies {
+    api(project(":instrumentation:servlet:servlet-common"))
+
     api("io.opentelemetry.javaagent.instrumentation:opentelemetry-javaagent-servlet-3.0:${versions["opentelemetry_java_agent"]}")
 
     compileOnly("javax.servlet:javax.servlet-api:3.1.0")
@@ -29,8 +29,7 @@ import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
@@ -52,7 +51,7 @@ public class BodyCaptureAsyncListener implements AsyncListener {
   private final ContextStore<ServletInputStream, ByteBufferSpanPair> inputStreamContextStore;
   private final ContextStore<BufferedReader, CharBufferSpanPair> readerContextStore;
 
-  private final AgentConfig agentConfig = HypertraceConfig.get();
+  private final CaptureSettings captureSettings = CaptureSettings.get();
 
   public BodyCaptureAsyncListener(
       AtomicBoolean responseHandled,
@@ -100,13 +99,13 @@ public class BodyCaptureAsyncListener implements AsyncListener {
     if (servletResponse instanceof HttpServletResponse) {
       HttpServletResponse httpResponse = (HttpServletResponse) servletResponse;
 
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
+      if (captureSettings.captureHttpResponseBody()
           && ContentTypeUtils.shouldCapture(httpResponse.getContentType())) {
         Utils.captureResponseBody(
             span, httpResponse, responseContextStore, streamContextStore, writerContextStore);
       }
 
-      if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+      if (captureSettings.captureHttpResponseHeaders()) {
         for (String headerName : httpResponse.getHeaderNames()) {
           String headerValue = httpResponse.getHeader(headerName);
           span.setAttribute(
@@ -118,7 +117,7 @@ public class BodyCaptureAsyncListener implements AsyncListener {
       HttpServletRequest httpRequest = (HttpServletRequest) servletRequest;
 
       // remove request body buffers from context stores, otherwise they might get reused
-      if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
+      if (captureSettings.captureHttpRequestBody()
           && ContentTypeUtils.shouldCapture(httpRequest.getContentType())) {
         Utils.resetRequestBodyBuffers(
             httpRequest, requestContextStore, inputStreamContextStore, readerContextStore);
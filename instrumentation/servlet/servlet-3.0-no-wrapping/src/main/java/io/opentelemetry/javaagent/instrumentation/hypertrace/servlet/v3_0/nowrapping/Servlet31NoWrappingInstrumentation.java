@@ -23,12 +23,11 @@ import static net.bytebuddy.matcher.ElementMatchers.isPublic;
 import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 
-import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.ContextStore;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.instrumentation.api.Java8BytecodeBridge;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common.ServletRequestHeaders;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.BufferedReader;
 import java.io.PrintWriter;
@@ -47,8 +46,8 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
@@ -89,8 +88,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
         @Advice.Argument(value = 1) ServletResponse response,
         @Advice.Local("currentSpan") Span currentSpan) {
 
-      int callDepth =
-          CallDepthThreadLocalMap.incrementCallDepth(Servlet31InstrumentationName.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.SERVLET);
       if (callDepth > 0) {
         return false;
       }
@@ -102,10 +100,9 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
       HttpServletResponse httpResponse = (HttpServletResponse) response;
       currentSpan = Java8BytecodeBridge.currentSpan();
 
-      AgentConfig agentConfig = HypertraceConfig.get();
+      CaptureSettings captureSettings = CaptureSettings.get();
       String contentType = httpRequest.getContentType();
-      if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
-          && ContentTypeUtils.shouldCapture(contentType)) {
+      if (captureSettings.captureHttpRequestBody() && ContentTypeUtils.shouldCapture(contentType)) {
         // The HttpServletRequest instrumentation uses this to
         // enable the instrumentation
         InstrumentationContext.get(HttpServletRequest.class, SpanAndObjectPair.class)
@@ -115,21 +112,19 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
       Utils.addSessionId(currentSpan, httpRequest);
 
       // set request headers
-      Enumeration<String> headerNames = httpRequest.getHeaderNames();
-      Map<String, String> headers = new HashMap<>();
-      while (headerNames.hasMoreElements()) {
-        String headerName = headerNames.nextElement();
-        String headerValue = httpRequest.getHeader(headerName);
-        AttributeKey<String> attributeKey =
-            HypertraceSemanticAttributes.httpRequestHeader(headerName);
-
-        if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getRequest().getValue()) {
-          currentSpan.setAttribute(attributeKey, headerValue);
+      if (captureSettings.captureHttpRequestHeaders()) {
+        Enumeration<String> headerNames = httpRequest.getHeaderNames();
+        while (headerNames.hasMoreElements()) {
+          String headerName = headerNames.nextElement();
+          currentSpan.setAttribute(
+              HypertraceSemanticAttributes.httpRequestHeader(headerName),
+              httpRequest.getHeader(headerName));
         }
-        headers.put(attributeKey.getKey(), headerValue);
       }
 
-      if (FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, headers)) {
+      if (FilterRegistry.hasFilters()
+          && FilterRegistry.getFilter()
+              .evaluateRequestHeaders(currentSpan, new ServletRequestHeaders(httpRequest))) {
         httpResponse.setStatus(403);
         // skip execution of the user code
         return true;
@@ -142,8 +137,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
         @Advice.Argument(0) ServletRequest request,
         @Advice.Argument(1) ServletResponse response,
         @Advice.Local("currentSpan") Span currentSpan) {
-      int callDepth =
-          CallDepthThreadLocalMap.decrementCallDepth(Servlet31InstrumentationName.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET);
       if (callDepth > 0) {
         return;
       }
@@ -155,7 +149,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
 
       HttpServletResponse httpResponse = (HttpServletResponse) response;
       HttpServletRequest httpRequest = (HttpServletRequest) request;
-      AgentConfig agentConfig = HypertraceConfig.get();
+      CaptureSettings captureSettings = CaptureSettings.get();
 
       // response context to capture body and clear the context
       ContextStore<HttpServletResponse, SpanAndObjectPair> responseContextStore =
@@ -195,7 +189,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
       }
 
       if (!request.isAsyncStarted() && responseHandled.compareAndSet(false, true)) {
-        if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+        if (captureSettings.captureHttpResponseHeaders()) {
           for (String headerName : httpResponse.getHeaderNames()) {
             String headerValue = httpResponse.getHeader(headerName);
             currentSpan.setAttribute(
@@ -204,7 +198,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
         }
 
         // capture response body
-        if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
+        if (captureSettings.captureHttpResponseBody()
             && ContentTypeUtils.shouldCapture(httpResponse.getContentType())) {
           Utils.captureResponseBody(
               currentSpan,
@@ -215,7 +209,7 @@ public class Servlet31NoWrappingInstrumentation implements TypeInstrumentation {
         }
 
         // remove request body buffers from context stores, otherwise they might get reused
-        if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
+        if (captureSettings.captureHttpRequestBody()
             && ContentTypeUtils.shouldCapture(httpRequest.getContentType())) {
           Utils.resetRequestBodyBuffers(
               httpRequest, requestContextStore, inputStreamContextStore, readerContextStore);
@@ -32,6 +32,7 @@ import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputSt
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedCharArrayWriter;
 import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
 
 public class Utils {
 
@@ -64,14 +65,17 @@ public class Utils {
           (ServletOutputStream) responseStreamWriterHolder.getAssociatedObject();
       BoundedByteArrayOutputStream buffer = streamContextStore.get(servletOutputStream);
       if (buffer != null) {
-        try {
-          span.setAttribute(
-              HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
-              buffer.toStringWithSuppliedCharset());
-        } catch (UnsupportedEncodingException e) {
-          // should not happen
+        if (!PendingBodies.defer(span, HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, buffer)) {
+          try {
+            span.setAttribute(
+                HypertraceSemanticAttributes.HTTP_RESPONSE_BODY,
+                buffer.toStringWithSuppliedCharset());
+          } catch (UnsupportedEncodingException e) {
+            // should not happen
+          }
         }
         streamContextStore.put(servletOutputStream, null);
+        buffer.release();
       }
     } else if (responseStreamWriterHolder.getAssociatedObject() instanceof PrintWriter) {
       PrintWriter printWriter = (PrintWriter) responseStreamWriterHolder.getAssociatedObject();
@@ -79,6 +83,7 @@ public class Utils {
       if (buffer != null) {
         span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, buffer.toString());
         writerContextStore.put(printWriter, null);
+        buffer.release();
       }
     }
   }
@@ -105,6 +110,7 @@ public class Utils {
         // it does not even call ServletInputStream#available()
         byteBufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
         streamContextStore.put(servletInputStream, null);
+        byteBufferSpanPair.buffer.release();
       }
     } else if (requestStreamReaderHolder.getAssociatedObject() instanceof BufferedReader) {
       BufferedReader bufferedReader =
@@ -113,6 +119,7 @@ public class Utils {
       if (charBufferSpanPair != null) {
         charBufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
         bufferedReaderContextStore.put(bufferedReader, null);
+        charBufferSpanPair.buffer.release();
       }
     }
   }
@@ -23,7 +23,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.IOException;
@@ -35,6 +34,7 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 
@@ -98,7 +98,7 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletInputStream.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_INPUT_STREAM);
       return bufferSpanPair;
     }
 
@@ -108,15 +108,17 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletInputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
 
       if (read == -1) {
         bufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        Utils.filterBodyEnd(bufferSpanPair);
       } else {
         bufferSpanPair.buffer.write((byte) read);
+        Utils.filterBodyByte(bufferSpanPair, read);
       }
     }
   }
@@ -130,7 +132,7 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletInputStream.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_INPUT_STREAM);
       return bufferSpanPair;
     }
 
@@ -142,15 +144,17 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletInputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
 
       if (read == -1) {
         bufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        Utils.filterBodyEnd(bufferSpanPair);
       } else {
         bufferSpanPair.buffer.write(b, 0, read);
+        Utils.filterBodyChunk(bufferSpanPair, b, 0, read);
       }
     }
   }
@@ -164,7 +168,7 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletInputStream.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_INPUT_STREAM);
       return bufferSpanPair;
     }
 
@@ -178,15 +182,17 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletInputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
 
       if (read == -1) {
         bufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        Utils.filterBodyEnd(bufferSpanPair);
       } else {
         bufferSpanPair.buffer.write(b, off, read);
+        Utils.filterBodyChunk(bufferSpanPair, b, off, read);
       }
     }
   }
@@ -200,7 +206,7 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletInputStream.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_INPUT_STREAM);
       return bufferSpanPair;
     }
 
@@ -211,13 +217,15 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletInputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
 
       bufferSpanPair.buffer.write(b);
       bufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+      Utils.filterBodyChunk(bufferSpanPair, b, 0, b.length);
+      Utils.filterBodyEnd(bufferSpanPair);
     }
   }
 
@@ -230,7 +238,7 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletInputStream.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_INPUT_STREAM);
       return bufferSpanPair;
     }
 
@@ -244,15 +252,17 @@ public class ServletInputStreamInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletInputStream.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_INPUT_STREAM);
       if (callDepth > 0) {
         return;
       }
 
       if (read == -1) {
         bufferSpanPair.captureBody(HypertraceSemanticAttributes.HTTP_REQUEST_BODY);
+        Utils.filterBodyEnd(bufferSpanPair);
       } else {
         bufferSpanPair.buffer.write(b, off, read);
+        Utils.filterBodyChunk(bufferSpanPair, b, off, read);
       }
     }
   }
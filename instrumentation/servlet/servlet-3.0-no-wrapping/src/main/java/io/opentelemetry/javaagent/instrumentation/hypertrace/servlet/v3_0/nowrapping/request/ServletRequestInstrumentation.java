@@ -22,7 +22,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.returns;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.ContextStore;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
@@ -37,6 +36,7 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
@@ -79,7 +79,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
       }
 
       // the getReader method might call getInputStream
-      CallDepthThreadLocalMap.incrementCallDepth(ServletRequest.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_REQUEST);
       return requestBufferWrapper;
     }
 
@@ -94,7 +94,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletRequest.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_REQUEST);
       if (callDepth > 0) {
         return;
       }
@@ -129,7 +129,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(ServletRequest.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_REQUEST);
       return spanAndObjectPair;
     }
 
@@ -144,7 +144,7 @@ public class ServletRequestInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletRequest.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_REQUEST);
       if (callDepth > 0) {
         return;
       }
@@ -17,6 +17,7 @@
 package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_0.nowrapping.request;
 
 import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import javax.servlet.http.HttpServletRequest;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
@@ -24,6 +25,7 @@ import org.hypertrace.agent.core.instrumentation.buffer.ByteBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
 import org.hypertrace.agent.core.instrumentation.utils.ContentLengthUtils;
 import org.hypertrace.agent.core.instrumentation.utils.ContentTypeCharsetUtils;
+import org.hypertrace.agent.filter.FilterRegistry;
 
 public class Utils {
 
@@ -48,4 +50,58 @@ public class Utils {
     }
     return new CharBufferSpanPair(span, BoundedBuffersFactory.createWriter(contentLength));
   }
+
+  /** Passes the bytes read by the application to the request body filters. */
+  public static void filterBodyChunk(
+      ByteBufferSpanPair bufferSpanPair, byte[] b, int off, int len) {
+    if (bufferSpanPair.isBodyFiltered() || len <= 0 || !FilterRegistry.evaluatesRequestBody()) {
+      return;
+    }
+    // the bytes read one at a time before come first
+    filterBatch(bufferSpanPair);
+    filter(bufferSpanPair, ByteBuffer.wrap(b, off, len).asReadOnlyBuffer());
+  }
+
+  /**
+   * Passes a byte read on its own to the request body filters. The bytes are batched, a filter
+   * dispatch per byte would cost far more than the read.
+   */
+  public static void filterBodyByte(ByteBufferSpanPair bufferSpanPair, int b) {
+    if (bufferSpanPair.isBodyFiltered() || !FilterRegistry.evaluatesRequestBody()) {
+      return;
+    }
+    if (bufferSpanPair.addToFilterBatch((byte) b)) {
+      filterBatch(bufferSpanPair);
+    }
+  }
+
+  public static void filterBodyEnd(ByteBufferSpanPair bufferSpanPair) {
+    if (bufferSpanPair.isBodyFiltered() || !FilterRegistry.evaluatesRequestBody()) {
+      return;
+    }
+    filterBatch(bufferSpanPair);
+    if (bufferSpanPair.isBodyFiltered()) {
+      return;
+    }
+    bufferSpanPair.markBodyFiltered();
+    FilterRegistry.getFilter().onRequestBodyEnd(bufferSpanPair.span);
+  }
+
+  private static void filterBatch(ByteBufferSpanPair bufferSpanPair) {
+    ByteBuffer batch = bufferSpanPair.takeFilterBatch();
+    if (batch != null) {
+      filter(bufferSpanPair, batch);
+    }
+  }
+
+  private static void filter(ByteBufferSpanPair bufferSpanPair, ByteBuffer chunk) {
+    if (bufferSpanPair.isBodyFiltered()) {
+      return;
+    }
+    if (FilterRegistry.getFilter()
+        .onRequestBodyChunk(bufferSpanPair.span, chunk, bufferSpanPair.buffer.getCharset())) {
+      // the application already reads the body, the request cannot be rejected anymore
+      bufferSpanPair.markBodyFiltered();
+    }
+  }
 }
@@ -23,7 +23,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.IOException;
@@ -35,6 +34,7 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
 public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
@@ -92,7 +92,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(ServletOutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -104,7 +104,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(ServletOutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       }
     }
   }
@@ -120,7 +120,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(ServletOutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -132,7 +132,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(ServletOutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       }
     }
   }
@@ -151,7 +151,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(ServletOutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -163,7 +163,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(ServletOutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       }
     }
   }
@@ -179,7 +179,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(ServletOutputStream.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       if (callDepth > 0) {
         return buffer;
       }
@@ -192,7 +192,7 @@ public class ServletOutputStreamInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedByteArrayOutputStream buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(ServletOutputStream.class);
+        CallDepthSlots.decrement(CallDepthSlots.SERVLET_OUTPUT_STREAM);
       }
     }
   }
@@ -22,7 +22,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.returns;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.ContextStore;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
@@ -39,8 +38,8 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
-import org.hypertrace.agent.config.Config.AgentConfig;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.SpanAndObjectPair;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
@@ -86,7 +85,7 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
       }
 
       // the getReader method might call getInputStream
-      CallDepthThreadLocalMap.incrementCallDepth(ServletResponse.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_RESPONSE);
       return httpServletResponse;
     }
 
@@ -100,7 +99,7 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletResponse.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_RESPONSE);
       if (callDepth > 0) {
         return;
       }
@@ -116,9 +115,9 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
       }
 
       // do not capture if data capture is disabled or not supported content type
-      AgentConfig agentConfig = HypertraceConfig.get();
+      CaptureSettings captureSettings = CaptureSettings.get();
       String contentType = httpServletResponse.getContentType();
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
+      if (captureSettings.captureHttpResponseBody()
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         String charsetStr = httpServletResponse.getCharacterEncoding();
@@ -145,7 +144,7 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
       }
 
       // the getWriter method might call getInputStream
-      CallDepthThreadLocalMap.incrementCallDepth(ServletResponse.class);
+      CallDepthSlots.increment(CallDepthSlots.SERVLET_RESPONSE);
       return httpServletResponse;
     }
 
@@ -159,7 +158,7 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
         return;
       }
 
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(ServletResponse.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.SERVLET_RESPONSE);
       if (callDepth > 0) {
         return;
       }
@@ -175,9 +174,9 @@ public class ServletResponseInstrumentation implements TypeInstrumentation {
       }
 
       // do not capture if data capture is disabled or not supported content type
-      AgentConfig agentConfig = HypertraceConfig.get();
+      CaptureSettings captureSettings = CaptureSettings.get();
       String contentType = httpServletResponse.getContentType();
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
+      if (captureSettings.captureHttpResponseBody()
           && ContentTypeUtils.shouldCapture(contentType)) {
 
         BoundedCharArrayWriter writer = BoundedBuffersFactory.createWriter();
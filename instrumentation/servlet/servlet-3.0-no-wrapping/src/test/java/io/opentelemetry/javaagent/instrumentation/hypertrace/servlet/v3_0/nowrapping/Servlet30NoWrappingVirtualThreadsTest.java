@@ -0,0 +1,169 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_0.nowrapping;
+
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_0.nowrapping.TestServlets.EchoStream_arr;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_0.nowrapping.TestServlets.EchoWriter_readLines;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_0.nowrapping.TestServlets.GetHello;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import org.WrappingFilter;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.util.thread.ExecutorThreadPool;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.core.instrumentation.utils.VirtualThreads;
+import org.hypertrace.agent.testing.AbstractInstrumenterTest;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/** Runs the requests on virtual threads, skipped on JDKs without them. */
+public class Servlet30NoWrappingVirtualThreadsTest extends AbstractInstrumenterTest {
+  private static final String REQUEST_BODY = "hello";
+  private static final String REQUEST_HEADER = "requestheader";
+  private static final String REQUEST_HEADER_VALUE = "requestvalue";
+
+  private static volatile boolean servedByVirtualThread;
+
+  private static Server server;
+  private static int serverPort;
+
+  @BeforeAll
+  public static void startServer() throws Exception {
+    ExecutorService executor;
+    try {
+      executor =
+          (ExecutorService)
+              Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (NoSuchMethodException e) {
+      Assumptions.assumeTrue(false, "virtual threads are not supported by this JDK");
+      return;
+    }
+    server = new Server(0);
+    server.setThreadPool(new ExecutorThreadPool(executor));
+
+    ServletContextHandler handler = new ServletContextHandler();
+    handler.addFilter(WrappingFilter.class, "/*", EnumSet.allOf(DispatcherType.class));
+    handler.addFilter(ThreadCheckFilter.class, "/*", EnumSet.allOf(DispatcherType.class));
+    handler.addServlet(GetHello.class, "/hello");
+    handler.addServlet(EchoStream_arr.class, "/echo_stream_arr");
+    handler.addServlet(EchoWriter_readLines.class, "/echo_writer_readLines");
+    server.setHandler(handler);
+    server.start();
+    serverPort = server.getConnectors()[0].getLocalPort();
+  }
+
+  @AfterAll
+  public static void stopServer() throws Exception {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void postJson_stream_arr() throws Exception {
+    postJson(String.format("http://localhost:%d/echo_stream_arr", serverPort));
+  }
+
+  @Test
+  public void postJson_writer_readLines() throws Exception {
+    postJson(String.format("http://localhost:%d/echo_writer_readLines", serverPort));
+  }
+
+  @Test
+  public void block() throws Exception {
+    Request request =
+        new Request.Builder()
+            .url(String.format("http://localhost:%d/hello", serverPort))
+            .get()
+            .header("mockblock", "true")
+            .build();
+    try (Response response = httpClient.newCall(request).execute()) {
+      Assertions.assertEquals(403, response.code());
+    }
+
+    TEST_WRITER.waitForTraces(1);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(1, traces.size());
+    Assertions.assertEquals(1, traces.get(0).size());
+  }
+
+  private void postJson(String url) throws Exception {
+    servedByVirtualThread = false;
+    Request request =
+        new Request.Builder()
+            .url(url)
+            .post(RequestBody.create(REQUEST_BODY, MediaType.get("application/json")))
+            .header(REQUEST_HEADER, REQUEST_HEADER_VALUE)
+            .build();
+    try (Response response = httpClient.newCall(request).execute()) {
+      Assertions.assertEquals(200, response.code());
+      Assertions.assertEquals(TestServlets.RESPONSE_BODY, response.body().string());
+    }
+    Assertions.assertTrue(servedByVirtualThread);
+
+    TEST_WRITER.waitForTraces(1);
+    List<List<SpanData>> traces = TEST_WRITER.getTraces();
+    Assertions.assertEquals(1, traces.size());
+    List<SpanData> spans = traces.get(0);
+    Assertions.assertEquals(1, spans.size());
+    SpanData spanData = spans.get(0);
+    Assertions.assertEquals(
+        REQUEST_HEADER_VALUE,
+        spanData
+            .getAttributes()
+            .get(HypertraceSemanticAttributes.httpRequestHeader(REQUEST_HEADER)));
+    Assertions.assertEquals(
+        REQUEST_BODY, spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_REQUEST_BODY));
+    Assertions.assertEquals(
+        TestServlets.RESPONSE_BODY,
+        spanData.getAttributes().get(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY));
+  }
+
+  public static class ThreadCheckFilter implements Filter {
+    @Override
+    public void init(FilterConfig filterConfig) {}
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+        throws IOException, ServletException {
+      servedByVirtualThread = VirtualThreads.isCurrentThreadVirtual();
+      chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {}
+  }
+}
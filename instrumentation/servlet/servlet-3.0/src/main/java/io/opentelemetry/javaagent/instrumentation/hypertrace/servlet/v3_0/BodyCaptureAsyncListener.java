@@ -22,7 +22,7 @@ import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 
 public class BodyCaptureAsyncListener implements AsyncListener {
@@ -58,7 +58,7 @@ public class BodyCaptureAsyncListener implements AsyncListener {
   public void onStartAsync(AsyncEvent event) {}
 
   private void captureRequestBody(ServletRequest servletRequest) {
-    if (HypertraceConfig.get().getDataCapture().getHttpBody().getRequest().getValue()) {
+    if (CaptureSettings.get().captureHttpRequestBody()) {
       if (servletRequest instanceof BufferingHttpServletRequest) {
         BufferingHttpServletRequest bufferingRequest = (BufferingHttpServletRequest) servletRequest;
         span.setAttribute(
@@ -72,11 +72,11 @@ public class BodyCaptureAsyncListener implements AsyncListener {
     if (servletResponse instanceof BufferingHttpServletResponse) {
       BufferingHttpServletResponse bufferingResponse =
           (BufferingHttpServletResponse) servletResponse;
-      if (HypertraceConfig.get().getDataCapture().getHttpBody().getResponse().getValue()) {
+      if (CaptureSettings.get().captureHttpResponseBody()) {
         String responseBody = bufferingResponse.getBufferAsString();
         span.setAttribute(HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, responseBody);
       }
-      if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getResponse().getValue()) {
+      if (CaptureSettings.get().captureHttpResponseHeaders()) {
         for (String headerName : bufferingResponse.getHeaderNames()) {
           String headerValue = bufferingResponse.getHeader(headerName);
           span.setAttribute(
@@ -16,20 +16,18 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.v3_1;
 
-import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import io.opentelemetry.javaagent.instrumentation.api.Java8BytecodeBridge;
+import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common.ServletRequestHeaders;
 import io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common.ServletSpanDecorator;
 import java.util.Enumeration;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import net.bytebuddy.asm.Advice;
-import org.hypertrace.agent.config.Config.AgentConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 import org.hypertrace.agent.core.config.HypertraceConfig;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.filter.FilterRegistry;
@@ -75,20 +73,18 @@ public class Servlet31Advice {
     ServletSpanDecorator.addSessionId(currentSpan, httpRequest);
 
     // set request headers
-    Enumeration<String> headerNames = httpRequest.getHeaderNames();
-    Map<String, String> headers = new HashMap<>();
-    while (headerNames.hasMoreElements()) {
-      String headerName = headerNames.nextElement();
-      String headerValue = httpRequest.getHeader(headerName);
-      AttributeKey<String> attributeKey =
-          HypertraceSemanticAttributes.httpRequestHeader(headerName);
-
-      if (HypertraceConfig.get().getDataCapture().getHttpHeaders().getRequest().getValue()) {
-        currentSpan.setAttribute(attributeKey, headerValue);
+    if (CaptureSettings.get().captureHttpRequestHeaders()) {
+      Enumeration<String> headerNames = httpRequest.getHeaderNames();
+      while (headerNames.hasMoreElements()) {
+        String headerName = headerNames.nextElement();
+        currentSpan.setAttribute(
+            HypertraceSemanticAttributes.httpRequestHeader(headerName),
+            httpRequest.getHeader(headerName));
       }
-      headers.put(attributeKey.getKey(), headerValue);
     }
-    if (FilterRegistry.getFilter().evaluateRequestHeaders(currentSpan, headers)) {
+    if (FilterRegistry.hasFilters()
+        && FilterRegistry.getFilter()
+            .evaluateRequestHeaders(currentSpan, new ServletRequestHeaders(httpRequest))) {
       httpResponse.setStatus(403);
       return true;
     }
@@ -113,8 +109,8 @@ public class Servlet31Advice {
     Span currentSpan = Java8BytecodeBridge.currentSpan();
     HttpServletResponse httpServletResponse = (HttpServletResponse) response;
     // set response headers
-    AgentConfig agentConfig = HypertraceConfig.get();
-    if (agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()) {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    if (captureSettings.captureHttpResponseHeaders()) {
       for (String headerName : httpServletResponse.getHeaderNames()) {
         String headerValue = httpServletResponse.getHeader(headerName);
         currentSpan.setAttribute(
@@ -146,12 +142,12 @@ public class Servlet31Advice {
       BufferingHttpServletRequest bufferingRequest = (BufferingHttpServletRequest) request;
 
       // Bodies are captured at the end after all user processing.
-      if (agentConfig.getDataCapture().getHttpBody().getRequest().getValue()) {
+      if (captureSettings.captureHttpRequestBody()) {
         currentSpan.setAttribute(
             HypertraceSemanticAttributes.HTTP_REQUEST_BODY,
             bufferingRequest.getBufferedBodyAsString());
       }
-      if (agentConfig.getDataCapture().getHttpBody().getResponse().getValue()) {
+      if (captureSettings.captureHttpResponseBody()) {
         currentSpan.setAttribute(
             HypertraceSemanticAttributes.HTTP_RESPONSE_BODY, bufferingResponse.getBufferAsString());
       }
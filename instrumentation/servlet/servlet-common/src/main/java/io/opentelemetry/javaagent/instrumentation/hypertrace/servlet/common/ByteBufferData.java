@@ -18,72 +18,41 @@ package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.SegmentedByteBuffer;
 
 public class ByteBufferData {
 
-  private static final int MIN_BUFFER_SIZE = 128;
-  private static final int MAX_BUFFER_SIZE =
-      HypertraceConfig.get().getDataCapture().getBodyMaxSizeBytes().getValue();
-  private static final int GROW_FACTOR = 4;
+  private static final int MAX_BUFFER_SIZE = BoundedBuffersFactory.MAX_SIZE;
   private static final Charset ISO_8859_1 = StandardCharsets.ISO_8859_1;
-  private Charset charset;
-  private byte[] buffer;
-  private int bufferLen;
+  private final SegmentedByteBuffer buffer = new SegmentedByteBuffer(MAX_BUFFER_SIZE);
+  private volatile Charset charset;
 
-  public synchronized void appendData(byte[] bytes, int start, int end) {
+  public void appendData(byte[] bytes, int start, int end) {
     int newDataLen = end - start;
-    if (resizeIfNeeded(newDataLen)) {
-      int lenToCopy = Math.min(newDataLen, this.buffer.length - this.bufferLen);
-      System.arraycopy(bytes, start, this.buffer, this.bufferLen, lenToCopy);
-      this.bufferLen += lenToCopy;
+    if (newDataLen > 0) {
+      this.buffer.write(bytes, start, newDataLen);
     }
   }
 
-  private boolean resizeIfNeeded(int newDataLen) {
-    int newSize;
-    if (this.buffer == null) {
-      newSize = Math.max(Math.min(newDataLen, MAX_BUFFER_SIZE), MIN_BUFFER_SIZE);
-      this.buffer = new byte[newSize];
-    } else {
-      if (this.bufferLen == MAX_BUFFER_SIZE) {
-        return false;
-      }
-
-      if (this.buffer.length - this.bufferLen < newDataLen) {
-        newSize =
-            Math.min(
-                Math.max(this.bufferLen + newDataLen, this.bufferLen * GROW_FACTOR),
-                MAX_BUFFER_SIZE);
-        this.buffer = Arrays.copyOf(this.buffer, newSize);
-      }
-    }
-
-    return true;
-  }
-
-  public synchronized void appendData(int byteValue) {
+  public void appendData(int byteValue) {
     if (byteValue >= 0 && byteValue <= 255) {
-      if (this.resizeIfNeeded(1)) {
-        this.buffer[this.bufferLen] = (byte) byteValue;
-        ++this.bufferLen;
-      }
+      this.buffer.write(byteValue);
     }
   }
 
-  public synchronized void setCharset(Charset charset) {
+  public void setCharset(Charset charset) {
     this.charset = charset;
   }
 
-  public synchronized String getBufferAsString() {
-    if (this.bufferLen == 0) {
+  public String getBufferAsString() {
+    if (this.buffer.size() == 0) {
       return null;
     } else if (this.charset != null) {
-      return new String(this.buffer, 0, this.bufferLen, this.charset);
+      return this.buffer.toString(this.charset);
     } else {
       // fallback to use ISO_8859_1
-      return new String(this.buffer, 0, this.bufferLen, ISO_8859_1);
+      return this.buffer.toString(ISO_8859_1);
     }
   }
 }
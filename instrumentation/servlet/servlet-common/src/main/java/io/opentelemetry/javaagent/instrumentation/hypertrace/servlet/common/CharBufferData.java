@@ -16,85 +16,39 @@
 
 package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common;
 
-import java.util.Arrays;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.SegmentedCharBuffer;
 
 public class CharBufferData {
 
-  private static final int MIN_BUFFER_SIZE = 128;
-  private static final int MAX_BUFFER_SIZE =
-      HypertraceConfig.get().getDataCapture().getBodyMaxSizeBytes().getValue();
-  private static final int GROW_FACTOR = 4;
-  private char[] buffer;
-  private int bufferLen;
+  private static final int MAX_BUFFER_SIZE = BoundedBuffersFactory.MAX_SIZE;
+  private final SegmentedCharBuffer buffer = new SegmentedCharBuffer(MAX_BUFFER_SIZE);
 
-  public synchronized void appendData(char[] chars, int start, int end) {
+  public void appendData(char[] chars, int start, int end) {
     int newDataLen = end - start;
     if (newDataLen > 0) {
-      if (resizeIfNeeded(newDataLen)) {
-        int lenToCopy = Math.min(newDataLen, capacityLeft());
-        System.arraycopy(chars, start, this.buffer, this.bufferLen, lenToCopy);
-        this.bufferLen += lenToCopy;
-      }
+      this.buffer.write(chars, start, newDataLen);
     }
   }
 
-  private boolean resizeIfNeeded(int newDataLen) {
-    int newSize;
-    if (this.buffer == null) {
-      newSize = Math.max(Math.min(newDataLen, MAX_BUFFER_SIZE), MIN_BUFFER_SIZE);
-      this.buffer = new char[newSize];
-    } else {
-      if (this.bufferLen == MAX_BUFFER_SIZE) {
-        return false;
-      }
-
-      if (this.capacityLeft() < newDataLen) {
-        newSize =
-            Math.min(
-                Math.max(this.bufferLen + newDataLen, this.bufferLen * GROW_FACTOR),
-                MAX_BUFFER_SIZE);
-        this.buffer = Arrays.copyOf(this.buffer, newSize);
-      }
-    }
-
-    return true;
-  }
-
-  public synchronized void appendData(String s) {
-    int newDataLen = s.length();
-    if (this.resizeIfNeeded(newDataLen)) {
-      int lenToCopy = Math.min(newDataLen, this.capacityLeft());
-      s.getChars(0, lenToCopy, this.buffer, this.bufferLen);
-      this.bufferLen += s.length();
-    }
+  public void appendData(String s) {
+    this.buffer.write(s, 0, s.length());
   }
 
-  public synchronized void appendData(String s, int start, int end) {
+  public void appendData(String s, int start, int end) {
     int newDataLen = end - start;
     if (newDataLen > 0) {
-      if (resizeIfNeeded(newDataLen)) {
-        int lenToCopy = Math.min(newDataLen, capacityLeft());
-        s.getChars(0, lenToCopy, this.buffer, this.bufferLen);
-        this.bufferLen += lenToCopy;
-      }
+      this.buffer.write(s, start, newDataLen);
     }
   }
 
-  private int capacityLeft() {
-    return this.buffer.length - this.bufferLen;
-  }
-
-  public synchronized void appendData(int codeUnit) {
+  public void appendData(int codeUnit) {
     if (codeUnit >= 0) {
-      if (this.resizeIfNeeded(1)) {
-        this.buffer[this.bufferLen] = (char) codeUnit;
-        ++this.bufferLen;
-      }
+      this.buffer.write(codeUnit);
     }
   }
 
   public String getBufferAsString() {
-    return new String(this.buffer, 0, this.bufferLen);
+    return this.buffer.toString();
   }
 }
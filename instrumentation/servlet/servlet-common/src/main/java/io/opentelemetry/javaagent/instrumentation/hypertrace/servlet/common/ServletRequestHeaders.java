@@ -0,0 +1,53 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.opentelemetry.javaagent.instrumentation.hypertrace.servlet.common;
+
+import java.util.Enumeration;
+import java.util.function.BiConsumer;
+import javax.servlet.http.HttpServletRequest;
+import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
+import org.hypertrace.agent.filter.api.HeadersView;
+
+/** {@link HeadersView} over the headers of {@link HttpServletRequest}. */
+public class ServletRequestHeaders extends HeadersView {
+
+  private static final String PREFIX = HypertraceSemanticAttributes.httpRequestHeader("").getKey();
+
+  private final HttpServletRequest request;
+
+  public ServletRequestHeaders(HttpServletRequest request) {
+    super(PREFIX);
+    this.request = request;
+  }
+
+  @Override
+  protected String getHeader(String name) {
+    return request.getHeader(name);
+  }
+
+  @Override
+  protected void forEachHeader(BiConsumer<String, String> consumer) {
+    @SuppressWarnings("unchecked")
+    Enumeration<String> headerNames = request.getHeaderNames();
+    while (headerNames.hasMoreElements()) {
+      String headerName = headerNames.nextElement();
+      consumer.accept(
+          HypertraceSemanticAttributes.httpRequestHeader(headerName).getKey(),
+          request.getHeader(headerName));
+    }
+  }
+}
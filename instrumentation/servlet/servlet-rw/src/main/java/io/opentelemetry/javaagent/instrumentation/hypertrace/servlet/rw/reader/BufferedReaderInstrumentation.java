@@ -23,7 +23,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.BufferedReader;
@@ -35,6 +34,7 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.HypertraceSemanticAttributes;
 import org.hypertrace.agent.core.instrumentation.buffer.CharBufferSpanPair;
 
@@ -80,7 +80,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(BufferedReader.class);
+      CallDepthSlots.increment(CallDepthSlots.BUFFERED_READER);
       return bufferSpanPair;
     }
 
@@ -92,7 +92,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(BufferedReader.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.BUFFERED_READER);
       if (callDepth > 0) {
         return;
       }
@@ -114,7 +114,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(BufferedReader.class);
+      CallDepthSlots.increment(CallDepthSlots.BUFFERED_READER);
       return bufferSpanPair;
     }
 
@@ -126,7 +126,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(BufferedReader.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.BUFFERED_READER);
       if (callDepth > 0) {
         return;
       }
@@ -148,7 +148,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(BufferedReader.class);
+      CallDepthSlots.increment(CallDepthSlots.BUFFERED_READER);
       return bufferSpanPair;
     }
 
@@ -162,7 +162,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(BufferedReader.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.BUFFERED_READER);
       if (callDepth > 0) {
         return;
       }
@@ -184,7 +184,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
         return null;
       }
 
-      CallDepthThreadLocalMap.incrementCallDepth(BufferedReader.class);
+      CallDepthSlots.increment(CallDepthSlots.BUFFERED_READER);
       return bufferSpanPair;
     }
 
@@ -195,7 +195,7 @@ public class BufferedReaderInstrumentation implements TypeInstrumentation {
       if (bufferSpanPair == null) {
         return;
       }
-      int callDepth = CallDepthThreadLocalMap.decrementCallDepth(BufferedReader.class);
+      int callDepth = CallDepthSlots.decrement(CallDepthSlots.BUFFERED_READER);
       if (callDepth > 0) {
         return;
       }
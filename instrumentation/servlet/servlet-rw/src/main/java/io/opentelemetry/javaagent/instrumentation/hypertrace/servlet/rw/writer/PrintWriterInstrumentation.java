@@ -23,7 +23,6 @@ import static net.bytebuddy.matcher.ElementMatchers.named;
 import static net.bytebuddy.matcher.ElementMatchers.takesArgument;
 import static net.bytebuddy.matcher.ElementMatchers.takesArguments;
 
-import io.opentelemetry.javaagent.instrumentation.api.CallDepthThreadLocalMap;
 import io.opentelemetry.javaagent.instrumentation.api.InstrumentationContext;
 import io.opentelemetry.javaagent.tooling.TypeInstrumentation;
 import java.io.IOException;
@@ -35,6 +34,7 @@ import net.bytebuddy.description.method.MethodDescription;
 import net.bytebuddy.description.type.TypeDescription;
 import net.bytebuddy.matcher.ElementMatcher;
 import net.bytebuddy.matcher.ElementMatcher.Junction;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedCharArrayWriter;
 
 public class PrintWriterInstrumentation implements TypeInstrumentation {
@@ -105,7 +105,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -117,7 +117,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -132,7 +132,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -144,7 +144,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -162,7 +162,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -174,7 +174,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -192,7 +192,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -204,7 +204,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -219,7 +219,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -231,7 +231,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -244,7 +244,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -256,7 +256,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
@@ -270,7 +270,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
       if (buffer == null) {
         return null;
       }
-      int callDepth = CallDepthThreadLocalMap.incrementCallDepth(PrintWriter.class);
+      int callDepth = CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
       if (callDepth > 0) {
         return buffer;
       }
@@ -283,7 +283,7 @@ public class PrintWriterInstrumentation implements TypeInstrumentation {
     @Advice.OnMethodExit(suppress = Throwable.class, onThrowable = Throwable.class)
     public static void exit(@Advice.Enter BoundedCharArrayWriter buffer) {
       if (buffer != null) {
-        CallDepthThreadLocalMap.decrementCallDepth(PrintWriter.class);
+        CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
       }
     }
   }
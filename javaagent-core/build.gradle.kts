@@ -5,6 +5,7 @@ plugins {
     idea
     id("com.google.protobuf") version "0.8.13"
     id("org.hypertrace.publish-maven-central-plugin")
+    id("me.champeau.gradle.jmh") version "0.5.3"
 }
 
 protobuf {
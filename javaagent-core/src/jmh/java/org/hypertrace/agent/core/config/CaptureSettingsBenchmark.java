@@ -0,0 +1,63 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.config.Config.AgentConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the checks an instrumentation does per request, e.g. in {@code
+ * GrpcServerInterceptor}, on the protobuf config and on {@link CaptureSettings}.
+ *
+ * <p>Run with {@code ./gradlew :javaagent-core:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureSettingsBenchmark {
+
+  @Benchmark
+  public void agentConfig(Blackhole blackhole) {
+    AgentConfig agentConfig = HypertraceConfig.get();
+    blackhole.consume(agentConfig.getDataCapture().getRpcMetadata().getRequest().getValue());
+    blackhole.consume(agentConfig.getDataCapture().getRpcMetadata().getResponse().getValue());
+    blackhole.consume(agentConfig.getDataCapture().getRpcBody().getRequest().getValue());
+    blackhole.consume(agentConfig.getDataCapture().getRpcBody().getResponse().getValue());
+  }
+
+  @Benchmark
+  public void captureSettings(Blackhole blackhole) {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    blackhole.consume(captureSettings.captureRpcRequestMetadata());
+    blackhole.consume(captureSettings.captureRpcResponseMetadata());
+    blackhole.consume(captureSettings.captureRpcRequestBody());
+    blackhole.consume(captureSettings.captureRpcResponseBody());
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of the call depth update the stream, reader and writer advices do on enter and exit of
+ * every instrumented method: the class keyed {@link HypertraceCallDepthThreadLocalMap}, which works
+ * like the upstream map, and the slot based {@link CallDepthSlots}.
+ *
+ * <p>Run with {@code ./gradlew :javaagent-core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class CallDepthBenchmark {
+
+  @Benchmark
+  public int classValueThreadLocal() {
+    int depth = HypertraceCallDepthThreadLocalMap.incrementCallDepth(InputStream.class);
+    return depth + HypertraceCallDepthThreadLocalMap.decrementCallDepth(InputStream.class);
+  }
+
+  @Benchmark
+  public int slots() {
+    int depth = CallDepthSlots.increment(CallDepthSlots.INPUT_STREAM);
+    return depth + CallDepthSlots.decrement(CallDepthSlots.INPUT_STREAM);
+  }
+}
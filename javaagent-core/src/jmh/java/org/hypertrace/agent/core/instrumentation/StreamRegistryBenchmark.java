@@ -0,0 +1,122 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentMap;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@code FileInputStream#read(byte[])} without the agent and with the lookup the
+ * {@code InputStream} instrumentation does on every read: the weak map lookup it used to do and
+ * the {@link StreamRegistry} lookup. {@code armed} registers a stream of another class, as it
+ * happens while an HTTP client body is being captured.
+ *
+ * <p>Run with {@code ./gradlew :javaagent-core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class StreamRegistryBenchmark {
+
+  private static final int FILE_SIZE = 1024 * 1024;
+
+  private static final WeakConcurrentMap<InputStream, Object> weakMap =
+      new WeakConcurrentMap<>(false);
+  private static final StreamRegistry<InputStream, Object> registry = new StreamRegistry<>();
+  // keeps the registered stream reachable
+  private static final InputStream capturedStream = new ByteArrayInputStream(new byte[0]);
+
+  @Param({"false", "true"})
+  public boolean armed;
+
+  private File file;
+  private FileInputStream inputStream;
+  private final byte[] buffer = new byte[512];
+
+  @Setup
+  public void setup() throws IOException {
+    if (armed) {
+      registry.put(capturedStream, Boolean.TRUE);
+      weakMap.put(capturedStream, Boolean.TRUE);
+    }
+    file = File.createTempFile("stream-registry-benchmark", ".bin");
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(new byte[FILE_SIZE]);
+    }
+    inputStream = new FileInputStream(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    registry.remove(capturedStream);
+    weakMap.remove(capturedStream);
+    inputStream.close();
+    file.delete();
+  }
+
+  @Benchmark
+  public int noAgent() throws IOException {
+    return read();
+  }
+
+  @Benchmark
+  public int weakMapLookup() throws IOException {
+    if (weakMap.get(inputStream) != null) {
+      throw new IllegalStateException();
+    }
+    return read();
+  }
+
+  @Benchmark
+  public int streamRegistryLookup() throws IOException {
+    if (registry.get(inputStream) != null) {
+      throw new IllegalStateException();
+    }
+    return read();
+  }
+
+  private int read() throws IOException {
+    int read = inputStream.read(buffer);
+    if (read == -1) {
+      inputStream.getChannel().position(0);
+    }
+    return read;
+  }
+}
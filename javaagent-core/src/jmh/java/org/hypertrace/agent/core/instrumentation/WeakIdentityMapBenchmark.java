@@ -0,0 +1,106 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import com.blogspot.mydailyjava.weaklockfree.WeakConcurrentMap;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention of the weak maps behind {@link GlobalObjectRegistry}. Every operation looks up a
+ * registered stream, every 16th operation also registers and removes a stream, like a request whose
+ * body is captured. Compares {@link WeakIdentityMap} with {@link WeakConcurrentMap}, used by the
+ * default {@code WeakMap.Provider} of the agent, and a synchronized {@link WeakHashMap}.
+ *
+ * <p>Run with {@code ./gradlew :javaagent-core:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class WeakIdentityMapBenchmark {
+
+  private static final int KEYS = 4096;
+  private static final int UPDATE_EVERY = 16;
+
+  private final Object[] keys = new Object[KEYS];
+  private final WeakIdentityMap<Object, Object> weakIdentityMap = new WeakIdentityMap<>();
+  private final WeakConcurrentMap<Object, Object> weakConcurrentMap =
+      new WeakConcurrentMap.WithInlinedExpunction<>();
+  private final Map<Object, Object> synchronizedWeakHashMap =
+      Collections.synchronizedMap(new WeakHashMap<>());
+
+  @Setup
+  public void setup() {
+    for (int i = 0; i < KEYS; i++) {
+      keys[i] = new Object();
+      weakIdentityMap.put(keys[i], Boolean.TRUE);
+      weakConcurrentMap.put(keys[i], Boolean.TRUE);
+      synchronizedWeakHashMap.put(keys[i], Boolean.TRUE);
+    }
+  }
+
+  @Benchmark
+  public Object weakIdentityMap() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (random.nextInt(UPDATE_EVERY) == 0) {
+      Object key = new Object();
+      weakIdentityMap.put(key, Boolean.TRUE);
+      weakIdentityMap.remove(key);
+    }
+    return weakIdentityMap.get(keys[random.nextInt(KEYS)]);
+  }
+
+  @Benchmark
+  public Object weakConcurrentMap() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (random.nextInt(UPDATE_EVERY) == 0) {
+      Object key = new Object();
+      weakConcurrentMap.put(key, Boolean.TRUE);
+      weakConcurrentMap.remove(key);
+    }
+    return weakConcurrentMap.get(keys[random.nextInt(KEYS)]);
+  }
+
+  @Benchmark
+  public Object synchronizedWeakHashMap() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    if (random.nextInt(UPDATE_EVERY) == 0) {
+      Object key = new Object();
+      synchronizedWeakHashMap.put(key, Boolean.TRUE);
+      synchronizedWeakHashMap.remove(key);
+    }
+    return synchronizedWeakHashMap.get(keys[random.nextInt(KEYS)]);
+  }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares capturing a body byte by byte (e.g. {@code ServletInputStream#read()}) and in chunks
+ * with the unsynchronized {@link BoundedByteArrayOutputStream} and the synchronized {@link
+ * ByteArrayOutputStream} which the capture buffers used to be based on.
+ *
+ * <p>Run with {@code ./gradlew :javaagent-core:jmh}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureBufferBenchmark {
+
+  private static final int CHUNK_SIZE = 512;
+
+  @Param({"1024", "65536"})
+  public int bodySize;
+
+  private byte[] chunk;
+
+  @Setup
+  public void setup() {
+    chunk = new byte[CHUNK_SIZE];
+    for (int i = 0; i < chunk.length; i++) {
+      chunk[i] = (byte) ('a' + i % 26);
+    }
+  }
+
+  @Benchmark
+  public String synchronizedWriteByte() {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    for (int i = 0; i < bodySize; i++) {
+      buffer.write(chunk[i % CHUNK_SIZE]);
+    }
+    return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String unsynchronizedWriteByte() {
+    BoundedByteArrayOutputStream buffer =
+        new BoundedByteArrayOutputStream(bodySize, StandardCharsets.UTF_8);
+    for (int i = 0; i < bodySize; i++) {
+      buffer.write(chunk[i % CHUNK_SIZE]);
+    }
+    String body = buffer.toString(StandardCharsets.UTF_8);
+    buffer.release();
+    return body;
+  }
+
+  @Benchmark
+  public String synchronizedWriteChunk() {
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    for (int written = 0; written < bodySize; written += CHUNK_SIZE) {
+      buffer.write(chunk, 0, CHUNK_SIZE);
+    }
+    return new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public String unsynchronizedWriteChunk() {
+    BoundedByteArrayOutputStream buffer =
+        new BoundedByteArrayOutputStream(bodySize, StandardCharsets.UTF_8);
+    for (int written = 0; written < bodySize; written += CHUNK_SIZE) {
+      buffer.write(chunk, 0, CHUNK_SIZE);
+    }
+    String body = buffer.toString(StandardCharsets.UTF_8);
+    buffer.release();
+    return body;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.atomic.AtomicReference;
+import org.hypertrace.agent.config.Config.AgentConfig;
+import org.hypertrace.agent.config.Config.DataCapture;
+
+/**
+ * Immutable snapshot of the data capture config. Instrumentations query it on every request or
+ * message, therefore the values are copied from the protobuf config into plain fields once.
+ *
+ * <p>A new snapshot is published when the config file is reloaded, callers should not keep the
+ * snapshot beyond a single request. The maximum body size is the exception, it is applied only at
+ * startup, see {@link #getBodyMaxSizeBytes()}.
+ */
+public final class CaptureSettings {
+
+  private static final AtomicReference<CaptureSettings> instance = new AtomicReference<>();
+
+  private final boolean httpRequestHeaders;
+  private final boolean httpResponseHeaders;
+  private final boolean httpRequestBody;
+  private final boolean httpResponseBody;
+  private final boolean rpcRequestMetadata;
+  private final boolean rpcResponseMetadata;
+  private final boolean rpcRequestBody;
+  private final boolean rpcResponseBody;
+  private final int bodyMaxSizeBytes;
+
+  private CaptureSettings(DataCapture dataCapture) {
+    this.httpRequestHeaders = dataCapture.getHttpHeaders().getRequest().getValue();
+    this.httpResponseHeaders = dataCapture.getHttpHeaders().getResponse().getValue();
+    this.httpRequestBody = dataCapture.getHttpBody().getRequest().getValue();
+    this.httpResponseBody = dataCapture.getHttpBody().getResponse().getValue();
+    this.rpcRequestMetadata = dataCapture.getRpcMetadata().getRequest().getValue();
+    this.rpcResponseMetadata = dataCapture.getRpcMetadata().getResponse().getValue();
+    this.rpcRequestBody = dataCapture.getRpcBody().getRequest().getValue();
+    this.rpcResponseBody = dataCapture.getRpcBody().getResponse().getValue();
+    this.bodyMaxSizeBytes = dataCapture.getBodyMaxSizeBytes().getValue();
+  }
+
+  public static CaptureSettings get() {
+    CaptureSettings settings = instance.get();
+    if (settings == null) {
+      // do not overwrite a snapshot published by a concurrent reload with the older config
+      instance.compareAndSet(null, from(HypertraceConfig.get()));
+      settings = instance.get();
+    }
+    return settings;
+  }
+
+  public static CaptureSettings from(AgentConfig agentConfig) {
+    return new CaptureSettings(agentConfig.getDataCapture());
+  }
+
+  /** Replaces the snapshot, instrumentations see it on their next call of {@link #get()}. */
+  static void publish(AgentConfig agentConfig) {
+    instance.set(from(agentConfig));
+  }
+
+  /** Reset the settings, use only in tests. */
+  @VisibleForTesting
+  static void reset() {
+    instance.set(null);
+  }
+
+  public boolean captureHttpRequestHeaders() {
+    return httpRequestHeaders;
+  }
+
+  public boolean captureHttpResponseHeaders() {
+    return httpResponseHeaders;
+  }
+
+  public boolean captureHttpRequestBody() {
+    return httpRequestBody;
+  }
+
+  public boolean captureHttpResponseBody() {
+    return httpResponseBody;
+  }
+
+  public boolean captureRpcRequestMetadata() {
+    return rpcRequestMetadata;
+  }
+
+  public boolean captureRpcResponseMetadata() {
+    return rpcResponseMetadata;
+  }
+
+  public boolean captureRpcRequestBody() {
+    return rpcRequestBody;
+  }
+
+  public boolean captureRpcResponseBody() {
+    return rpcResponseBody;
+  }
+
+  /**
+   * The configured maximum body size. Captures use the value read at startup by {@code
+   * BoundedBuffersFactory}, a reload does not change it.
+   */
+  public int getBodyMaxSizeBytes() {
+    return bodyMaxSizeBytes;
+  }
+}
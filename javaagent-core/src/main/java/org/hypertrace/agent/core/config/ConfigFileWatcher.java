@@ -0,0 +1,100 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the directory of the config file and reloads the config when it changes.
+ *
+ * <p>Every change in the directory triggers a reload because the file might be replaced by a
+ * rename or a symlink swap (e.g. Kubernetes config maps). {@link HypertraceConfig#reload(String)}
+ * publishes the config only if it differs from the current one.
+ */
+final class ConfigFileWatcher implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(ConfigFileWatcher.class);
+
+  // editors write a file in several steps, wait until they are done
+  private static final long SETTLE_MILLIS = 200;
+
+  private final String configFile;
+  private final Path directory;
+  private final WatchService watchService;
+
+  private ConfigFileWatcher(String configFile, Path directory, WatchService watchService) {
+    this.configFile = configFile;
+    this.directory = directory;
+    this.watchService = watchService;
+  }
+
+  static void start(String configFile) {
+    Path directory = Paths.get(configFile).toAbsolutePath().getParent();
+    if (directory == null) {
+      return;
+    }
+    try {
+      WatchService watchService = FileSystems.getDefault().newWatchService();
+      directory.register(
+          watchService,
+          StandardWatchEventKinds.ENTRY_CREATE,
+          StandardWatchEventKinds.ENTRY_MODIFY,
+          StandardWatchEventKinds.ENTRY_DELETE);
+      Thread thread =
+          new Thread(
+              new ConfigFileWatcher(configFile, directory, watchService),
+              "hypertrace-config-watcher");
+      thread.setDaemon(true);
+      thread.start();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not watch config file {}, config changes require a restart", configFile, e);
+    }
+  }
+
+  @Override
+  public void run() {
+    log.debug("Watching {} for config changes", directory);
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watchService.take();
+        // drain the events of the same change
+        do {
+          key.pollEvents();
+          if (!key.reset()) {
+            log.warn("Config directory {} is not accessible anymore, stop watching", directory);
+            return;
+          }
+        } while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null);
+        HypertraceConfig.reload(configFile);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ClosedWatchServiceException e) {
+      // stopped
+    }
+  }
+}
@@ -36,6 +36,7 @@ public class EnvironmentConfig {
   private static final String HT_PREFIX = "ht.";
 
   public static final String CONFIG_FILE_PROPERTY = HT_PREFIX + "config.file";
+  public static final String CONFIG_FILE_WATCH = HT_PREFIX + "config.file.watch";
   static final String SERVICE_NAME = HT_PREFIX + "service.name";
   static final String ENABLED = HT_PREFIX + "enabled";
 
@@ -57,10 +58,36 @@ public class EnvironmentConfig {
   public static final String CAPTURE_HTTP_BODY_PREFIX = CAPTURE_PREFIX + "http.body.";
   public static final String CAPTURE_RPC_METADATA_PREFIX = CAPTURE_PREFIX + "rpc.metadata.";
   public static final String CAPTURE_RPC_BODY_PREFIX = CAPTURE_PREFIX + "rpc.body.";
+  public static final String CAPTURE_BUFFER_POOL_SIZE = CAPTURE_PREFIX + "buffer.pool.size";
+  public static final String CAPTURE_MEMORY_BUDGET_BYTES = CAPTURE_PREFIX + "memory.budget.bytes";
+  public static final String CAPTURE_BODY_DEFERRED_DECODING =
+      CAPTURE_PREFIX + "body.deferred.decoding";
+  public static final String CAPTURE_RPC_BODY_DEFERRED_JSON =
+      CAPTURE_PREFIX + "rpc.body.deferred.json";
+  public static final String CAPTURE_CONTENT_TYPES = CAPTURE_PREFIX + "content.types";
+  public static final String CAPTURE_STREAM_MAX_AGE_SECONDS =
+      CAPTURE_PREFIX + "stream.max.age.seconds";
+  public static final String CAPTURE_STREAM_MAX_ENTRIES = CAPTURE_PREFIX + "stream.max.entries";
+  public static final String CAPTURE_ASYNC_COMPLETION = CAPTURE_PREFIX + "async.completion";
+  public static final String CAPTURE_ASYNC_COMPLETION_QUEUE_SIZE =
+      CAPTURE_PREFIX + "async.completion.queue.size";
 
   private static final String JAVAAGENT_PREFIX = HT_PREFIX + "javaagent.";
   public static final String JAVAAGENT_FILTER_JAR_PATHS = JAVAAGENT_PREFIX + "filter.jar.paths";
 
+  private static final String FILTER_PREFIX = HT_PREFIX + "filter.";
+  public static final String FILTER_DECISION_CACHE_TTL_MILLIS =
+      FILTER_PREFIX + "decision.cache.ttl.millis";
+  public static final String FILTER_DECISION_CACHE_MAX_ENTRIES =
+      FILTER_PREFIX + "decision.cache.max.entries";
+  public static final String FILTER_SHORT_CIRCUIT = FILTER_PREFIX + "short.circuit";
+  public static final String FILTER_EVALUATION_TIMEOUT_MILLIS =
+      FILTER_PREFIX + "evaluation.timeout.millis";
+  public static final String FILTER_CIRCUIT_BREAKER_THRESHOLD =
+      FILTER_PREFIX + "circuit.breaker.threshold";
+  public static final String FILTER_CIRCUIT_BREAKER_COOLDOWN_MILLIS =
+      FILTER_PREFIX + "circuit.breaker.cooldown.millis";
+
   public static AgentConfig.Builder applyPropertiesAndEnvVars(AgentConfig.Builder builder) {
     String serviceName = getProperty(SERVICE_NAME);
     if (serviceName != null) {
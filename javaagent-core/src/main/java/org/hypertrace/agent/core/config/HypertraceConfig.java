@@ -51,7 +51,7 @@ public class HypertraceConfig {
   // so avoiding for perf reasons
   private static volatile boolean servletCausingException;
 
-  private static AgentConfig agentConfig;
+  private static volatile AgentConfig agentConfig;
 
   static final String DEFAULT_SERVICE_NAME = "unknown";
   static final String DEFAULT_REPORTING_ENDPOINT = "http://localhost:9411/api/v2/spans";
@@ -72,23 +72,68 @@ public class HypertraceConfig {
           } catch (IOException e) {
             throw new RuntimeException("Could not load config", e);
           }
+          startConfigFileWatcher();
         }
       }
     }
     return agentConfig;
   }
 
+  /**
+   * Loads the config file again and publishes the new config if it changed. Instrumentations see
+   * the new {@link CaptureSettings} on the next request, other settings are applied only at
+   * startup. The current config is kept if the file cannot be read or parsed.
+   */
+  static void reload(String filename) {
+    File configFile = new File(filename);
+    if (!configFile.isFile() || !configFile.canRead()) {
+      // the file might be being replaced
+      log.debug("Config file {} is not readable, keeping the current config", filename);
+      return;
+    }
+    AgentConfig reloaded;
+    try {
+      reloaded = load(filename);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not reload config file {}, keeping the current config", filename, e);
+      return;
+    }
+    synchronized (HypertraceConfig.class) {
+      if (reloaded.equals(agentConfig)) {
+        return;
+      }
+      agentConfig = reloaded;
+      CaptureSettings.publish(reloaded);
+    }
+    try {
+      log.info(
+          "Config reloaded: {}",
+          JsonFormat.printer().omittingInsignificantWhitespace().print(reloaded));
+    } catch (IOException e) {
+      log.info("Config reloaded");
+    }
+  }
+
+  private static void startConfigFileWatcher() {
+    String configFile = EnvironmentConfig.getProperty(EnvironmentConfig.CONFIG_FILE_PROPERTY);
+    String watch = EnvironmentConfig.getProperty(EnvironmentConfig.CONFIG_FILE_WATCH);
+    if (configFile == null || (watch != null && !Boolean.parseBoolean(watch))) {
+      return;
+    }
+    ConfigFileWatcher.start(configFile);
+  }
+
   public static boolean isInstrumentationEnabled(String primaryName, String[] otherNames) {
     // the instNames is not used because the config does not support it at the moment.
 
-    AgentConfig agentConfig = get();
+    CaptureSettings captureSettings = CaptureSettings.get();
     // disabled if all is disabled
-    if (!agentConfig.getDataCapture().getHttpBody().getRequest().getValue()
-        && !agentConfig.getDataCapture().getHttpBody().getResponse().getValue()
-        && !agentConfig.getDataCapture().getHttpHeaders().getRequest().getValue()
-        && !agentConfig.getDataCapture().getHttpHeaders().getResponse().getValue()
-        && !agentConfig.getDataCapture().getRpcMetadata().getRequest().getValue()
-        && !agentConfig.getDataCapture().getRpcMetadata().getResponse().getValue()) {
+    if (!captureSettings.captureHttpRequestBody()
+        && !captureSettings.captureHttpResponseBody()
+        && !captureSettings.captureHttpRequestHeaders()
+        && !captureSettings.captureHttpResponseHeaders()
+        && !captureSettings.captureRpcRequestMetadata()
+        && !captureSettings.captureRpcResponseMetadata()) {
       return false;
     }
     return true;
@@ -124,6 +169,7 @@ public class HypertraceConfig {
   @VisibleForTesting
   public static void reset() {
     agentConfig = null;
+    CaptureSettings.reset();
   }
 
   private static AgentConfig load() throws IOException {
@@ -0,0 +1,91 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cache of attribute keys for header and metadata names, the key is {@code prefix +
+ * name.toLowerCase()}.
+ *
+ * <p>The cache is a direct mapped table indexed by a case insensitive hash of the name. A lookup
+ * compares the names ignoring case, so a hit does not allocate. A miss replaces the entry in the
+ * slot, therefore the cache never grows and unknown names only evict each other. Only ASCII names
+ * up to {@link #MAX_NAME_LENGTH} are cached, which covers all valid HTTP header names.
+ */
+final class AttributeKeyCache {
+
+  static final int MAX_NAME_LENGTH = 64;
+
+  private final String prefix;
+  private final AtomicReferenceArray<Entry> entries;
+  private final int mask;
+
+  /** @param size number of slots, must be a power of two */
+  AttributeKeyCache(String prefix, int size) {
+    if (Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Size must be a power of two: " + size);
+    }
+    this.prefix = prefix;
+    this.entries = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  AttributeKey<String> get(String name) {
+    int length = name.length();
+    if (length > MAX_NAME_LENGTH) {
+      return newKey(name);
+    }
+    int hash = 0;
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      if (c >= 0x80) {
+        return newKey(name);
+      }
+      if (c >= 'A' && c <= 'Z') {
+        c += 'a' - 'A';
+      }
+      hash = 31 * hash + c;
+    }
+    int index = (hash ^ (hash >>> 16)) & mask;
+
+    Entry entry = entries.get(index);
+    if (entry != null
+        && entry.name.length() == length
+        && entry.name.regionMatches(true, 0, name, 0, length)) {
+      return entry.key;
+    }
+    AttributeKey<String> key = newKey(name);
+    entries.lazySet(index, new Entry(name, key));
+    return key;
+  }
+
+  private AttributeKey<String> newKey(String name) {
+    return AttributeKey.stringKey(prefix + name.toLowerCase());
+  }
+
+  private static final class Entry {
+    final String name;
+    final AttributeKey<String> key;
+
+    Entry(String name, AttributeKey<String> key) {
+      this.name = name;
+      this.key = key;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Call depth of the instrumented methods which call each other, e.g. {@code read()} of a stream
+ * which calls {@code read(byte[], int, int)}. Only the outermost call captures data.
+ *
+ * <p>Every instrumentation gets a slot when this class is initialized and every thread keeps the
+ * depths of all slots in a single array, so updating a depth is a thread local lookup and an array
+ * access. {@link HypertraceCallDepthThreadLocalMap} does a {@code ClassValue} lookup on top of that
+ * and keeps a thread local per class, it is still used by instrumentations whose key is not known
+ * upfront.
+ *
+ * <p>The depth has to follow the call stack, therefore it stays per thread also on virtual threads.
+ * The array of a few ints is all the advices keep per thread, the captured data is attached to the
+ * request and stream objects.
+ *
+ * <p>The slots of this class are not shared with the upstream instrumentations.
+ */
+public final class CallDepthSlots {
+
+  private static final AtomicInteger nextSlot = new AtomicInteger();
+
+  private static final ThreadLocal<int[]> depths =
+      new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+          return new int[Math.max(nextSlot.get(), 16)];
+        }
+      };
+
+  public static final int INPUT_STREAM = newSlot();
+  public static final int OUTPUT_STREAM = newSlot();
+  public static final int BUFFERED_READER = newSlot();
+  public static final int PRINT_WRITER = newSlot();
+  public static final int SERVLET = newSlot();
+  public static final int SERVLET_REQUEST = newSlot();
+  public static final int SERVLET_RESPONSE = newSlot();
+  public static final int SERVLET_INPUT_STREAM = newSlot();
+  public static final int SERVLET_OUTPUT_STREAM = newSlot();
+  public static final int APACHE_HTTP_MESSAGE = newSlot();
+  public static final int APACHE_HTTP_RESPONSE = newSlot();
+  public static final int GRPC_SERVER = newSlot();
+
+  private CallDepthSlots() {}
+
+  /** Allocates a new slot, call it once per instrumentation and keep the slot in a constant. */
+  public static int newSlot() {
+    return nextSlot.getAndIncrement();
+  }
+
+  /** @return depth before the increment, 0 for the outermost call */
+  public static int increment(int slot) {
+    return depthsFor(slot)[slot]++;
+  }
+
+  /** @return depth after the decrement, 0 for the outermost call */
+  public static int decrement(int slot) {
+    return --depthsFor(slot)[slot];
+  }
+
+  public static void reset(int slot) {
+    depthsFor(slot)[slot] = 0;
+  }
+
+  public static int get(int slot) {
+    return depthsFor(slot)[slot];
+  }
+
+  private static int[] depthsFor(int slot) {
+    int[] threadDepths = depths.get();
+    if (slot < threadDepths.length) {
+      return threadDepths;
+    }
+    // slot allocated after the thread's array has been created
+    threadDepths = Arrays.copyOf(threadDepths, Math.max(slot + 1, threadDepths.length * 2));
+    depths.set(threadDepths);
+    return threadDepths;
+  }
+}
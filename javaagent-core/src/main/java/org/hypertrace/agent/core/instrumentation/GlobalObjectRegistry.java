@@ -16,29 +16,90 @@
 
 package org.hypertrace.agent.core.instrumentation;
 
+import io.opentelemetry.api.GlobalOpenTelemetry;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
-import io.opentelemetry.javaagent.instrumentation.api.WeakMap;
+import io.opentelemetry.context.Context;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
 import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
 
 public class GlobalObjectRegistry {
 
-  // original input stream to span and byte buffer
-  public static final WeakMap<InputStream, SpanAndBuffer> inputStreamToSpanAndBufferMap =
-      WeakMap.Provider.newWeakMap();
+  static final long DEFAULT_STREAM_MAX_AGE_SECONDS = 300;
+  static final int DEFAULT_STREAM_MAX_ENTRIES = 4096;
+
+  // original input stream to span and byte buffer, streams which are not read to the end are
+  // reaped and their partial body is added to the span
+  public static final StreamRegistry<InputStream, SpanAndBuffer> inputStreamToSpanAndBufferMap =
+      new StreamRegistry<>(
+          TimeUnit.SECONDS.toNanos(
+              longProperty(
+                  EnvironmentConfig.CAPTURE_STREAM_MAX_AGE_SECONDS,
+                  DEFAULT_STREAM_MAX_AGE_SECONDS)),
+          (int)
+              longProperty(
+                  EnvironmentConfig.CAPTURE_STREAM_MAX_ENTRIES, DEFAULT_STREAM_MAX_ENTRIES),
+          GlobalObjectRegistry::flushReapedBody);
 
   // original output stream to byte buffer
-  public static final WeakMap<OutputStream, BoundedByteArrayOutputStream> outputStreamToBufferMap =
-      WeakMap.Provider.newWeakMap();
+  public static final StreamRegistry<OutputStream, BoundedByteArrayOutputStream>
+      outputStreamToBufferMap = new StreamRegistry<>();
 
   // original input stream to buffered one
-  public static final WeakMap<InputStream, InputStream> inputStreamMap =
-      WeakMap.Provider.newWeakMap();
-  public static final WeakMap<Object, Object> objectMap = WeakMap.Provider.newWeakMap();
+  public static final WeakIdentityMap<InputStream, InputStream> inputStreamMap =
+      new WeakIdentityMap<>();
+  public static final WeakIdentityMap<Object, Object> objectMap = new WeakIdentityMap<>();
+
+  /**
+   * Adds the body captured so far to the span or to an additional data span if the span has ended.
+   *
+   * <p>The buffer is not released: the stream might still be read by its owner, who would write to
+   * segments which are back in the pool. It is garbage collected with the stream and the memory
+   * budget reclaims its reservation.
+   */
+  static void flushReapedBody(SpanAndBuffer spanAndBuffer) {
+    String body;
+    ByteArrayOutputStream buffer = spanAndBuffer.byteArrayBuffer;
+    if (buffer instanceof BoundedByteArrayOutputStream) {
+      body = ((BoundedByteArrayOutputStream) buffer).toString(spanAndBuffer.charset);
+    } else {
+      try {
+        body = buffer.toString(spanAndBuffer.charset.name());
+      } catch (UnsupportedEncodingException e) {
+        return;
+      }
+    }
+    Span span = spanAndBuffer.span;
+    if (span.isRecording()) {
+      span.setAttribute(spanAndBuffer.attributeKey, body);
+    } else {
+      GlobalOpenTelemetry.getTracer("org.hypertrace.java.inputstream")
+          .spanBuilder(HypertraceSemanticAttributes.ADDITIONAL_DATA_SPAN_NAME)
+          .setParent(Context.root().with(span))
+          .setAttribute(spanAndBuffer.attributeKey, body)
+          .startSpan()
+          .end();
+    }
+  }
+
+  private static long longProperty(String name, long defaultValue) {
+    String value = EnvironmentConfig.getProperty(name);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      long parsed = Long.parseLong(value.trim());
+      return parsed > 0 ? parsed : defaultValue;
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
 
   public static class SpanAndBuffer {
     public final Span span;
@@ -21,6 +21,15 @@ import io.opentelemetry.api.common.AttributeKey;
 public class HypertraceSemanticAttributes {
   private HypertraceSemanticAttributes() {}
 
+  private static final AttributeKeyCache HTTP_REQUEST_HEADERS =
+      new AttributeKeyCache("http.request.header.", 256);
+  private static final AttributeKeyCache HTTP_RESPONSE_HEADERS =
+      new AttributeKeyCache("http.response.header.", 256);
+  private static final AttributeKeyCache RPC_REQUEST_METADATA =
+      new AttributeKeyCache("rpc.request.metadata.", 256);
+  private static final AttributeKeyCache RPC_RESPONSE_METADATA =
+      new AttributeKeyCache("rpc.response.metadata.", 256);
+
   /**
    * Span name used for span that carries additional data (e.g. attributes) that should belong to
    * its parent. The parent span cannot carry additional data because it has been already finished.
@@ -30,11 +39,11 @@ public class HypertraceSemanticAttributes {
   public static final String ADDITIONAL_DATA_SPAN_NAME = "additional-data";
 
   public static AttributeKey<String> httpRequestHeader(String header) {
-    return AttributeKey.stringKey("http.request.header." + header.toLowerCase());
+    return HTTP_REQUEST_HEADERS.get(header);
   }
 
   public static AttributeKey<String> httpResponseHeader(String header) {
-    return AttributeKey.stringKey("http.response.header." + header.toLowerCase());
+    return HTTP_RESPONSE_HEADERS.get(header);
   }
 
   public static final AttributeKey<String> HTTP_REQUEST_BODY =
@@ -51,10 +60,10 @@ public class HypertraceSemanticAttributes {
       AttributeKey.stringKey("rpc.response.body");
 
   public static final AttributeKey<String> rpcRequestMetadata(String key) {
-    return AttributeKey.stringKey("rpc.request.metadata." + key.toLowerCase());
+    return RPC_REQUEST_METADATA.get(key);
   }
 
   public static final AttributeKey<String> rpcResponseMetadata(String key) {
-    return AttributeKey.stringKey("rpc.response.metadata." + key.toLowerCase());
+    return RPC_RESPONSE_METADATA.get(key);
   }
 }
@@ -0,0 +1,175 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.trace.Span;
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Completes spans on an agent thread instead of on an I/O thread.
+ *
+ * <p>Event loop instrumentations detach the captured headers and body buffers and {@link
+ * #submit(Runnable)} a completion which decodes them, sets the attributes and ends the span. The
+ * queue is bounded: if it is full the completion is rejected and the caller runs it inline, so the
+ * span is never lost and the memory held by pending completions is limited.
+ *
+ * <p>Many event loops submit, a single worker thread drains the queue. The worker parks when the
+ * queue is empty and is unparked by the next submit.
+ */
+public final class SpanCompleter implements Runnable {
+
+  private static final Logger log = LoggerFactory.getLogger(SpanCompleter.class);
+
+  static final int DEFAULT_QUEUE_SIZE = 4096;
+
+  // ending the span on the worker with the SDK clock is more precise than an explicit timestamp
+  // from the wall clock (milliseconds on Java 8) as long as the completion was not queued longer
+  static final long MAX_END_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static final long PARK_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private static final SpanCompleter INSTANCE = create();
+
+  private final int capacity;
+  private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final Thread worker;
+  private volatile boolean parked;
+  private volatile boolean stopped;
+
+  SpanCompleter(int capacity) {
+    this.capacity = capacity;
+    this.worker = new Thread(this, "hypertrace-span-completer");
+    worker.setDaemon(true);
+    worker.start();
+  }
+
+  /** @return the completer or null if spans are completed on the I/O thread */
+  public static SpanCompleter get() {
+    return INSTANCE;
+  }
+
+  private static SpanCompleter create() {
+    if (!Boolean.parseBoolean(
+        EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_ASYNC_COMPLETION))) {
+      return null;
+    }
+    int capacity = DEFAULT_QUEUE_SIZE;
+    String queueSize =
+        EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_ASYNC_COMPLETION_QUEUE_SIZE);
+    if (queueSize != null) {
+      try {
+        capacity = Integer.parseInt(queueSize.trim());
+      } catch (NumberFormatException e) {
+        log.warn(
+            "Invalid value of {}: {}",
+            EnvironmentConfig.CAPTURE_ASYNC_COMPLETION_QUEUE_SIZE,
+            queueSize);
+      }
+    }
+    return capacity > 0 ? new SpanCompleter(capacity) : null;
+  }
+
+  /**
+   * Hands the completion over to the worker.
+   *
+   * @return false if the queue is full, the caller has to run the completion itself
+   */
+  public boolean submit(Runnable completion) {
+    if (stopped || size.incrementAndGet() > capacity) {
+      size.decrementAndGet();
+      rejected.incrementAndGet();
+      return false;
+    }
+    queue.offer(completion);
+    if (parked) {
+      LockSupport.unpark(worker);
+    }
+    return true;
+  }
+
+  /**
+   * Ends the span at the time it was handed over.
+   *
+   * @param nanoTime {@link System#nanoTime()} when the span was handed over
+   */
+  public static void end(Span span, long nanoTime) {
+    long delayNanos = System.nanoTime() - nanoTime;
+    if (delayNanos < MAX_END_DELAY_NANOS) {
+      span.end();
+      return;
+    }
+    Instant now = Instant.now();
+    long epochNanos = TimeUnit.SECONDS.toNanos(now.getEpochSecond()) + now.getNano();
+    span.end(epochNanos - delayNanos, TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public void run() {
+    while (!stopped) {
+      Runnable completion = queue.poll();
+      if (completion == null) {
+        parked = true;
+        // submit offers before it checks the flag, check the queue after setting it
+        if (queue.isEmpty()) {
+          LockSupport.parkNanos(this, PARK_NANOS);
+        }
+        parked = false;
+        continue;
+      }
+      size.decrementAndGet();
+      try {
+        completion.run();
+      } catch (Throwable t) {
+        log.warn("Could not complete span", t);
+      }
+      completed.incrementAndGet();
+    }
+  }
+
+  /** Stops the worker after the current completion, pending completions are not run. */
+  void stop() {
+    stopped = true;
+    LockSupport.unpark(worker);
+  }
+
+  /** Number of completions waiting in the queue. */
+  public int getQueueSize() {
+    return size.get();
+  }
+
+  /** Number of completions run by the worker. */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  /** Number of completions which were run inline because the queue was full. */
+  public long getRejected() {
+    return rejected.get();
+  }
+}
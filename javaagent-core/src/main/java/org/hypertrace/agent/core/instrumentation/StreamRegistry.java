@@ -0,0 +1,279 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Weak map of streams whose data is captured. The {@code InputStream} and {@code OutputStream}
+ * instrumentations look up every stream of the JVM in it, therefore {@link #get(Object)} first
+ * checks whether the stream can be registered at all:
+ *
+ * <ul>
+ *   <li>the number of registered streams is zero when nothing is captured, then the lookup is a
+ *       single volatile read
+ *   <li>otherwise the class of the stream has to be one of the classes which have been registered
+ *       before, e.g. the entity streams of the HTTP clients. Streams of other classes like {@code
+ *       FileInputStream} never reach the map.
+ * </ul>
+ *
+ * <p>A bounded registry limits the lifetime and the number of its entries. Streams which are not
+ * read to the end, e.g. pooled connections, would otherwise keep their span and buffer until they
+ * are garbage collected. A background thread removes entries older than the maximum age and the
+ * oldest entries above the maximum count, and passes their values to the reap callback.
+ *
+ * <p>Whoever removes an entry owns its value: the instrumentations capture the body only if {@link
+ * #remove(Object)} returns the value.
+ *
+ * <p>Streams which are garbage collected without being removed are counted down when the map
+ * expunges their entries, until then the count is an upper bound of the registered streams.
+ */
+public final class StreamRegistry<K, V> {
+
+  private static final Logger log = LoggerFactory.getLogger(StreamRegistry.class);
+
+  // more classes mean that streams of arbitrary classes are registered, stop checking the class
+  static final int MAX_ARMED_CLASSES = 64;
+
+  private static final long MIN_REAP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+  private static final long MAX_REAP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+  private static volatile ScheduledExecutorService reaperExecutor;
+
+  private final AtomicInteger registered = new AtomicInteger();
+  private final WeakIdentityMap<K, Entry<V>> map =
+      new WeakIdentityMap<>(entry -> registered.decrementAndGet());
+  // weak, the classes might belong to an application which is undeployed
+  private volatile WeakReference<Class<?>>[] armedClasses = newArray();
+
+  private final long maxAgeNanos;
+  private final int maxEntries;
+  private final Consumer<V> reapCallback;
+  private final AtomicLong reapedEntries = new AtomicLong();
+  private volatile boolean reaperScheduled;
+
+  /** Creates a registry without limits. */
+  public StreamRegistry() {
+    this(Long.MAX_VALUE, Integer.MAX_VALUE, null);
+  }
+
+  /**
+   * Creates a bounded registry.
+   *
+   * @param reapCallback receives the values of the reaped entries, it is called by the reaper
+   *     thread while the stream might still be used
+   */
+  public StreamRegistry(long maxAgeNanos, int maxEntries, Consumer<V> reapCallback) {
+    this.maxAgeNanos = maxAgeNanos;
+    this.maxEntries = maxEntries;
+    this.reapCallback = reapCallback;
+  }
+
+  public void put(K key, V value) {
+    armClass(key.getClass());
+    // count first, readers check the count before the map
+    registered.incrementAndGet();
+    if (map.put(key, new Entry<>(value, System.nanoTime())) != null) {
+      registered.decrementAndGet();
+    }
+    if (reapCallback != null && !reaperScheduled) {
+      scheduleReaper();
+    }
+  }
+
+  public V get(K key) {
+    if (!isArmed(key)) {
+      return null;
+    }
+    Entry<V> entry = map.get(key);
+    return entry == null ? null : entry.value;
+  }
+
+  /** @return the removed value or null if the key is not registered */
+  public V remove(K key) {
+    if (!isArmed(key)) {
+      return null;
+    }
+    Entry<V> entry = map.remove(key);
+    if (entry == null) {
+      return null;
+    }
+    registered.decrementAndGet();
+    return entry.value;
+  }
+
+  /** Returns false if the key is certainly not in the registry. */
+  public boolean isArmed(K key) {
+    if (registered.get() == 0) {
+      return false;
+    }
+    WeakReference<Class<?>>[] classes = armedClasses;
+    return classes == null || contains(classes, key.getClass());
+  }
+
+  /** Number of entries removed by the reaper because of their age or the maximum count. */
+  public long getReapedEntries() {
+    return reapedEntries.get();
+  }
+
+  int getRegisteredCount() {
+    return registered.get();
+  }
+
+  /**
+   * Removes the expired entries and the oldest entries above the maximum count.
+   *
+   * @return number of reaped entries
+   */
+  int reap(long nowNanos) {
+    map.expungeAllStaleEntries();
+    List<Candidate<K, V>> candidates = new ArrayList<>();
+    map.forEach((key, entry) -> candidates.add(new Candidate<>(key, entry)));
+
+    int reaped = 0;
+    int excess = candidates.size() - maxEntries;
+    // oldest first, the remaining entries are younger once an entry is neither expired nor excess
+    candidates.sort(Comparator.comparingLong(candidate -> candidate.entry.createdNanos));
+    for (Candidate<K, V> candidate : candidates) {
+      boolean expired = nowNanos - candidate.entry.createdNanos > maxAgeNanos;
+      if (!expired && excess <= 0) {
+        break;
+      }
+      excess--;
+      if (map.remove(candidate.key, candidate.entry)) {
+        registered.decrementAndGet();
+        reapedEntries.incrementAndGet();
+        reaped++;
+        try {
+          reapCallback.accept(candidate.entry.value);
+        } catch (RuntimeException e) {
+          log.debug("Failed to flush reaped stream entry", e);
+        }
+      }
+    }
+    return reaped;
+  }
+
+  private void scheduleReaper() {
+    synchronized (this) {
+      if (reaperScheduled) {
+        return;
+      }
+      long interval =
+          Math.min(Math.max(maxAgeNanos / 4, MIN_REAP_INTERVAL_NANOS), MAX_REAP_INTERVAL_NANOS);
+      reaperExecutor()
+          .scheduleWithFixedDelay(
+              () -> {
+                try {
+                  reap(System.nanoTime());
+                } catch (Throwable t) {
+                  log.debug("Failed to reap stream entries", t);
+                }
+              },
+              interval,
+              interval,
+              TimeUnit.NANOSECONDS);
+      reaperScheduled = true;
+    }
+  }
+
+  private static ScheduledExecutorService reaperExecutor() {
+    ScheduledExecutorService executor = reaperExecutor;
+    if (executor == null) {
+      synchronized (StreamRegistry.class) {
+        executor = reaperExecutor;
+        if (executor == null) {
+          executor =
+              Executors.newSingleThreadScheduledExecutor(
+                  runnable -> {
+                    Thread thread = new Thread(runnable, "hypertrace-stream-reaper");
+                    thread.setDaemon(true);
+                    return thread;
+                  });
+          reaperExecutor = executor;
+        }
+      }
+    }
+    return executor;
+  }
+
+  private void armClass(Class<?> keyClass) {
+    WeakReference<Class<?>>[] classes = armedClasses;
+    if (classes == null || contains(classes, keyClass)) {
+      return;
+    }
+    synchronized (this) {
+      classes = armedClasses;
+      if (classes == null || contains(classes, keyClass)) {
+        return;
+      }
+      if (classes.length >= MAX_ARMED_CLASSES) {
+        armedClasses = null;
+        return;
+      }
+      WeakReference<Class<?>>[] newClasses = Arrays.copyOf(classes, classes.length + 1);
+      newClasses[classes.length] = new WeakReference<>(keyClass);
+      armedClasses = newClasses;
+    }
+  }
+
+  private static boolean contains(WeakReference<Class<?>>[] classes, Class<?> keyClass) {
+    for (WeakReference<Class<?>> armedClass : classes) {
+      if (armedClass.get() == keyClass) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static WeakReference<Class<?>>[] newArray() {
+    return (WeakReference<Class<?>>[]) new WeakReference<?>[0];
+  }
+
+  private static final class Entry<V> {
+    final V value;
+    final long createdNanos;
+
+    Entry(V value, long createdNanos) {
+      this.value = value;
+      this.createdNanos = createdNanos;
+    }
+  }
+
+  private static final class Candidate<K, V> {
+    final K key;
+    final Entry<V> entry;
+
+    Candidate(K key, Entry<V> entry) {
+      this.key = key;
+      this.entry = entry;
+    }
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Map with weak keys compared by identity, built for {@link GlobalObjectRegistry} which is queried
+ * by every thread on every stream operation.
+ *
+ * <p>The map is split into stripes selected by the identity hash of the key. Each stripe is a hash
+ * table with immutable chains, lookups do not allocate. Updates lock only their stripe. Entries of
+ * collected keys are removed by the reading and the updating threads, which drain a bounded number
+ * of references from the reference queue. A map which is only read is cleaned up as well, the
+ * check of the empty queue is a single volatile read and lookups lock only while there are
+ * references to drain. An expunge listener receives the values of these entries, e.g. to count
+ * them down.
+ */
+public final class WeakIdentityMap<K, V> {
+
+  private static final int DEFAULT_STRIPES = 64;
+  private static final int INITIAL_STRIPE_CAPACITY = 16;
+  private static final int MAX_EXPUNGED_PER_CALL = 64;
+
+  private final Stripe<K, V>[] stripes;
+  private final int stripeShift;
+  private final ReferenceQueue<K> queue = new ReferenceQueue<>();
+
+  public WeakIdentityMap() {
+    this(DEFAULT_STRIPES, null);
+  }
+
+  /**
+   * @param expungeListener receives the value of every entry removed because its key has been
+   *     collected, exactly once per entry. It is called under the lock of a stripe and must not
+   *     access the map.
+   */
+  public WeakIdentityMap(Consumer<? super V> expungeListener) {
+    this(DEFAULT_STRIPES, expungeListener);
+  }
+
+  /** @param stripes number of stripes, must be a power of two */
+  WeakIdentityMap(int stripes) {
+    this(stripes, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  WeakIdentityMap(int stripes, Consumer<? super V> expungeListener) {
+    if (stripes < 2 || Integer.bitCount(stripes) != 1) {
+      throw new IllegalArgumentException("Stripes must be a power of two: " + stripes);
+    }
+    this.stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripes];
+    for (int i = 0; i < stripes; i++) {
+      this.stripes[i] = new Stripe<>(queue, expungeListener);
+    }
+    this.stripeShift = 32 - Integer.numberOfTrailingZeros(stripes);
+  }
+
+  public V get(K key) {
+    if (key == null) {
+      return null;
+    }
+    expungeStaleEntries();
+    int hash = hash(key);
+    return stripeFor(hash).get(key, hash);
+  }
+
+  /** @return the previous value or null */
+  public V put(K key, V value) {
+    if (key == null || value == null) {
+      throw new NullPointerException();
+    }
+    expungeStaleEntries();
+    int hash = hash(key);
+    return stripeFor(hash).put(key, hash, value);
+  }
+
+  /** @return the removed value or null */
+  public V remove(K key) {
+    if (key == null) {
+      return null;
+    }
+    expungeStaleEntries();
+    int hash = hash(key);
+    return stripeFor(hash).remove(key, hash, null);
+  }
+
+  /**
+   * Removes the entry only if the key is mapped to the value, the values are compared by identity.
+   *
+   * @return true if the entry was removed
+   */
+  public boolean remove(K key, V value) {
+    if (key == null || value == null) {
+      return false;
+    }
+    int hash = hash(key);
+    return stripeFor(hash).remove(key, hash, value) != null;
+  }
+
+  /**
+   * Passes the entries to the consumer. The iteration does not lock the map, it might or might not
+   * see the updates made while it runs.
+   */
+  public void forEach(BiConsumer<? super K, ? super V> consumer) {
+    for (Stripe<K, V> stripe : stripes) {
+      stripe.forEach(consumer);
+    }
+  }
+
+  /** Returns the number of entries, including entries of collected keys not expunged yet. */
+  public int size() {
+    int size = 0;
+    for (Stripe<K, V> stripe : stripes) {
+      size += stripe.count;
+    }
+    return size;
+  }
+
+  /**
+   * Removes a bounded number of entries whose keys have been collected.
+   *
+   * @return number of references drained from the queue, less than the bound if it is empty
+   */
+  public int expungeStaleEntries() {
+    for (int i = 0; i < MAX_EXPUNGED_PER_CALL; i++) {
+      Reference<? extends K> reference = queue.poll();
+      if (reference == null) {
+        return i;
+      }
+      @SuppressWarnings("unchecked")
+      Node<K, V> node = (Node<K, V>) reference;
+      stripeFor(node.hash).removeNode(node);
+    }
+    return MAX_EXPUNGED_PER_CALL;
+  }
+
+  /** Removes all entries whose keys have been collected, for background threads. */
+  public void expungeAllStaleEntries() {
+    while (expungeStaleEntries() == MAX_EXPUNGED_PER_CALL) {
+      // drain until the queue is empty
+    }
+  }
+
+  private Stripe<K, V> stripeFor(int hash) {
+    return stripes[hash >>> stripeShift];
+  }
+
+  private static int hash(Object key) {
+    // identity hashes are not uniform in the high bits, the stripe is selected by them
+    return System.identityHashCode(key) * 0x9E3779B9;
+  }
+
+  private static final class Node<K, V> extends WeakReference<K> {
+    final int hash;
+    final Node<K, V> next;
+    volatile V value;
+
+    Node(K key, int hash, Node<K, V> next, V value, ReferenceQueue<K> queue) {
+      super(key, queue);
+      this.hash = hash;
+      this.next = next;
+      this.value = value;
+    }
+  }
+
+  private static final class Stripe<K, V> {
+    private final ReferenceQueue<K> queue;
+    private final Consumer<? super V> expungeListener;
+    // chains are immutable except for the values, updates replace the head of the chain
+    private volatile AtomicReferenceArray<Node<K, V>> table =
+        new AtomicReferenceArray<>(INITIAL_STRIPE_CAPACITY);
+    // written under the lock
+    private volatile int count;
+
+    Stripe(ReferenceQueue<K> queue, Consumer<? super V> expungeListener) {
+      this.queue = queue;
+      this.expungeListener = expungeListener;
+    }
+
+    V get(Object key, int hash) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      for (Node<K, V> node = tab.get(hash & (tab.length() - 1)); node != null; node = node.next) {
+        if (node.hash == hash && node.get() == key) {
+          return node.value;
+        }
+      }
+      return null;
+    }
+
+    synchronized V put(K key, int hash, V value) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      int index = hash & (tab.length() - 1);
+      Node<K, V> head = tab.get(index);
+      for (Node<K, V> node = head; node != null; node = node.next) {
+        if (node.hash == hash && node.get() == key) {
+          V previous = node.value;
+          node.value = value;
+          return previous;
+        }
+      }
+      tab.set(index, new Node<>(key, hash, head, value, queue));
+      count++;
+      if (count > tab.length() - (tab.length() >>> 2)) {
+        resize(tab);
+      }
+      return null;
+    }
+
+    void forEach(BiConsumer<? super K, ? super V> consumer) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      for (int i = 0; i < tab.length(); i++) {
+        for (Node<K, V> node = tab.get(i); node != null; node = node.next) {
+          K key = node.get();
+          if (key != null) {
+            consumer.accept(key, node.value);
+          }
+        }
+      }
+    }
+
+    /** Removes the entry, only if it has the expected value unless the expected value is null. */
+    synchronized V remove(Object key, int hash, V expectedValue) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      int index = hash & (tab.length() - 1);
+      for (Node<K, V> node = tab.get(index); node != null; node = node.next) {
+        if (node.hash == hash && node.get() == key) {
+          if (expectedValue != null && node.value != expectedValue) {
+            return null;
+          }
+          unlink(tab, index, node);
+          // cleared references are not enqueued
+          node.clear();
+          return node.value;
+        }
+      }
+      return null;
+    }
+
+    synchronized void removeNode(Node<K, V> removed) {
+      AtomicReferenceArray<Node<K, V>> tab = table;
+      int index = removed.hash & (tab.length() - 1);
+      for (Node<K, V> node = tab.get(index); node != null; node = node.next) {
+        if (node == removed) {
+          unlink(tab, index, node);
+          expunged(node);
+          return;
+        }
+      }
+      // already removed or dropped by unlink or resize
+    }
+
+    /** Replaces the chain by a copy without the node, collected entries are dropped as well. */
+    private void unlink(AtomicReferenceArray<Node<K, V>> tab, int index, Node<K, V> removed) {
+      int removedCount = 1;
+      Node<K, V> head = removed.next;
+      for (Node<K, V> node = tab.get(index); node != removed; node = node.next) {
+        K key = node.get();
+        if (key == null) {
+          removedCount++;
+          expunged(node);
+        } else {
+          head = new Node<>(key, node.hash, head, node.value, queue);
+        }
+      }
+      tab.set(index, head);
+      count -= removedCount;
+    }
+
+    private void resize(AtomicReferenceArray<Node<K, V>> tab) {
+      AtomicReferenceArray<Node<K, V>> newTab = new AtomicReferenceArray<>(tab.length() * 2);
+      int newCount = 0;
+      for (int i = 0; i < tab.length(); i++) {
+        for (Node<K, V> node = tab.get(i); node != null; node = node.next) {
+          K key = node.get();
+          if (key != null) {
+            int index = node.hash & (newTab.length() - 1);
+            newTab.set(index, new Node<>(key, node.hash, newTab.get(index), node.value, queue));
+            newCount++;
+          } else {
+            expunged(node);
+          }
+        }
+      }
+      count = newCount;
+      table = newTab;
+    }
+
+    /**
+     * Called once per entry of a collected key, the node is no longer in the table and a later poll
+     * of its reference does not find it.
+     */
+    private void expunged(Node<K, V> node) {
+      if (expungeListener != null) {
+        expungeListener.accept(node.value);
+      }
+    }
+  }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+import org.hypertrace.agent.core.instrumentation.utils.VirtualThreads;
+
+/**
+ * Pool of backing arrays for the capture buffers.
+ *
+ * <p>Arrays are grouped into power-of-two size classes starting at {@link #MIN_POOLED_LENGTH}.
+ * Every thread caches at most one array per size class up to {@link #MAX_THREAD_CACHED_LENGTH},
+ * everything else goes to a bounded shared queue per size class. Arrays which do not fit into a
+ * size class or do not fit into the pool are left to the garbage collector.
+ *
+ * <p>Virtual threads use only the shared queues. A virtual thread usually serves a single request,
+ * arrays cached by it would not be reused and would stay reachable as long as the thread lives.
+ */
+final class ArrayPool<T> {
+
+  static final int MIN_POOLED_LENGTH = 256;
+  static final int MAX_THREAD_CACHED_LENGTH = 16 * 1024;
+  static final int DEFAULT_SHARED_POOL_SIZE = 256;
+
+  private static final int MIN_POOLED_LENGTH_SHIFT =
+      Integer.numberOfTrailingZeros(MIN_POOLED_LENGTH);
+
+  static final ArrayPool<byte[]> BYTES =
+      new ArrayPool<>(
+          byte[]::new, array -> array.length, BoundedBuffersFactory.MAX_SIZE, sharedPoolSize());
+  static final ArrayPool<char[]> CHARS =
+      new ArrayPool<>(
+          char[]::new, array -> array.length, BoundedBuffersFactory.MAX_SIZE, sharedPoolSize());
+
+  private final IntFunction<T> allocator;
+  private final ToIntFunction<T> lengthFunction;
+  private final int maxPooledLength;
+  private final int threadCachedSizeClasses;
+  private final ArrayBlockingQueue<T>[] sharedPools;
+  private final ThreadLocal<Object[]> threadCache;
+
+  @SuppressWarnings("unchecked")
+  ArrayPool(
+      IntFunction<T> allocator,
+      ToIntFunction<T> lengthFunction,
+      int maxLength,
+      int sharedPoolSize) {
+    this.allocator = allocator;
+    this.lengthFunction = lengthFunction;
+    this.maxPooledLength = roundUpToSizeClass(Math.max(maxLength, MIN_POOLED_LENGTH));
+    this.threadCachedSizeClasses =
+        sizeClass(Math.min(maxPooledLength, MAX_THREAD_CACHED_LENGTH)) + 1;
+
+    int sizeClasses = sizeClass(maxPooledLength) + 1;
+    this.sharedPools = new ArrayBlockingQueue[sizeClasses];
+    if (sharedPoolSize > 0) {
+      for (int i = 0; i < sizeClasses; i++) {
+        sharedPools[i] = new ArrayBlockingQueue<>(sharedPoolSize);
+      }
+    }
+    this.threadCache = ThreadLocal.withInitial(() -> new Object[threadCachedSizeClasses]);
+  }
+
+  /** Returns an array with at least the given length. */
+  @SuppressWarnings("unchecked")
+  T acquire(int minLength) {
+    if (minLength > maxPooledLength) {
+      return allocator.apply(minLength);
+    }
+    int sizeClass = sizeClass(minLength);
+    if (sizeClass < threadCachedSizeClasses && !VirtualThreads.isCurrentThreadVirtual()) {
+      Object[] cache = threadCache.get();
+      Object cached = cache[sizeClass];
+      if (cached != null) {
+        cache[sizeClass] = null;
+        return (T) cached;
+      }
+    }
+    ArrayBlockingQueue<T> sharedPool = sharedPools[sizeClass];
+    if (sharedPool != null) {
+      T pooled = sharedPool.poll();
+      if (pooled != null) {
+        return pooled;
+      }
+    }
+    return allocator.apply(MIN_POOLED_LENGTH << sizeClass);
+  }
+
+  /** Returns the length of the array that {@link #acquire(int)} returns for the given length. */
+  int arrayLength(int minLength) {
+    if (minLength > maxPooledLength) {
+      return minLength;
+    }
+    return MIN_POOLED_LENGTH << sizeClass(minLength);
+  }
+
+  /** Returns the array to the pool. The caller must not use the array afterwards. */
+  void release(T array) {
+    int length = lengthFunction.applyAsInt(array);
+    if (length < MIN_POOLED_LENGTH
+        || length > maxPooledLength
+        || Integer.bitCount(length) != 1) {
+      return;
+    }
+    int sizeClass = sizeClass(length);
+    if (sizeClass < threadCachedSizeClasses && !VirtualThreads.isCurrentThreadVirtual()) {
+      Object[] cache = threadCache.get();
+      if (cache[sizeClass] == null) {
+        cache[sizeClass] = array;
+        return;
+      }
+    }
+    ArrayBlockingQueue<T> sharedPool = sharedPools[sizeClass];
+    if (sharedPool != null) {
+      sharedPool.offer(array);
+    }
+  }
+
+  static int sizeClass(int length) {
+    if (length <= MIN_POOLED_LENGTH) {
+      return 0;
+    }
+    return 32 - Integer.numberOfLeadingZeros(length - 1) - MIN_POOLED_LENGTH_SHIFT;
+  }
+
+  private static int roundUpToSizeClass(int length) {
+    if (length > (1 << 30)) {
+      return 1 << 30;
+    }
+    return MIN_POOLED_LENGTH << sizeClass(length);
+  }
+
+  private static int sharedPoolSize() {
+    String poolSize = EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_BUFFER_POOL_SIZE);
+    if (poolSize == null) {
+      return DEFAULT_SHARED_POOL_SIZE;
+    }
+    try {
+      return Integer.parseInt(poolSize.trim());
+    } catch (NumberFormatException e) {
+      return DEFAULT_SHARED_POOL_SIZE;
+    }
+  }
+}
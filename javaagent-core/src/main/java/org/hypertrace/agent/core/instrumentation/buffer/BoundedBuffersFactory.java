@@ -17,32 +17,54 @@
 package org.hypertrace.agent.core.instrumentation.buffer;
 
 import java.nio.charset.Charset;
-import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.config.CaptureSettings;
 
+/**
+ * Creates capture buffers. The capacity of every buffer is limited by {@link #MAX_SIZE} and by the
+ * memory left in {@link CaptureMemoryBudget}. If the budget is used up the buffer does not capture
+ * anything and it is reported as {@link BoundedByteArrayOutputStream#isBudgetLimited()}.
+ */
 public class BoundedBuffersFactory {
 
-  public static final int MAX_SIZE =
-      HypertraceConfig.get().getDataCapture().getBodyMaxSizeBytes().getValue();
+  /**
+   * The maximum body size read at startup, every capture uses it. Changes of {@code
+   * bodyMaxSizeBytes} in a reloaded config do not apply.
+   */
+  public static final int MAX_SIZE = CaptureSettings.get().getBodyMaxSizeBytes();
 
   public static BoundedByteArrayOutputStream createStream(Charset charset) {
-    return new BoundedByteArrayOutputStream(MAX_SIZE, charset);
+    return createStream(0, charset);
   }
 
   public static BoundedByteArrayOutputStream createStream(int initialSize, Charset charset) {
-    if (initialSize > MAX_SIZE) {
-      initialSize = MAX_SIZE;
+    int maxSize = (int) CaptureMemoryBudget.get().captureLimit(MAX_SIZE);
+    if (initialSize > maxSize) {
+      initialSize = maxSize;
+    }
+    BoundedByteArrayOutputStream stream =
+        new BoundedByteArrayOutputStream(maxSize, initialSize, charset);
+    if (maxSize < MAX_SIZE) {
+      stream.markBudgetLimited();
     }
-    return new BoundedByteArrayOutputStream(MAX_SIZE, initialSize, charset);
+    return stream;
   }
 
   public static BoundedCharArrayWriter createWriter() {
-    return new BoundedCharArrayWriter(MAX_SIZE);
+    return createWriter(0);
   }
 
   public static BoundedCharArrayWriter createWriter(int initialSize) {
-    if (initialSize > MAX_SIZE) {
-      initialSize = MAX_SIZE;
+    int maxSize =
+        (int)
+            (CaptureMemoryBudget.get().captureLimit((long) MAX_SIZE * Character.BYTES)
+                / Character.BYTES);
+    if (initialSize > maxSize) {
+      initialSize = maxSize;
+    }
+    BoundedCharArrayWriter writer = new BoundedCharArrayWriter(maxSize, initialSize);
+    if (maxSize < MAX_SIZE) {
+      writer.markBudgetLimited();
     }
-    return new BoundedCharArrayWriter(MAX_SIZE, initialSize);
+    return writer;
   }
 }
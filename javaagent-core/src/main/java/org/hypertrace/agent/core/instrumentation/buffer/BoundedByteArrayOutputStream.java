@@ -18,39 +18,44 @@ package org.hypertrace.agent.core.instrumentation.buffer;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 
 /**
  * {@link ByteArrayOutputStream} with a bounded capacity. Write methods are no-op if the size
  * reaches the maximum capacity.
+ *
+ * <p>The data is stored in a {@link SegmentedByteBuffer}, the array inherited from {@link
+ * ByteArrayOutputStream} is not used. Segments are returned to the pool by {@link #release()}.
+ *
+ * <p>Unlike {@link ByteArrayOutputStream} the stream is not synchronized. It is written by the
+ * thread which reads or writes the instrumented stream and the captured body can be read from any
+ * thread afterwards, see {@link SegmentedByteBuffer}.
  */
 public class BoundedByteArrayOutputStream extends ByteArrayOutputStream {
 
-  private final int maxCapacity;
+  private SegmentedByteBuffer buffer;
   private final Charset charset;
 
   BoundedByteArrayOutputStream(int maxCapacity, Charset charset) {
-    this.maxCapacity = maxCapacity;
-    this.charset = charset;
+    this(maxCapacity, 0, charset);
   }
 
   BoundedByteArrayOutputStream(int maxCapacity, int size, Charset charset) {
-    super(size);
-    this.maxCapacity = maxCapacity;
+    super(0);
+    this.buffer = new SegmentedByteBuffer(maxCapacity, size);
     this.charset = charset;
   }
 
-  public synchronized String toStringWithSuppliedCharset() throws UnsupportedEncodingException {
-    return super.toString(this.charset.name());
+  public String toStringWithSuppliedCharset() throws UnsupportedEncodingException {
+    return buffer.toString(charset);
   }
 
   @Override
-  public synchronized void write(int b) {
-    if (size() == maxCapacity) {
-      return;
-    }
-    super.write(b);
+  public void write(int b) {
+    buffer.write(b);
   }
 
   @Override
@@ -60,12 +65,98 @@ public class BoundedByteArrayOutputStream extends ByteArrayOutputStream {
   }
 
   @Override
-  public synchronized void write(byte[] b, int off, int len) {
-    int size = size();
-    if (size + len > maxCapacity) {
-      super.write(b, off, maxCapacity - size);
-      return;
+  public void write(byte[] b, int off, int len) {
+    buffer.write(b, off, len);
+  }
+
+  /**
+   * Copies the remaining bytes of the source, see {@link SegmentedByteBuffer#write(ByteBuffer)}.
+   */
+  public void write(ByteBuffer src) {
+    buffer.write(src);
+  }
+
+  /** Returns the number of bytes which can still be written before the capacity is reached. */
+  public int remainingCapacity() {
+    return buffer.remainingCapacity();
+  }
+
+  @Override
+  public void writeTo(OutputStream out) throws IOException {
+    buffer.writeTo(out);
+  }
+
+  @Override
+  public void reset() {
+    buffer.reset();
+  }
+
+  @Override
+  public byte[] toByteArray() {
+    return buffer.toByteArray();
+  }
+
+  @Override
+  public int size() {
+    return buffer.size();
+  }
+
+  @Override
+  public String toString() {
+    return buffer.toString(Charset.defaultCharset());
+  }
+
+  @Override
+  public String toString(String charsetName) throws UnsupportedEncodingException {
+    return buffer.toString(toCharset(charsetName));
+  }
+
+  // overrides ByteArrayOutputStream#toString(Charset) available since Java 10
+  public String toString(Charset charset) {
+    return buffer.toString(charset);
+  }
+
+  /**
+   * Returns the segments to the pool. The stream is empty afterwards and subsequent writes are
+   * ignored, therefore it should be called only by the owner of the buffer once the body has been
+   * captured.
+   */
+  public void release() {
+    buffer.release();
+  }
+
+  /**
+   * Returns true if the capture has been truncated or has not started because the memory budget was
+   * used up.
+   */
+  public boolean isBudgetLimited() {
+    return buffer.isBudgetLimited();
+  }
+
+  Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Hands the captured data over to a new owner. The stream is empty afterwards and ignores
+   * subsequent writes.
+   */
+  SegmentedByteBuffer detach() {
+    SegmentedByteBuffer detached = buffer;
+    buffer = new SegmentedByteBuffer(0);
+    buffer.release();
+    return detached;
+  }
+
+  void markBudgetLimited() {
+    buffer.markBudgetLimited();
+  }
+
+  private static Charset toCharset(String charsetName) throws UnsupportedEncodingException {
+    try {
+      return Charset.forName(charsetName);
+    } catch (IllegalArgumentException e) {
+      throw new UnsupportedEncodingException(charsetName);
     }
-    super.write(b, off, len);
   }
 }
@@ -20,51 +20,46 @@ import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.io.Writer;
 
+/**
+ * {@link CharArrayWriter} with a bounded capacity. Write methods are no-op if the size reaches the
+ * maximum capacity.
+ *
+ * <p>The data is stored in a {@link SegmentedCharBuffer}, the array inherited from {@link
+ * CharArrayWriter} is not used. Segments are returned to the pool by {@link #release()}. The writer
+ * does not synchronize on {@link #lock}, it has a single owner like {@link
+ * BoundedByteArrayOutputStream}.
+ */
 public class BoundedCharArrayWriter extends CharArrayWriter {
 
-  private final int maxCapacity;
+  private final SegmentedCharBuffer buffer;
 
   BoundedCharArrayWriter(int maxCapacity) {
-    this.maxCapacity = maxCapacity;
+    this(maxCapacity, 0);
   }
 
   BoundedCharArrayWriter(int maxCapacity, int initialSize) {
-    super(initialSize);
-    this.maxCapacity = maxCapacity;
+    super(0);
+    this.buffer = new SegmentedCharBuffer(maxCapacity, initialSize);
   }
 
   @Override
   public void write(int c) {
-    if (size() == maxCapacity) {
-      return;
-    }
-    super.write(c);
+    buffer.write(c);
   }
 
   @Override
   public void write(char[] c, int off, int len) {
-    int size = size();
-    if (size + len > maxCapacity) {
-      super.write(c, off, maxCapacity - size);
-      return;
-    }
-    super.write(c, off, len);
+    buffer.write(c, off, len);
   }
 
   @Override
   public void write(String str, int off, int len) {
-    int size = size();
-    if (size + len > maxCapacity) {
-      super.write(str, off, maxCapacity - size);
-      return;
-    }
-    super.write(str, off, len);
+    buffer.write(str, off, len);
   }
 
   @Override
   public void writeTo(Writer out) throws IOException {
-    // don't need to override, it will copy what is buffered
-    super.writeTo(out);
+    buffer.writeTo(out);
   }
 
   @Override
@@ -100,4 +95,44 @@ public class BoundedCharArrayWriter extends CharArrayWriter {
     }
     this.write(str, 0, str.length());
   }
+
+  @Override
+  public void reset() {
+    buffer.reset();
+  }
+
+  @Override
+  public char[] toCharArray() {
+    return buffer.toCharArray();
+  }
+
+  @Override
+  public int size() {
+    return buffer.size();
+  }
+
+  @Override
+  public String toString() {
+    return buffer.toString();
+  }
+
+  /**
+   * Returns the segments to the pool. The writer is empty afterwards and subsequent writes are
+   * ignored.
+   */
+  public void release() {
+    buffer.release();
+  }
+
+  /**
+   * Returns true if the capture has been truncated or has not started because the memory budget was
+   * used up.
+   */
+  public boolean isBudgetLimited() {
+    return buffer.isBudgetLimited();
+  }
+
+  void markBudgetLimited() {
+    buffer.markBudgetLimited();
+  }
 }
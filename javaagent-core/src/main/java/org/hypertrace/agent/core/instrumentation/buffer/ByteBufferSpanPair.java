@@ -19,12 +19,19 @@ package org.hypertrace.agent.core.instrumentation.buffer;
 import io.opentelemetry.api.common.AttributeKey;
 import io.opentelemetry.api.trace.Span;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 
 public class ByteBufferSpanPair {
 
+  static final int FILTER_BATCH_SIZE = 256;
+
   public final Span span;
   public final BoundedByteArrayOutputStream buffer;
   private boolean bufferCaptured;
+  private boolean bodyFiltered;
+  // bytes read one at a time, passed to the body filters in batches
+  private byte[] filterBatch;
+  private int filterBatchLength;
 
   public ByteBufferSpanPair(Span span, BoundedByteArrayOutputStream buffer) {
     this.span = span;
@@ -36,6 +43,14 @@ public class ByteBufferSpanPair {
       return;
     }
     bufferCaptured = true;
+    if (buffer.size() == 0 && buffer.isBudgetLimited()) {
+      // capture memory budget was used up, only headers are captured
+      return;
+    }
+    if (PendingBodies.defer(span, attributeKey, buffer)) {
+      // decoded by the exporter
+      return;
+    }
 
     String requestBody = null;
     try {
@@ -45,4 +60,41 @@ public class ByteBufferSpanPair {
     }
     span.setAttribute(attributeKey, requestBody);
   }
+
+  /** Returns true if the body filters have blocked the request or have seen the whole body. */
+  public boolean isBodyFiltered() {
+    return bodyFiltered;
+  }
+
+  public void markBodyFiltered() {
+    bodyFiltered = true;
+  }
+
+  /**
+   * Adds a byte read on its own to the batch for the body filters.
+   *
+   * @return true if the batch is full and should be passed on with {@link #takeFilterBatch()}
+   */
+  public boolean addToFilterBatch(byte b) {
+    if (filterBatch == null) {
+      filterBatch = new byte[FILTER_BATCH_SIZE];
+    }
+    filterBatch[filterBatchLength++] = b;
+    return filterBatchLength == filterBatch.length;
+  }
+
+  /**
+   * Empties the batch for the body filters. The returned buffer is valid until the next byte is
+   * added, the same way as the array of a read is reused by the application.
+   *
+   * @return the batched bytes or null if there are none
+   */
+  public ByteBuffer takeFilterBatch() {
+    if (filterBatchLength == 0) {
+      return null;
+    }
+    ByteBuffer batch = ByteBuffer.wrap(filterBatch, 0, filterBatchLength).asReadOnlyBuffer();
+    filterBatchLength = 0;
+    return batch;
+  }
 }
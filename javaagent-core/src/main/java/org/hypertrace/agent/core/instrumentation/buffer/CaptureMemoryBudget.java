@@ -0,0 +1,159 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+
+/**
+ * Process wide limit of memory held by capture buffers which are in use.
+ *
+ * <p>Buffers reserve memory from the budget before they grow and give it back when they are
+ * released. Buffers which are garbage collected without being released are reclaimed lazily on the
+ * next reservation. Pooled arrays which are not used by any buffer do not count against the budget.
+ */
+public final class CaptureMemoryBudget {
+
+  public static final long DEFAULT_LIMIT_BYTES = 64L * 1024 * 1024;
+
+  private static final CaptureMemoryBudget INSTANCE = new CaptureMemoryBudget(limitBytes());
+
+  private final long limitBytes;
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final AtomicLong rejectedReservations = new AtomicLong();
+  private final AtomicLong limitedCaptures = new AtomicLong();
+
+  private final ReferenceQueue<Object> collectedBuffers = new ReferenceQueue<>();
+  // holds the phantom references until the buffer is released or collected
+  private final Set<Reservation> reservations = ConcurrentHashMap.newKeySet();
+
+  CaptureMemoryBudget(long limitBytes) {
+    this.limitBytes = limitBytes;
+  }
+
+  public static CaptureMemoryBudget get() {
+    return INSTANCE;
+  }
+
+  /** Maximum number of bytes that capture buffers can hold at the same time. */
+  public long getLimitBytes() {
+    return limitBytes;
+  }
+
+  /** Number of bytes currently held by capture buffers. */
+  public long getUsedBytes() {
+    return usedBytes.get();
+  }
+
+  /** Number of times a buffer could not grow because the budget was used up. */
+  public long getRejectedReservations() {
+    return rejectedReservations.get();
+  }
+
+  /** Number of captures that started with a smaller cap than the configured maximum body size. */
+  public long getLimitedCaptures() {
+    return limitedCaptures.get();
+  }
+
+  /** Returns the capture cap in bytes for a new buffer with the given maximum capacity. */
+  long captureLimit(long maxCapacityBytes) {
+    reclaimCollected();
+    long available = limitBytes - usedBytes.get();
+    if (available >= maxCapacityBytes) {
+      return maxCapacityBytes;
+    }
+    limitedCaptures.incrementAndGet();
+    return Math.max(0, available);
+  }
+
+  Reservation register(Object buffer) {
+    Reservation reservation = new Reservation(buffer, collectedBuffers);
+    reservations.add(reservation);
+    return reservation;
+  }
+
+  boolean tryReserve(Reservation reservation, long bytes) {
+    reclaimCollected();
+    while (true) {
+      long used = usedBytes.get();
+      if (used + bytes > limitBytes) {
+        rejectedReservations.incrementAndGet();
+        return false;
+      }
+      if (usedBytes.compareAndSet(used, used + bytes)) {
+        Reservation.BYTES.addAndGet(reservation, bytes);
+        return true;
+      }
+    }
+  }
+
+  void release(Reservation reservation, long bytes) {
+    Reservation.BYTES.addAndGet(reservation, -bytes);
+    usedBytes.addAndGet(-bytes);
+  }
+
+  /** Gives back everything held by the reservation, called when the buffer is released. */
+  void close(Reservation reservation) {
+    if (reservations.remove(reservation)) {
+      usedBytes.addAndGet(-Reservation.BYTES.getAndSet(reservation, 0));
+      reservation.clear();
+    }
+  }
+
+  private void reclaimCollected() {
+    Reference<?> collected;
+    while ((collected = collectedBuffers.poll()) != null) {
+      Reservation reservation = (Reservation) collected;
+      if (reservations.remove(reservation)) {
+        usedBytes.addAndGet(-Reservation.BYTES.getAndSet(reservation, 0));
+      }
+    }
+  }
+
+  private static long limitBytes() {
+    String limit = EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_MEMORY_BUDGET_BYTES);
+    if (limit == null) {
+      return DEFAULT_LIMIT_BYTES;
+    }
+    try {
+      return Long.parseLong(limit.trim());
+    } catch (NumberFormatException e) {
+      return DEFAULT_LIMIT_BYTES;
+    }
+  }
+
+  /**
+   * Bytes reserved by a single buffer. The buffer is written by one thread at a time, but it might
+   * be handed over, e.g. to the exporter thread, the count is therefore updated atomically.
+   */
+  static final class Reservation extends PhantomReference<Object> {
+    static final AtomicLongFieldUpdater<Reservation> BYTES =
+        AtomicLongFieldUpdater.newUpdater(Reservation.class, "bytes");
+
+    volatile long bytes;
+
+    Reservation(Object buffer, ReferenceQueue<Object> queue) {
+      super(buffer, queue);
+    }
+  }
+}
@@ -40,6 +40,9 @@ public class CharBufferSpanPair {
       return;
     }
     bufferCaptured = true;
+    if (buffer.size() == 0 && buffer.isBudgetLimited()) {
+      return;
+    }
     String requestBody = buffer.toString();
     span.setAttribute(attributeKey, requestBody);
   }
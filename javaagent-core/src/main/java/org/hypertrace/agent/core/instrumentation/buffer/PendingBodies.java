@@ -0,0 +1,247 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.common.AttributesBuilder;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Captured bodies which are decoded when the span is exported instead of on the request thread.
+ *
+ * <p>The raw bytes and the charset are kept in a side table keyed by span ID. The exporter takes
+ * them with {@link #take(String)} and adds the decoded bodies to the exported span. Deferring is
+ * enabled only by the exporter which decodes the bodies, if it is not installed bodies are decoded
+ * and added to the span right away.
+ *
+ * <p>Bodies which are not text, e.g. serialized protobuf messages, are deferred with a {@link
+ * Decoder} which converts the raw bytes. A span keeps one body per attribute, a body deferred again
+ * for the same attribute, e.g. the next message of a stream, replaces the previous one the same way
+ * as setting the attribute again would.
+ *
+ * <p>Bodies held by the table still count against the {@link CaptureMemoryBudget}. Entries of spans
+ * which are never exported, for instance because the export queue was full, are dropped after
+ * {@link #MAX_AGE_NANOS} when the table is full.
+ */
+public final class PendingBodies {
+
+  static final int MAX_PENDING_SPANS = 8 * 1024;
+  static final long MAX_AGE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+  private static final PendingBodies INSTANCE = new PendingBodies(MAX_PENDING_SPANS);
+
+  private static volatile boolean enabled;
+
+  private final int maxPendingSpans;
+  private final Map<String, PendingBody> bodies = new ConcurrentHashMap<>();
+  private final AtomicLong droppedBodies = new AtomicLong();
+
+  PendingBodies(int maxPendingSpans) {
+    this.maxPendingSpans = maxPendingSpans;
+  }
+
+  public static PendingBodies get() {
+    return INSTANCE;
+  }
+
+  /** Called by the exporter which decodes the pending bodies. */
+  public static void enable() {
+    enabled = true;
+  }
+
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Number of bodies dropped because their span was not exported in time. */
+  public long getDroppedBodies() {
+    return droppedBodies.get();
+  }
+
+  /**
+   * Moves the captured body to the table. The buffer is empty afterwards and can be released by its
+   * owner as usual.
+   *
+   * @return false if the body was not deferred and should be added to the span right away
+   */
+  public static boolean defer(
+      Span span, AttributeKey<String> attributeKey, BoundedByteArrayOutputStream buffer) {
+    return defer(span, attributeKey, buffer, null);
+  }
+
+  /**
+   * Same as {@link #defer(Span, AttributeKey, BoundedByteArrayOutputStream)}, the body is converted
+   * by the decoder instead of decoded with the charset of the buffer.
+   */
+  public static boolean defer(
+      Span span,
+      AttributeKey<String> attributeKey,
+      BoundedByteArrayOutputStream buffer,
+      Decoder decoder) {
+    if (!enabled) {
+      return false;
+    }
+    SpanContext spanContext = span.getSpanContext();
+    // the exporter sees only sampled spans and a span which has ended might have been exported
+    if (!spanContext.isSampled() || !span.isRecording()) {
+      return false;
+    }
+    return INSTANCE.add(spanContext.getSpanId(), attributeKey, buffer, decoder);
+  }
+
+  boolean add(
+      String spanId, AttributeKey<String> attributeKey, BoundedByteArrayOutputStream buffer) {
+    return add(spanId, attributeKey, buffer, null);
+  }
+
+  boolean add(
+      String spanId,
+      AttributeKey<String> attributeKey,
+      BoundedByteArrayOutputStream buffer,
+      Decoder decoder) {
+    if (bodies.size() >= maxPendingSpans && !evictExpired()) {
+      return false;
+    }
+
+    PendingBody body =
+        new PendingBody(
+            attributeKey, buffer.detach(), buffer.getCharset(), decoder, System.nanoTime());
+    PendingBody[] replaced = new PendingBody[1];
+    bodies.merge(
+        spanId,
+        body,
+        (previous, added) -> {
+          replaced[0] = find(previous, attributeKey);
+          added.next = replaced[0] == null ? previous : without(previous, replaced[0]);
+          return added;
+        });
+    if (replaced[0] != null) {
+      replaced[0].buffer.release();
+    }
+    return true;
+  }
+
+  /**
+   * Decodes and removes the bodies captured for the span.
+   *
+   * @return decoded bodies or null if there are none
+   */
+  public Attributes take(String spanId) {
+    if (bodies.isEmpty()) {
+      return null;
+    }
+    PendingBody body = bodies.remove(spanId);
+    if (body == null) {
+      return null;
+    }
+    AttributesBuilder attributes = Attributes.builder();
+    for (; body != null; body = body.next) {
+      String value = body.decode();
+      if (value != null) {
+        attributes.put(body.attributeKey, value);
+      }
+      body.buffer.release();
+    }
+    return attributes.build();
+  }
+
+  private static PendingBody find(PendingBody body, AttributeKey<String> attributeKey) {
+    for (; body != null; body = body.next) {
+      if (body.attributeKey.equals(attributeKey)) {
+        return body;
+      }
+    }
+    return null;
+  }
+
+  /** Unlinks the body from the chain, the chains hold a few bodies at most. */
+  private static PendingBody without(PendingBody head, PendingBody removed) {
+    if (head == removed) {
+      return removed.next;
+    }
+    PendingBody body = head;
+    while (body.next != removed) {
+      body = body.next;
+    }
+    body.next = removed.next;
+    return head;
+  }
+
+  private boolean evictExpired() {
+    long now = System.nanoTime();
+    boolean evicted = false;
+    for (Map.Entry<String, PendingBody> entry : bodies.entrySet()) {
+      PendingBody body = entry.getValue();
+      if (now - body.createdNanos > MAX_AGE_NANOS && bodies.remove(entry.getKey(), body)) {
+        for (; body != null; body = body.next) {
+          body.buffer.release();
+          droppedBodies.incrementAndGet();
+        }
+        evicted = true;
+      }
+    }
+    return evicted;
+  }
+
+  /** Converts the raw bytes of a deferred body, called on the exporter thread. */
+  public interface Decoder {
+
+    /** @return the attribute value or null if the bytes cannot be converted */
+    String decode(byte[] bytes);
+  }
+
+  private static final class PendingBody {
+    final AttributeKey<String> attributeKey;
+    final SegmentedByteBuffer buffer;
+    final Charset charset;
+    final Decoder decoder;
+    final long createdNanos;
+    PendingBody next;
+
+    PendingBody(
+        AttributeKey<String> attributeKey,
+        SegmentedByteBuffer buffer,
+        Charset charset,
+        Decoder decoder,
+        long createdNanos) {
+      this.attributeKey = attributeKey;
+      this.buffer = buffer;
+      this.charset = charset;
+      this.decoder = decoder;
+      this.createdNanos = createdNanos;
+    }
+
+    String decode() {
+      if (decoder == null) {
+        return buffer.toString(charset);
+      }
+      try {
+        return decoder.decode(buffer.toByteArray());
+      } catch (RuntimeException e) {
+        // the decoder comes from an instrumentation, do not fail the export
+        return null;
+      }
+    }
+  }
+}
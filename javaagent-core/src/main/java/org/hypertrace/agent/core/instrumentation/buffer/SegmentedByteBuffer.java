@@ -0,0 +1,253 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Bounded byte buffer made of segments taken from {@link ArrayPool#BYTES}. The first segment is
+ * sized by the expected body size up to {@link #SEGMENT_SIZE}, all other segments have {@link
+ * #SEGMENT_SIZE}. Written data is never copied when the buffer grows, a new segment is added
+ * instead.
+ *
+ * <p>The buffer is not synchronized, it expects a single owner which writes to it and releases it.
+ * Every write publishes the new size with an ordered store, therefore a thread which reads the
+ * buffer after the writes, for instance the thread which captures the body, sees all data written
+ * up to the published size.
+ */
+public final class SegmentedByteBuffer {
+
+  public static final int SEGMENT_SIZE = 4 * 1024;
+
+  private static final byte[][] NO_SEGMENTS = new byte[0][];
+  // enough for the undecoded tail of a character split between two segments
+  private static final int CARRY_SIZE = 32;
+
+  private static final AtomicIntegerFieldUpdater<SegmentedByteBuffer> PUBLISHED_SIZE =
+      AtomicIntegerFieldUpdater.newUpdater(SegmentedByteBuffer.class, "publishedSize");
+
+  private final int maxCapacity;
+  private final int initialSize;
+
+  private byte[][] segments = NO_SEGMENTS;
+  private int segmentCount;
+  // last segment and the write position in it
+  private byte[] current;
+  private int position;
+  private int size;
+  private volatile int publishedSize;
+
+  private CaptureMemoryBudget.Reservation reservation;
+  private volatile boolean budgetLimited;
+  private boolean released;
+
+  public SegmentedByteBuffer(int maxCapacity) {
+    this(maxCapacity, 0);
+  }
+
+  public SegmentedByteBuffer(int maxCapacity, int initialSize) {
+    this.maxCapacity = maxCapacity;
+    this.initialSize = initialSize;
+  }
+
+  public int size() {
+    return publishedSize;
+  }
+
+  public boolean isBudgetLimited() {
+    return budgetLimited;
+  }
+
+  void markBudgetLimited() {
+    budgetLimited = true;
+  }
+
+  public void write(int b) {
+    if (released || size == maxCapacity) {
+      return;
+    }
+    if ((current == null || position == current.length) && !addSegment(1)) {
+      return;
+    }
+    current[position++] = (byte) b;
+    PUBLISHED_SIZE.lazySet(this, ++size);
+  }
+
+  public void write(byte[] b, int off, int len) {
+    if (off < 0 || len < 0 || len > b.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (released) {
+      return;
+    }
+    len = Math.min(len, maxCapacity - size);
+    while (len > 0) {
+      if ((current == null || position == current.length) && !addSegment(len)) {
+        break;
+      }
+      int toCopy = Math.min(len, current.length - position);
+      System.arraycopy(b, off, current, position, toCopy);
+      position += toCopy;
+      size += toCopy;
+      off += toCopy;
+      len -= toCopy;
+    }
+    PUBLISHED_SIZE.lazySet(this, size);
+  }
+
+  /**
+   * Copies the remaining bytes of the source up to the capacity, e.g. from a view of a direct
+   * network buffer without an intermediate array. The position of the source is advanced.
+   */
+  public void write(ByteBuffer src) {
+    if (released) {
+      return;
+    }
+    int len = Math.min(src.remaining(), maxCapacity - size);
+    while (len > 0) {
+      if ((current == null || position == current.length) && !addSegment(len)) {
+        break;
+      }
+      int toCopy = Math.min(len, current.length - position);
+      src.get(current, position, toCopy);
+      position += toCopy;
+      size += toCopy;
+      len -= toCopy;
+    }
+    PUBLISHED_SIZE.lazySet(this, size);
+  }
+
+  /** Returns the number of bytes which can still be written. */
+  public int remainingCapacity() {
+    return released ? 0 : maxCapacity - size;
+  }
+
+  public void writeTo(OutputStream out) throws IOException {
+    int remaining = publishedSize;
+    byte[][] segments = this.segments;
+    for (int i = 0; remaining > 0; i++) {
+      int length = Math.min(segments[i].length, remaining);
+      out.write(segments[i], 0, length);
+      remaining -= length;
+    }
+  }
+
+  public byte[] toByteArray() {
+    int size = publishedSize;
+    byte[][] segments = this.segments;
+    byte[] bytes = new byte[size];
+    for (int i = 0, offset = 0; offset < size; i++) {
+      int length = Math.min(segments[i].length, size - offset);
+      System.arraycopy(segments[i], 0, bytes, offset, length);
+      offset += length;
+    }
+    return bytes;
+  }
+
+  /** Decodes the buffer in a single pass over the segments. */
+  public String toString(Charset charset) {
+    int size = publishedSize;
+    if (size == 0) {
+      return "";
+    }
+    byte[][] segments = this.segments;
+    if (size <= segments[0].length) {
+      return new String(segments[0], 0, size, charset);
+    }
+
+    CharsetDecoder decoder =
+        charset
+            .newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    CharBuffer out = CharBuffer.allocate((int) (size * (double) decoder.maxCharsPerByte()) + 1);
+    ByteBuffer carry = ByteBuffer.allocate(CARRY_SIZE);
+    for (int i = 0, remaining = size; remaining > 0; i++) {
+      int length = Math.min(segments[i].length, remaining);
+      remaining -= length;
+      ByteBuffer in = ByteBuffer.wrap(segments[i], 0, length);
+      // finish the character split between the previous and this segment
+      while (carry.position() > 0 && in.hasRemaining()) {
+        carry.put(in.get());
+        carry.flip();
+        decoder.decode(carry, out, false);
+        carry.compact();
+      }
+      decoder.decode(in, out, false);
+      carry.put(in);
+    }
+    carry.flip();
+    decoder.decode(carry, out, true);
+    decoder.flush(out);
+    out.flip();
+    return out.toString();
+  }
+
+  /** Discards the content and returns the segments to the pool. */
+  public void reset() {
+    for (int i = 0; i < segmentCount; i++) {
+      ArrayPool.BYTES.release(segments[i]);
+      segments[i] = null;
+    }
+    segmentCount = 0;
+    current = null;
+    position = 0;
+    size = 0;
+    PUBLISHED_SIZE.lazySet(this, 0);
+    if (reservation != null) {
+      CaptureMemoryBudget.get().close(reservation);
+      reservation = null;
+    }
+  }
+
+  /** Discards the content and ignores all subsequent writes. */
+  public void release() {
+    released = true;
+    reset();
+  }
+
+  private boolean addSegment(int remaining) {
+    int length = segmentCount == 0 ? Math.max(initialSize, remaining) : SEGMENT_SIZE;
+    length = Math.min(Math.min(length, SEGMENT_SIZE), maxCapacity - size);
+
+    CaptureMemoryBudget budget = CaptureMemoryBudget.get();
+    if (reservation == null) {
+      reservation = budget.register(this);
+    }
+    if (!budget.tryReserve(reservation, ArrayPool.BYTES.arrayLength(length))) {
+      budgetLimited = true;
+      return false;
+    }
+
+    byte[] segment = ArrayPool.BYTES.acquire(length);
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, Math.max(4, segmentCount << 1));
+    }
+    segments[segmentCount++] = segment;
+    current = segment;
+    position = 0;
+    return true;
+  }
+}
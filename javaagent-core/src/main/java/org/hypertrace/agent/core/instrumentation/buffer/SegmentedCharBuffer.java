@@ -0,0 +1,214 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Char counterpart of {@link SegmentedByteBuffer}, segments are taken from {@link
+ * ArrayPool#CHARS}.
+ *
+ * <p>Like {@link SegmentedByteBuffer} it is written by a single owner and publishes its size after
+ * every write.
+ */
+public final class SegmentedCharBuffer {
+
+  public static final int SEGMENT_SIZE = 2 * 1024;
+
+  private static final char[][] NO_SEGMENTS = new char[0][];
+
+  private static final AtomicIntegerFieldUpdater<SegmentedCharBuffer> PUBLISHED_SIZE =
+      AtomicIntegerFieldUpdater.newUpdater(SegmentedCharBuffer.class, "publishedSize");
+
+  private final int maxCapacity;
+  private final int initialSize;
+
+  private char[][] segments = NO_SEGMENTS;
+  private int segmentCount;
+  private char[] current;
+  private int position;
+  private int size;
+  private volatile int publishedSize;
+
+  private CaptureMemoryBudget.Reservation reservation;
+  private volatile boolean budgetLimited;
+  private boolean released;
+
+  public SegmentedCharBuffer(int maxCapacity) {
+    this(maxCapacity, 0);
+  }
+
+  public SegmentedCharBuffer(int maxCapacity, int initialSize) {
+    this.maxCapacity = maxCapacity;
+    this.initialSize = initialSize;
+  }
+
+  public int size() {
+    return publishedSize;
+  }
+
+  public boolean isBudgetLimited() {
+    return budgetLimited;
+  }
+
+  void markBudgetLimited() {
+    budgetLimited = true;
+  }
+
+  public void write(int c) {
+    if (released || size == maxCapacity) {
+      return;
+    }
+    if ((current == null || position == current.length) && !addSegment(1)) {
+      return;
+    }
+    current[position++] = (char) c;
+    PUBLISHED_SIZE.lazySet(this, ++size);
+  }
+
+  public void write(char[] c, int off, int len) {
+    if (off < 0 || len < 0 || len > c.length - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (released) {
+      return;
+    }
+    len = Math.min(len, maxCapacity - size);
+    while (len > 0) {
+      if ((current == null || position == current.length) && !addSegment(len)) {
+        break;
+      }
+      int toCopy = Math.min(len, current.length - position);
+      System.arraycopy(c, off, current, position, toCopy);
+      position += toCopy;
+      size += toCopy;
+      off += toCopy;
+      len -= toCopy;
+    }
+    PUBLISHED_SIZE.lazySet(this, size);
+  }
+
+  public void write(String str, int off, int len) {
+    if (off < 0 || len < 0 || len > str.length() - off) {
+      throw new IndexOutOfBoundsException();
+    }
+    if (released) {
+      return;
+    }
+    len = Math.min(len, maxCapacity - size);
+    while (len > 0) {
+      if ((current == null || position == current.length) && !addSegment(len)) {
+        break;
+      }
+      int toCopy = Math.min(len, current.length - position);
+      str.getChars(off, off + toCopy, current, position);
+      position += toCopy;
+      size += toCopy;
+      off += toCopy;
+      len -= toCopy;
+    }
+    PUBLISHED_SIZE.lazySet(this, size);
+  }
+
+  public void writeTo(Writer out) throws IOException {
+    int remaining = publishedSize;
+    char[][] segments = this.segments;
+    for (int i = 0; remaining > 0; i++) {
+      int length = Math.min(segments[i].length, remaining);
+      out.write(segments[i], 0, length);
+      remaining -= length;
+    }
+  }
+
+  public char[] toCharArray() {
+    return toCharArray(publishedSize);
+  }
+
+  private char[] toCharArray(int size) {
+    char[][] segments = this.segments;
+    char[] chars = new char[size];
+    for (int i = 0, offset = 0; offset < size; i++) {
+      int length = Math.min(segments[i].length, size - offset);
+      System.arraycopy(segments[i], 0, chars, offset, length);
+      offset += length;
+    }
+    return chars;
+  }
+
+  @Override
+  public String toString() {
+    int size = publishedSize;
+    if (size == 0) {
+      return "";
+    }
+    char[] first = segments[0];
+    if (size <= first.length) {
+      return new String(first, 0, size);
+    }
+    return new String(toCharArray(size));
+  }
+
+  /** Discards the content and returns the segments to the pool. */
+  public void reset() {
+    for (int i = 0; i < segmentCount; i++) {
+      ArrayPool.CHARS.release(segments[i]);
+      segments[i] = null;
+    }
+    segmentCount = 0;
+    current = null;
+    position = 0;
+    size = 0;
+    PUBLISHED_SIZE.lazySet(this, 0);
+    if (reservation != null) {
+      CaptureMemoryBudget.get().close(reservation);
+      reservation = null;
+    }
+  }
+
+  /** Discards the content and ignores all subsequent writes. */
+  public void release() {
+    released = true;
+    reset();
+  }
+
+  private boolean addSegment(int remaining) {
+    int length = segmentCount == 0 ? Math.max(initialSize, remaining) : SEGMENT_SIZE;
+    length = Math.min(Math.min(length, SEGMENT_SIZE), maxCapacity - size);
+
+    CaptureMemoryBudget budget = CaptureMemoryBudget.get();
+    if (reservation == null) {
+      reservation = budget.register(this);
+    }
+    if (!budget.tryReserve(
+        reservation, (long) ArrayPool.CHARS.arrayLength(length) * Character.BYTES)) {
+      budgetLimited = true;
+      return false;
+    }
+
+    char[] segment = ArrayPool.CHARS.acquire(length);
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, Math.max(4, segmentCount << 1));
+    }
+    segments[segmentCount++] = segment;
+    current = segment;
+    position = 0;
+    return true;
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * Cache of values derived from header values.
+ *
+ * <p>The cache is a direct mapped table indexed by the hash of the key, like the attribute key
+ * cache. A hit is a single lock-free lookup. A miss replaces the entry in the slot, therefore the
+ * cache never grows and a flood of distinct values only evicts the cached values, which are
+ * cached again on their next miss.
+ */
+final class BoundedCache<K, V> {
+
+  private final AtomicReferenceArray<Entry<K, V>> entries;
+  private final int mask;
+
+  /** @param size number of slots, must be a power of two */
+  BoundedCache(int size) {
+    if (Integer.bitCount(size) != 1) {
+      throw new IllegalArgumentException("Size must be a power of two: " + size);
+    }
+    this.entries = new AtomicReferenceArray<>(size);
+    this.mask = size - 1;
+  }
+
+  V get(K key, Function<? super K, ? extends V> loader) {
+    int hash = key.hashCode();
+    int index = (hash ^ (hash >>> 16)) & mask;
+    Entry<K, V> entry = entries.get(index);
+    if (entry != null && entry.key.equals(key)) {
+      return entry.value;
+    }
+    V value = loader.apply(key);
+    entries.lazySet(index, new Entry<>(key, value));
+    return value;
+  }
+
+  int size() {
+    int size = 0;
+    for (int i = 0; i < entries.length(); i++) {
+      if (entries.get(i) != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private static final class Entry<K, V> {
+    final K key;
+    final V value;
+
+    Entry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+}
@@ -18,6 +18,7 @@ package org.hypertrace.agent.core.instrumentation.utils;
 
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -29,15 +30,36 @@ public class ContentTypeCharsetUtils {
   // default for HTTP 1.1 https://www.w3.org/International/articles/http-charset/index
   private static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
 
+  private static final int MAX_CACHED_CHARSETS = 64;
+  private static final BoundedCache<String, Charset> CACHE =
+      new BoundedCache<>(MAX_CACHED_CHARSETS);
+  // unsupported names are cached, but might be evicted by other names and logged again
+  private static final int MAX_LOGGED_ERRORS = 64;
+  private static final AtomicInteger loggedErrors = new AtomicInteger();
+
   public static Charset toCharset(String charsetName) {
     if (charsetName == null || charsetName.isEmpty()) {
       return DEFAULT_CHARSET;
     }
+    return CACHE.get(charsetName, ContentTypeCharsetUtils::forName);
+  }
+
+  private static Charset forName(String charsetName) {
     try {
       return Charset.forName(charsetName);
     } catch (Exception e) {
-      log.error(
-          "Could not parse encoding {} to charset, using default {}", charsetName, DEFAULT_CHARSET);
+      if (loggedErrors.get() >= MAX_LOGGED_ERRORS
+          || loggedErrors.incrementAndGet() > MAX_LOGGED_ERRORS) {
+        log.debug(
+            "Could not parse encoding {} to charset, using default {}",
+            charsetName,
+            DEFAULT_CHARSET);
+      } else {
+        log.error(
+            "Could not parse encoding {} to charset, using default {}",
+            charsetName,
+            DEFAULT_CHARSET);
+      }
     }
     return DEFAULT_CHARSET;
   }
@@ -16,12 +16,24 @@
 
 package org.hypertrace.agent.core.instrumentation.utils;
 
+import java.util.ArrayList;
+import java.util.List;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+
 public class ContentTypeUtils {
 
   private ContentTypeUtils() {}
 
   private static final String CHARSET_EQUALS = "charset=";
 
+  // real traffic uses a few dozen distinct content types
+  private static final int MAX_CACHED_CONTENT_TYPES = 256;
+  private static final String DEFAULT_CAPTURED_CONTENT_TYPES = "json,graphql,x-www-form-urlencoded";
+
+  private static final String[] CAPTURED_CONTENT_TYPES = capturedContentTypes();
+  private static final BoundedCache<String, ParsedContentType> CACHE =
+      new BoundedCache<>(MAX_CACHED_CONTENT_TYPES);
+
   /**
    * Returns true if the request/response with this content type should be captured.
    *
@@ -32,27 +44,65 @@ public class ContentTypeUtils {
     if (contentType == null) {
       return false;
     }
-    contentType = contentType.toLowerCase();
-    return contentType.contains("json")
-        || contentType.contains("graphql")
-        || contentType.contains("x-www-form-urlencoded");
+    return parse(contentType).shouldCapture();
   }
 
   public static String parseCharset(String contentType) {
     if (contentType == null) {
       return null;
     }
+    return parse(contentType).getCharsetName();
+  }
 
-    contentType = contentType.toLowerCase();
-    int indexOfCharset = contentType.indexOf(CHARSET_EQUALS);
-    if (indexOfCharset == -1) {
-      return null;
+  /**
+   * Parses the content type header value. Results are cached by the raw header value, therefore
+   * repeated calls with the same value do not allocate.
+   *
+   * @param contentType request or response content type, not null
+   */
+  public static ParsedContentType parse(String contentType) {
+    return CACHE.get(contentType, ContentTypeUtils::doParse);
+  }
+
+  private static ParsedContentType doParse(String contentType) {
+    String lowerCase = contentType.toLowerCase();
+
+    boolean shouldCapture = false;
+    for (String captured : CAPTURED_CONTENT_TYPES) {
+      if (lowerCase.contains(captured)) {
+        shouldCapture = true;
+        break;
+      }
+    }
+
+    int indexOfParameters = lowerCase.indexOf(';');
+    String mediaType =
+        (indexOfParameters == -1 ? lowerCase : lowerCase.substring(0, indexOfParameters)).trim();
+
+    String charsetName = null;
+    int indexOfCharset = lowerCase.indexOf(CHARSET_EQUALS);
+    if (indexOfCharset != -1) {
+      int indexOfEncoding = indexOfCharset + CHARSET_EQUALS.length();
+      if (indexOfEncoding < lowerCase.length()) {
+        charsetName = lowerCase.substring(indexOfEncoding);
+      }
     }
+    return new ParsedContentType(
+        mediaType, shouldCapture, charsetName, ContentTypeCharsetUtils.toCharset(charsetName));
+  }
 
-    int indexOfEncoding = indexOfCharset + CHARSET_EQUALS.length();
-    if (indexOfEncoding < contentType.length()) {
-      return contentType.substring(indexOfEncoding, contentType.length());
+  private static String[] capturedContentTypes() {
+    String property = EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_CONTENT_TYPES);
+    if (property == null || property.trim().isEmpty()) {
+      property = DEFAULT_CAPTURED_CONTENT_TYPES;
+    }
+    List<String> contentTypes = new ArrayList<>();
+    for (String contentType : property.split(",")) {
+      contentType = contentType.trim().toLowerCase();
+      if (!contentType.isEmpty()) {
+        contentTypes.add(contentType);
+      }
     }
-    return null;
+    return contentTypes.toArray(new String[0]);
   }
 }
@@ -0,0 +1,55 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.nio.charset.Charset;
+
+/** Content type header value parsed by {@link ContentTypeUtils#parse(String)}. */
+public final class ParsedContentType {
+
+  private final String mediaType;
+  private final boolean shouldCapture;
+  private final String charsetName;
+  private final Charset charset;
+
+  ParsedContentType(String mediaType, boolean shouldCapture, String charsetName, Charset charset) {
+    this.mediaType = mediaType;
+    this.shouldCapture = shouldCapture;
+    this.charsetName = charsetName;
+    this.charset = charset;
+  }
+
+  /** Lower case media type without parameters, e.g. {@code application/json}. */
+  public String getMediaType() {
+    return mediaType;
+  }
+
+  /** Whether the body with this content type should be captured. */
+  public boolean shouldCapture() {
+    return shouldCapture;
+  }
+
+  /** Charset parameter or null if the header does not specify it. */
+  public String getCharsetName() {
+    return charsetName;
+  }
+
+  /** Charset to decode the body with, the default charset if it is missing or not supported. */
+  public Charset getCharset() {
+    return charset;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import org.hypertrace.agent.config.Config.AgentConfig;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CaptureSettingsTest {
+
+  @Test
+  public void fromConfig() throws IOException {
+    URL resource = getClass().getClassLoader().getResource("config.yaml");
+    AgentConfig agentConfig = HypertraceConfig.load(resource.getPath());
+
+    CaptureSettings captureSettings = CaptureSettings.from(agentConfig);
+    Assertions.assertEquals(16, captureSettings.getBodyMaxSizeBytes());
+    Assertions.assertTrue(captureSettings.captureHttpRequestHeaders());
+    Assertions.assertFalse(captureSettings.captureHttpResponseHeaders());
+    Assertions.assertEquals(
+        agentConfig.getDataCapture().getHttpBody().getRequest().getValue(),
+        captureSettings.captureHttpRequestBody());
+    Assertions.assertEquals(
+        agentConfig.getDataCapture().getRpcBody().getResponse().getValue(),
+        captureSettings.captureRpcResponseBody());
+  }
+
+  @Test
+  public void reload(@TempDir File tempFolder) throws IOException {
+    File configFile = new File(tempFolder, "config.yaml");
+    writeConfig(configFile, "dataCapture:\n  httpBody:\n    response: true\n");
+    HypertraceConfig.reload(configFile.getAbsolutePath());
+    CaptureSettings captureSettings = CaptureSettings.get();
+    Assertions.assertTrue(captureSettings.captureHttpResponseBody());
+
+    writeConfig(configFile, "dataCapture:\n  httpBody:\n    response: false\n");
+    HypertraceConfig.reload(configFile.getAbsolutePath());
+    Assertions.assertFalse(CaptureSettings.get().captureHttpResponseBody());
+    // the old snapshot does not change
+    Assertions.assertTrue(captureSettings.captureHttpResponseBody());
+
+    // keep the current config if the file is broken or missing
+    writeConfig(configFile, "dataCapture: [");
+    HypertraceConfig.reload(configFile.getAbsolutePath());
+    Assertions.assertTrue(configFile.delete());
+    HypertraceConfig.reload(configFile.getAbsolutePath());
+    Assertions.assertFalse(CaptureSettings.get().captureHttpResponseBody());
+    HypertraceConfig.reset();
+  }
+
+  @Test
+  public void resetWithConfig() {
+    CaptureSettings captureSettings = CaptureSettings.get();
+    Assertions.assertSame(captureSettings, CaptureSettings.get());
+    HypertraceConfig.reset();
+    Assertions.assertNotSame(captureSettings, CaptureSettings.get());
+  }
+
+  private static void writeConfig(File file, String content) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      outputStream.write(content.getBytes(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import io.opentelemetry.api.common.AttributeKey;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class AttributeKeyCacheTest {
+
+  @Test
+  public void caseInsensitiveHit() {
+    AttributeKeyCache cache = new AttributeKeyCache("prefix.", 16);
+    AttributeKey<String> key = cache.get("Content-Type");
+    Assertions.assertEquals("prefix.content-type", key.getKey());
+    Assertions.assertSame(key, cache.get("content-type"));
+    Assertions.assertSame(key, cache.get("CONTENT-TYPE"));
+  }
+
+  @Test
+  public void evictsOnCollision() {
+    AttributeKeyCache cache = new AttributeKeyCache("prefix.", 1);
+    AttributeKey<String> first = cache.get("first");
+    Assertions.assertEquals("prefix.second", cache.get("second").getKey());
+    AttributeKey<String> evicted = cache.get("first");
+    Assertions.assertEquals(first, evicted);
+    Assertions.assertNotSame(first, evicted);
+  }
+
+  @Test
+  public void notCached() {
+    AttributeKeyCache cache = new AttributeKeyCache("prefix.", 16);
+    String nonAscii = "X-\u00c9t\u00e9";
+    Assertions.assertEquals("prefix.x-\u00e9t\u00e9", cache.get(nonAscii).getKey());
+    Assertions.assertNotSame(cache.get(nonAscii), cache.get(nonAscii));
+
+    StringBuilder longName = new StringBuilder();
+    for (int i = 0; i <= AttributeKeyCache.MAX_NAME_LENGTH; i++) {
+      longName.append('a');
+    }
+    Assertions.assertNotSame(cache.get(longName.toString()), cache.get(longName.toString()));
+  }
+}
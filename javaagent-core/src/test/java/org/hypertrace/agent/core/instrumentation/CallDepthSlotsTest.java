@@ -0,0 +1,64 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CallDepthSlotsTest {
+
+  @Test
+  public void nestedCalls() {
+    int slot = CallDepthSlots.INPUT_STREAM;
+    Assertions.assertEquals(0, CallDepthSlots.increment(slot));
+    Assertions.assertEquals(1, CallDepthSlots.increment(slot));
+    // other slots are independent
+    Assertions.assertEquals(0, CallDepthSlots.get(CallDepthSlots.OUTPUT_STREAM));
+    Assertions.assertEquals(1, CallDepthSlots.decrement(slot));
+    Assertions.assertEquals(0, CallDepthSlots.decrement(slot));
+
+    CallDepthSlots.increment(slot);
+    CallDepthSlots.reset(slot);
+    Assertions.assertEquals(0, CallDepthSlots.get(slot));
+  }
+
+  @Test
+  public void slotAllocatedLater() {
+    // creates the array of this thread
+    CallDepthSlots.get(CallDepthSlots.INPUT_STREAM);
+    int slot = 0;
+    for (int i = 0; i < 32; i++) {
+      slot = CallDepthSlots.newSlot();
+    }
+    Assertions.assertEquals(0, CallDepthSlots.increment(slot));
+    Assertions.assertEquals(1, CallDepthSlots.get(slot));
+    Assertions.assertEquals(0, CallDepthSlots.decrement(slot));
+  }
+
+  @Test
+  public void threadsAreIndependent() throws InterruptedException {
+    CallDepthSlots.increment(CallDepthSlots.PRINT_WRITER);
+    AtomicInteger otherThreadDepth = new AtomicInteger(-1);
+    Thread thread =
+        new Thread(() -> otherThreadDepth.set(CallDepthSlots.get(CallDepthSlots.PRINT_WRITER)));
+    thread.start();
+    thread.join();
+    Assertions.assertEquals(0, otherThreadDepth.get());
+    CallDepthSlots.decrement(CallDepthSlots.PRINT_WRITER);
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SpanCompleterTest {
+
+  @Test
+  public void runsOnWorker() throws InterruptedException {
+    SpanCompleter completer = new SpanCompleter(10);
+    try {
+      AtomicReference<String> threadName = new AtomicReference<>();
+      CountDownLatch done = new CountDownLatch(1);
+      Assertions.assertTrue(
+          completer.submit(
+              () -> {
+                threadName.set(Thread.currentThread().getName());
+                done.countDown();
+              }));
+
+      Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+      Assertions.assertEquals("hypertrace-span-completer", threadName.get());
+    } finally {
+      completer.stop();
+    }
+  }
+
+  @Test
+  public void rejectsWhenFull() throws InterruptedException {
+    SpanCompleter completer = new SpanCompleter(1);
+    try {
+      CountDownLatch started = new CountDownLatch(1);
+      CountDownLatch release = new CountDownLatch(1);
+      Assertions.assertTrue(
+          completer.submit(
+              () -> {
+                started.countDown();
+                awaitQuietly(release);
+              }));
+      Assertions.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+      // the worker is busy, the second completion waits in the queue
+      CountDownLatch done = new CountDownLatch(1);
+      Assertions.assertTrue(completer.submit(done::countDown));
+      Assertions.assertFalse(completer.submit(() -> {}));
+      Assertions.assertEquals(1, completer.getRejected());
+
+      release.countDown();
+      Assertions.assertTrue(done.await(5, TimeUnit.SECONDS));
+      Assertions.assertEquals(0, completer.getQueueSize());
+      Assertions.assertTrue(completer.submit(() -> {}));
+    } finally {
+      completer.stop();
+    }
+  }
+
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class StreamRegistryTest {
+
+  @Test
+  public void putGetRemove() {
+    StreamRegistry<InputStream, String> registry = new StreamRegistry<>();
+    InputStream stream = new ByteArrayInputStream(new byte[0]);
+    Assertions.assertFalse(registry.isArmed(stream));
+
+    registry.put(stream, "value");
+    Assertions.assertTrue(registry.isArmed(stream));
+    Assertions.assertEquals("value", registry.get(stream));
+    Assertions.assertEquals(1, registry.getRegisteredCount());
+
+    registry.remove(stream);
+    Assertions.assertNull(registry.get(stream));
+    Assertions.assertFalse(registry.isArmed(stream));
+    // removing twice does not count down
+    registry.remove(stream);
+    Assertions.assertEquals(0, registry.getRegisteredCount());
+  }
+
+  @Test
+  public void collectedStreamsAreCountedDown() throws InterruptedException {
+    StreamRegistry<InputStream, String> registry = new StreamRegistry<>();
+    InputStream retained = new ByteArrayInputStream(new byte[0]);
+    registry.put(retained, "retained");
+    for (int i = 0; i < 10; i++) {
+      registry.put(new ByteArrayInputStream(new byte[0]), "collected");
+    }
+
+    for (int i = 0; i < 100 && registry.getRegisteredCount() > 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+      registry.reap(System.nanoTime());
+    }
+    Assertions.assertEquals(1, registry.getRegisteredCount());
+    Assertions.assertEquals("retained", registry.remove(retained));
+    Assertions.assertFalse(registry.isArmed(retained));
+  }
+
+  @Test
+  public void otherClassesNotArmed() {
+    StreamRegistry<InputStream, String> registry = new StreamRegistry<>();
+    registry.put(new ByteArrayInputStream(new byte[0]), "value");
+
+    Assertions.assertTrue(registry.isArmed(new ByteArrayInputStream(new byte[0])));
+    InputStream other =
+        new InputStream() {
+          @Override
+          public int read() {
+            return -1;
+          }
+        };
+    Assertions.assertFalse(registry.isArmed(other));
+    Assertions.assertNull(registry.get(other));
+  }
+
+  @Test
+  public void reapExpired() {
+    List<String> reaped = new ArrayList<>();
+    StreamRegistry<InputStream, String> registry =
+        new StreamRegistry<>(TimeUnit.SECONDS.toNanos(10), 100, reaped::add);
+    InputStream stream = new ByteArrayInputStream(new byte[0]);
+    registry.put(stream, "value");
+
+    Assertions.assertEquals(0, registry.reap(System.nanoTime()));
+    Assertions.assertEquals("value", registry.get(stream));
+
+    Assertions.assertEquals(1, registry.reap(System.nanoTime() + TimeUnit.SECONDS.toNanos(11)));
+    Assertions.assertEquals(Arrays.asList("value"), reaped);
+    Assertions.assertEquals(1, registry.getReapedEntries());
+    Assertions.assertEquals(0, registry.getRegisteredCount());
+    // the reaper owns the value, the stream does not see it anymore
+    Assertions.assertNull(registry.remove(stream));
+  }
+
+  @Test
+  public void reapOldestAboveMaxEntries() throws InterruptedException {
+    List<String> reaped = new ArrayList<>();
+    StreamRegistry<InputStream, String> registry =
+        new StreamRegistry<>(TimeUnit.SECONDS.toNanos(10), 2, reaped::add);
+    InputStream first = new ByteArrayInputStream(new byte[0]);
+    InputStream second = new ByteArrayInputStream(new byte[0]);
+    InputStream third = new ByteArrayInputStream(new byte[0]);
+    registry.put(first, "first");
+    TimeUnit.MILLISECONDS.sleep(1);
+    registry.put(second, "second");
+    TimeUnit.MILLISECONDS.sleep(1);
+    registry.put(third, "third");
+
+    Assertions.assertEquals(1, registry.reap(System.nanoTime()));
+    Assertions.assertEquals(Arrays.asList("first"), reaped);
+    Assertions.assertNull(registry.get(first));
+    Assertions.assertEquals("second", registry.remove(second));
+    Assertions.assertEquals("third", registry.remove(third));
+    Assertions.assertEquals(1, registry.getReapedEntries());
+  }
+}
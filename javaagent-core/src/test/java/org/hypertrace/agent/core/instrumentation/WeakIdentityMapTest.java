@@ -0,0 +1,130 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WeakIdentityMapTest {
+
+  @Test
+  public void putGetRemove() {
+    WeakIdentityMap<String, String> map = new WeakIdentityMap<>();
+    String key = new String("key");
+
+    Assertions.assertNull(map.put(key, "first"));
+    Assertions.assertEquals("first", map.put(key, "second"));
+    Assertions.assertEquals("second", map.get(key));
+    // keys are compared by identity
+    Assertions.assertNull(map.get(new String("key")));
+    Assertions.assertEquals(1, map.size());
+
+    Assertions.assertEquals("second", map.remove(key));
+    Assertions.assertNull(map.get(key));
+    Assertions.assertNull(map.remove(key));
+    Assertions.assertEquals(0, map.size());
+  }
+
+  @Test
+  public void resize() {
+    WeakIdentityMap<Object, Integer> map = new WeakIdentityMap<>(2);
+    List<Object> keys = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      Object key = new Object();
+      keys.add(key);
+      map.put(key, i);
+    }
+    for (int i = 0; i < keys.size(); i++) {
+      Assertions.assertEquals(i, map.get(keys.get(i)));
+    }
+    for (int i = 0; i < keys.size(); i += 2) {
+      map.remove(keys.get(i));
+    }
+    Assertions.assertEquals(500, map.size());
+    for (int i = 0; i < keys.size(); i++) {
+      Assertions.assertEquals(i % 2 == 0 ? null : Integer.valueOf(i), map.get(keys.get(i)));
+    }
+  }
+
+  @Test
+  public void expungeCollectedKeys() throws InterruptedException {
+    WeakIdentityMap<Object, Object> map = new WeakIdentityMap<>();
+    Object retained = new Object();
+    map.put(retained, "retained");
+    for (int i = 0; i < 100; i++) {
+      map.put(new Object(), "collected");
+    }
+
+    for (int i = 0; i < 100 && map.size() > 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+      map.expungeStaleEntries();
+      map.expungeStaleEntries();
+    }
+    Assertions.assertEquals(1, map.size());
+    Assertions.assertEquals("retained", map.get(retained));
+  }
+
+  @Test
+  public void lookupsExpungeCollectedKeys() throws InterruptedException {
+    WeakIdentityMap<Object, Object> map = new WeakIdentityMap<>();
+    Object retained = new Object();
+    map.put(retained, "retained");
+    for (int i = 0; i < 100; i++) {
+      map.put(new Object(), "collected");
+    }
+
+    // a map which is only read after the puts is cleaned up as well
+    for (int i = 0; i < 100 && map.size() > 1; i++) {
+      System.gc();
+      Thread.sleep(10);
+      Assertions.assertEquals("retained", map.get(retained));
+      Assertions.assertEquals("retained", map.get(retained));
+    }
+    Assertions.assertEquals(1, map.size());
+  }
+
+  @Test
+  public void expungeListenerCountsCollectedEntriesOnce() throws InterruptedException {
+    List<Object> expunged = new ArrayList<>();
+    WeakIdentityMap<Object, Object> map = new WeakIdentityMap<>(2, expunged::add);
+    Object retained = new Object();
+    map.put(retained, "retained");
+    int puts = 1;
+    for (int i = 0; i < 100; i++) {
+      map.put(new Object(), "collected");
+      puts++;
+    }
+
+    for (int i = 0; i < 100 && expunged.size() < 100; i++) {
+      System.gc();
+      Thread.sleep(10);
+      // the puts drop collected entries from the chains they copy and from resized tables
+      for (int j = 0; j < 10; j++) {
+        map.put(new Object(), "collected");
+        puts++;
+      }
+      map.expungeStaleEntries();
+    }
+    Assertions.assertTrue(expunged.size() >= 100);
+    Assertions.assertFalse(expunged.contains("retained"));
+    Assertions.assertEquals(puts, map.size() + expunged.size());
+    Assertions.assertEquals("retained", map.get(retained));
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class ArrayPoolTest {
+
+  @Test
+  public void sizeClass() {
+    Assertions.assertEquals(0, ArrayPool.sizeClass(1));
+    Assertions.assertEquals(0, ArrayPool.sizeClass(256));
+    Assertions.assertEquals(1, ArrayPool.sizeClass(257));
+    Assertions.assertEquals(1, ArrayPool.sizeClass(512));
+    Assertions.assertEquals(9, ArrayPool.sizeClass(128 * 1024));
+  }
+
+  @Test
+  public void reuseReleasedArray() {
+    ArrayPool<byte[]> pool = new ArrayPool<>(byte[]::new, array -> array.length, 128 * 1024, 2);
+
+    byte[] array = pool.acquire(300);
+    Assertions.assertEquals(512, array.length);
+    pool.release(array);
+    Assertions.assertSame(array, pool.acquire(400));
+
+    // arrays above the thread cache limit go to the shared pool
+    byte[] large = pool.acquire(100 * 1024);
+    Assertions.assertEquals(128 * 1024, large.length);
+    pool.release(large);
+    Assertions.assertSame(large, pool.acquire(128 * 1024));
+  }
+
+  @Test
+  public void notPooledArrays() {
+    ArrayPool<byte[]> pool = new ArrayPool<>(byte[]::new, array -> array.length, 1024, 2);
+
+    byte[] tooLarge = pool.acquire(2048);
+    Assertions.assertEquals(2048, tooLarge.length);
+    pool.release(tooLarge);
+    Assertions.assertNotSame(tooLarge, pool.acquire(2048));
+
+    byte[] notSizeClass = new byte[300];
+    pool.release(notSizeClass);
+    Assertions.assertNotSame(notSizeClass, pool.acquire(300));
+  }
+
+  @Test
+  public void virtualThreadsUseSharedPool() throws Exception {
+    Method startVirtualThread = virtualThreadStarter();
+    ArrayPool<byte[]> pool = new ArrayPool<>(byte[]::new, array -> array.length, 1024, 2);
+
+    AtomicReference<byte[]> released = new AtomicReference<>();
+    Thread thread =
+        (Thread)
+            startVirtualThread.invoke(
+                null,
+                (Runnable)
+                    () -> {
+                      byte[] array = pool.acquire(300);
+                      pool.release(array);
+                      released.set(array);
+                    });
+    thread.join();
+
+    // not kept in the cache of the virtual thread
+    Assertions.assertSame(released.get(), pool.acquire(300));
+  }
+
+  static Method virtualThreadStarter() {
+    try {
+      return Thread.class.getMethod("startVirtualThread", Runnable.class);
+    } catch (NoSuchMethodException e) {
+      Assumptions.assumeTrue(false, "virtual threads are not supported by this JDK");
+      return null;
+    }
+  }
+}
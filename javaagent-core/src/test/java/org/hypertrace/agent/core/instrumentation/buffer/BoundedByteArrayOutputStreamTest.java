@@ -68,4 +68,19 @@ public class BoundedByteArrayOutputStreamTest {
     Assertions.assertEquals(5, boundedBuffer.size());
     Assertions.assertEquals("01234", boundedBuffer.toString());
   }
+
+  @Test
+  public void writeAfterRelease() throws IOException {
+    BoundedByteArrayOutputStream boundedBuffer =
+        new BoundedByteArrayOutputStream(1024, DEFAULT_CHARSET);
+
+    boundedBuffer.write(ONE_TO_TEN.getBytes());
+    Assertions.assertEquals(ONE_TO_TEN, boundedBuffer.toStringWithSuppliedCharset());
+    boundedBuffer.release();
+    Assertions.assertEquals(0, boundedBuffer.size());
+    boundedBuffer.write(ONE_TO_TEN.getBytes());
+    boundedBuffer.write('0');
+    Assertions.assertEquals(0, boundedBuffer.size());
+    Assertions.assertEquals("", boundedBuffer.toString());
+  }
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import io.opentelemetry.api.trace.Span;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ByteBufferSpanPairTest {
+
+  @Test
+  public void filterBatchIsFullAtBatchSize() {
+    ByteBufferSpanPair pair = newPair();
+    for (int i = 0; i < ByteBufferSpanPair.FILTER_BATCH_SIZE - 1; i++) {
+      Assertions.assertFalse(pair.addToFilterBatch((byte) 'a'));
+    }
+    Assertions.assertTrue(pair.addToFilterBatch((byte) 'a'));
+
+    ByteBuffer batch = pair.takeFilterBatch();
+    Assertions.assertEquals(ByteBufferSpanPair.FILTER_BATCH_SIZE, batch.remaining());
+    Assertions.assertNull(pair.takeFilterBatch());
+  }
+
+  @Test
+  public void takeFilterBatchReturnsRemainder() {
+    ByteBufferSpanPair pair = newPair();
+    Assertions.assertNull(pair.takeFilterBatch());
+
+    pair.addToFilterBatch((byte) 'a');
+    pair.addToFilterBatch((byte) 'b');
+    ByteBuffer batch = pair.takeFilterBatch();
+    Assertions.assertTrue(batch.isReadOnly());
+    Assertions.assertEquals("ab", StandardCharsets.UTF_8.decode(batch).toString());
+
+    pair.addToFilterBatch((byte) 'c');
+    Assertions.assertEquals("c", StandardCharsets.UTF_8.decode(pair.takeFilterBatch()).toString());
+  }
+
+  private static ByteBufferSpanPair newPair() {
+    return new ByteBufferSpanPair(
+        Span.getInvalid(), new BoundedByteArrayOutputStream(16, StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class CaptureMemoryBudgetTest {
+
+  @Test
+  public void reserveAndClose() {
+    CaptureMemoryBudget budget = new CaptureMemoryBudget(1000);
+    CaptureMemoryBudget.Reservation reservation = budget.register(new Object());
+
+    Assertions.assertTrue(budget.tryReserve(reservation, 600));
+    Assertions.assertFalse(budget.tryReserve(reservation, 600));
+    Assertions.assertEquals(600, budget.getUsedBytes());
+    Assertions.assertEquals(1, budget.getRejectedReservations());
+
+    budget.release(reservation, 100);
+    Assertions.assertEquals(500, budget.getUsedBytes());
+    budget.close(reservation);
+    Assertions.assertEquals(0, budget.getUsedBytes());
+    // closing twice does not give the memory back again
+    budget.close(reservation);
+    Assertions.assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  public void captureLimit() {
+    CaptureMemoryBudget budget = new CaptureMemoryBudget(1000);
+    Assertions.assertEquals(800, budget.captureLimit(800));
+    Assertions.assertEquals(0, budget.getLimitedCaptures());
+
+    CaptureMemoryBudget.Reservation reservation = budget.register(new Object());
+    Assertions.assertTrue(budget.tryReserve(reservation, 700));
+    Assertions.assertEquals(300, budget.captureLimit(800));
+    Assertions.assertTrue(budget.tryReserve(reservation, 300));
+    Assertions.assertEquals(0, budget.captureLimit(800));
+    Assertions.assertEquals(2, budget.getLimitedCaptures());
+  }
+}
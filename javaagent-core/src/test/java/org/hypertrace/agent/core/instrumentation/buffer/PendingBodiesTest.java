@@ -0,0 +1,108 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PendingBodiesTest {
+
+  private static final AttributeKey<String> REQUEST_BODY = AttributeKey.stringKey("request");
+  private static final AttributeKey<String> RESPONSE_BODY = AttributeKey.stringKey("response");
+
+  @Test
+  public void takeDecodesAndRemoves() {
+    PendingBodies pendingBodies = new PendingBodies(10);
+    BoundedByteArrayOutputStream request = newBuffer("\u00e9request");
+    BoundedByteArrayOutputStream response = newBuffer("response");
+
+    Assertions.assertTrue(pendingBodies.add("span", REQUEST_BODY, request));
+    Assertions.assertTrue(pendingBodies.add("span", RESPONSE_BODY, response));
+    // the data has been handed over, the owner releases an empty stream
+    Assertions.assertEquals(0, request.size());
+    request.release();
+
+    Attributes bodies = pendingBodies.take("span");
+    Assertions.assertEquals("\u00e9request", bodies.get(REQUEST_BODY));
+    Assertions.assertEquals("response", bodies.get(RESPONSE_BODY));
+    Assertions.assertNull(pendingBodies.take("span"));
+  }
+
+  @Test
+  public void laterBodyReplacesBodyOfSameAttribute() {
+    PendingBodies pendingBodies = new PendingBodies(10);
+    CaptureMemoryBudget budget = CaptureMemoryBudget.get();
+    long usedBytes = budget.getUsedBytes();
+    Assertions.assertTrue(pendingBodies.add("span", REQUEST_BODY, newBuffer("first")));
+    Assertions.assertTrue(budget.getUsedBytes() > usedBytes);
+    Assertions.assertTrue(pendingBodies.add("span", RESPONSE_BODY, newBuffer("response")));
+    long usedByTwoBodies = budget.getUsedBytes() - usedBytes;
+
+    // e.g. the second message of a stream
+    Assertions.assertTrue(pendingBodies.add("span", REQUEST_BODY, newBuffer("secnd")));
+    // the replaced body has been released
+    Assertions.assertEquals(usedByTwoBodies, budget.getUsedBytes() - usedBytes);
+
+    Attributes bodies = pendingBodies.take("span");
+    Assertions.assertEquals(2, bodies.size());
+    Assertions.assertEquals("secnd", bodies.get(REQUEST_BODY));
+    Assertions.assertEquals("response", bodies.get(RESPONSE_BODY));
+    Assertions.assertEquals(usedBytes, budget.getUsedBytes());
+  }
+
+  @Test
+  public void fullTable() {
+    PendingBodies pendingBodies = new PendingBodies(1);
+    Assertions.assertTrue(pendingBodies.add("span1", REQUEST_BODY, newBuffer("first")));
+    BoundedByteArrayOutputStream second = newBuffer("second");
+    Assertions.assertFalse(pendingBodies.add("span2", REQUEST_BODY, second));
+    // not deferred, the owner still holds the data
+    Assertions.assertEquals("second", second.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void takeUsesDecoder() {
+    PendingBodies pendingBodies = new PendingBodies(10);
+    Assertions.assertTrue(
+        pendingBodies.add(
+            "span", REQUEST_BODY, newBuffer("request"), bytes -> "decoded " + bytes.length));
+    Assertions.assertTrue(
+        pendingBodies.add(
+            "span",
+            RESPONSE_BODY,
+            newBuffer("response"),
+            bytes -> {
+              throw new IllegalArgumentException("malformed");
+            }));
+
+    Attributes bodies = pendingBodies.take("span");
+    Assertions.assertEquals("decoded 7", bodies.get(REQUEST_BODY));
+    // a failing decoder drops only its own body
+    Assertions.assertNull(bodies.get(RESPONSE_BODY));
+  }
+
+  private static BoundedByteArrayOutputStream newBuffer(String body) {
+    BoundedByteArrayOutputStream buffer =
+        new BoundedByteArrayOutputStream(100, StandardCharsets.UTF_8);
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    buffer.write(bytes, 0, bytes.length);
+    return buffer;
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SegmentedByteBufferTest {
+
+  @Test
+  public void decodeCharactersSplitBetweenSegments() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 5000; i++) {
+      // 1, 2, 3 and 4 byte UTF-8 sequences
+      sb.append("a\u00e9\u20ac\ud83d\ude00");
+    }
+    String body = sb.toString();
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+
+    SegmentedByteBuffer buffer = new SegmentedByteBuffer(bytes.length, 100);
+    for (int i = 0; i < bytes.length; i += 7) {
+      buffer.write(bytes, i, Math.min(7, bytes.length - i));
+    }
+    Assertions.assertEquals(bytes.length, buffer.size());
+    Assertions.assertEquals(body, buffer.toString(StandardCharsets.UTF_8));
+    Assertions.assertArrayEquals(bytes, buffer.toByteArray());
+  }
+
+  @Test
+  public void boundedCapacity() throws IOException {
+    SegmentedByteBuffer buffer = new SegmentedByteBuffer(SegmentedByteBuffer.SEGMENT_SIZE + 10);
+    byte[] bytes = new byte[SegmentedByteBuffer.SEGMENT_SIZE];
+    buffer.write(bytes, 0, bytes.length);
+    buffer.write(bytes, 0, bytes.length);
+    buffer.write('a');
+    Assertions.assertEquals(SegmentedByteBuffer.SEGMENT_SIZE + 10, buffer.size());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    buffer.writeTo(out);
+    Assertions.assertEquals(SegmentedByteBuffer.SEGMENT_SIZE + 10, out.size());
+  }
+
+  @Test
+  public void writeDirectByteBuffer() {
+    byte[] bytes = new byte[SegmentedByteBuffer.SEGMENT_SIZE + 100];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) i;
+    }
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+
+    SegmentedByteBuffer buffer = new SegmentedByteBuffer(bytes.length - 10, 100);
+    buffer.write(direct);
+    Assertions.assertEquals(bytes.length - 10, buffer.size());
+    Assertions.assertEquals(10, direct.remaining());
+    Assertions.assertEquals(0, buffer.remainingCapacity());
+    Assertions.assertArrayEquals(Arrays.copyOf(bytes, bytes.length - 10), buffer.toByteArray());
+  }
+
+  @Test
+  public void writeAfterRelease() {
+    SegmentedByteBuffer buffer = new SegmentedByteBuffer(100);
+    buffer.write('a');
+    buffer.release();
+    buffer.write('b');
+    Assertions.assertEquals(0, buffer.size());
+    Assertions.assertEquals("", buffer.toString(StandardCharsets.UTF_8));
+  }
+}
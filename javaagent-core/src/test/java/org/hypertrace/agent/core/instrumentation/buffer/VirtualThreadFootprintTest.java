@@ -0,0 +1,104 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.buffer;
+
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.hypertrace.agent.core.instrumentation.CallDepthSlots;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the memory that a capture leaves behind in a virtual thread which is still alive, e.g.
+ * parked in the next blocking call of the request. The state kept per thread is the call depth and
+ * the thread locals of the pool, the pooled arrays must not stay with the thread.
+ */
+public class VirtualThreadFootprintTest {
+
+  private static final int THREADS = 2000;
+  private static final byte[] BODY = new byte[2048];
+
+  @Test
+  public void captureRetainsNoArraysPerThread() throws Exception {
+    Method startVirtualThread = ArrayPoolTest.virtualThreadStarter();
+    // warm up the classes and the shared pool
+    retainedBytesPerThread(startVirtualThread, VirtualThreadFootprintTest::capture);
+
+    long idle = retainedBytesPerThread(startVirtualThread, () -> {});
+    long capturing =
+        retainedBytesPerThread(startVirtualThread, VirtualThreadFootprintTest::capture);
+
+    // an array cached by every thread would add at least the segment size
+    Assertions.assertTrue(
+        capturing - idle < 1024,
+        String.format("capture retains %d bytes per thread", capturing - idle));
+  }
+
+  private static void capture() {
+    CallDepthSlots.increment(CallDepthSlots.INPUT_STREAM);
+    BoundedByteArrayOutputStream buffer =
+        BoundedBuffersFactory.createStream(StandardCharsets.UTF_8);
+    buffer.write(BODY, 0, BODY.length);
+    buffer.toString(StandardCharsets.UTF_8);
+    buffer.release();
+    CallDepthSlots.reset(CallDepthSlots.INPUT_STREAM);
+  }
+
+  /** Starts the threads, lets them run the task and measures the heap while they are parked. */
+  private static long retainedBytesPerThread(Method startVirtualThread, Runnable task)
+      throws Exception {
+    long before = usedHeap();
+    CountDownLatch started = new CountDownLatch(THREADS);
+    CountDownLatch release = new CountDownLatch(1);
+    List<Thread> threads = new ArrayList<>(THREADS);
+    for (int i = 0; i < THREADS; i++) {
+      Runnable runnable =
+          () -> {
+            task.run();
+            started.countDown();
+            try {
+              release.await();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          };
+      threads.add((Thread) startVirtualThread.invoke(null, runnable));
+    }
+    started.await();
+    long after = usedHeap();
+    release.countDown();
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    return (after - before) / THREADS;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    Runtime runtime = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    // the lowest value of a few collections, a single one might not finish the work
+    for (int i = 0; i < 5; i++) {
+      System.gc();
+      Thread.sleep(20);
+      used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+    }
+    return used;
+  }
+}
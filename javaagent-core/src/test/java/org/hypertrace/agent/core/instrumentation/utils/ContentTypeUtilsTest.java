@@ -16,6 +16,7 @@
 
 package org.hypertrace.agent.core.instrumentation.utils;
 
+import java.nio.charset.StandardCharsets;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -58,4 +59,56 @@ class ContentTypeUtilsTest {
     Assertions.assertEquals(
         null, ContentTypeUtils.parseCharset("Content-Type: application/json; charset="));
   }
+
+  @Test
+  public void parse() {
+    ParsedContentType parsed = ContentTypeUtils.parse("Application/JSON; charset=UTF-8");
+    Assertions.assertEquals("application/json", parsed.getMediaType());
+    Assertions.assertTrue(parsed.shouldCapture());
+    Assertions.assertEquals("utf-8", parsed.getCharsetName());
+    Assertions.assertEquals(StandardCharsets.UTF_8, parsed.getCharset());
+    // cached by the raw value
+    Assertions.assertSame(parsed, ContentTypeUtils.parse("Application/JSON; charset=UTF-8"));
+  }
+
+  @Test
+  public void parseUnsupportedCharset() {
+    ParsedContentType parsed = ContentTypeUtils.parse("text/plain; charset=foo-bar");
+    Assertions.assertEquals("text/plain", parsed.getMediaType());
+    Assertions.assertFalse(parsed.shouldCapture());
+    Assertions.assertEquals("foo-bar", parsed.getCharsetName());
+    Assertions.assertEquals(StandardCharsets.ISO_8859_1, parsed.getCharset());
+  }
+
+  @Test
+  public void boundedCache() {
+    BoundedCache<String, String> cache = new BoundedCache<>(1);
+    String first = cache.get("a", String::new);
+    Assertions.assertSame(first, cache.get("a", String::new));
+    // a miss replaces the entry
+    String second = cache.get("b", String::new);
+    Assertions.assertEquals("b", second);
+    Assertions.assertSame(second, cache.get("b", String::new));
+    Assertions.assertNotSame(first, cache.get("a", String::new));
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void junkValuesDoNotDisableCaching() {
+    for (int i = 0; i < 10_000; i++) {
+      ContentTypeUtils.parse("application/json; boundary=" + i);
+      ContentTypeCharsetUtils.toCharset("junk-" + i);
+    }
+
+    ParsedContentType parsed = ContentTypeUtils.parse("application/json; charset=utf-16");
+    Assertions.assertSame(parsed, ContentTypeUtils.parse("application/json; charset=utf-16"));
+    Assertions.assertEquals(StandardCharsets.UTF_16, parsed.getCharset());
+    BoundedCache<String, String> cache = new BoundedCache<>(256);
+    for (int i = 0; i < 10_000; i++) {
+      cache.get("junk-" + i, String::new);
+    }
+    String cached = cache.get("application/json", String::new);
+    Assertions.assertSame(cached, cache.get("application/json", String::new));
+    Assertions.assertEquals(256, cache.size());
+  }
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.core.instrumentation.utils;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+public class VirtualThreadsTest {
+
+  @Test
+  public void platformThread() {
+    Assertions.assertFalse(VirtualThreads.isCurrentThreadVirtual());
+  }
+
+  @Test
+  public void virtualThread() throws Exception {
+    Method startVirtualThread;
+    try {
+      startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+    } catch (NoSuchMethodException e) {
+      Assumptions.assumeTrue(false, "virtual threads are not supported by this JDK");
+      return;
+    }
+    AtomicBoolean virtual = new AtomicBoolean();
+    Thread thread =
+        (Thread)
+            startVirtualThread.invoke(
+                null, (Runnable) () -> virtual.set(VirtualThreads.isCurrentThreadVirtual()));
+    thread.join();
+    Assertions.assertTrue(virtual.get());
+  }
+}
@@ -9,6 +9,8 @@ dependencies {
 
     compileOnly("io.opentelemetry:opentelemetry-sdk:${versions["opentelemetry"]}")
     compileOnly("io.opentelemetry:opentelemetry-sdk-extension-autoconfigure:${versions["opentelemetry"]}-alpha")
+    compileOnly("io.opentelemetry:opentelemetry-exporter-zipkin:${versions["opentelemetry"]}")
+    compileOnly("io.opentelemetry:opentelemetry-exporter-otlp-trace:${versions["opentelemetry"]}")
     implementation("io.opentelemetry:opentelemetry-semconv:${versions["opentelemetry"]}-alpha")
     implementation("io.opentelemetry.javaagent:opentelemetry-javaagent-spi:${versions["opentelemetry_java_agent"]}")
 
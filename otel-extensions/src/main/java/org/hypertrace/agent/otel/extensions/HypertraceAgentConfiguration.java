@@ -27,6 +27,7 @@ import org.hypertrace.agent.config.Config.AgentConfig;
 import org.hypertrace.agent.config.Config.PropagationFormat;
 import org.hypertrace.agent.config.Config.TraceReporterType;
 import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.otel.extensions.exporter.BodyDecodingSpanExporter;
 
 @AutoService(PropertySource.class)
 public class HypertraceAgentConfiguration implements PropertySource {
@@ -51,9 +52,14 @@ public class HypertraceAgentConfiguration implements PropertySource {
 
     Map<String, String> configProperties = new HashMap<>();
     configProperties.put(OTEL_ENABLED, String.valueOf(agentConfig.getEnabled().getValue()));
-    configProperties.put(
-        OTEL_TRACE_EXPORTER,
-        agentConfig.getReporting().getTraceReporterType().name().toLowerCase());
+    if (BodyDecodingSpanExporter.isEnabled(agentConfig)) {
+      // the exporter is created by HypertraceTracerCustomizer
+      configProperties.put(OTEL_TRACE_EXPORTER, "none");
+    } else {
+      configProperties.put(
+          OTEL_TRACE_EXPORTER,
+          agentConfig.getReporting().getTraceReporterType().name().toLowerCase());
+    }
     configProperties.put(
         OTEL_EXPORTER_ZIPKIN_SERVICE_NAME, agentConfig.getServiceName().getValue());
     if (agentConfig.getReporting().getTraceReporterType() == TraceReporterType.ZIPKIN) {
@@ -0,0 +1,205 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.otel.extensions.exporter;
+
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporterBuilder;
+import io.opentelemetry.exporter.zipkin.ZipkinSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.DelegatingSpanData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessorBuilder;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.hypertrace.agent.config.Config.AgentConfig;
+import org.hypertrace.agent.config.Config.TraceReporterType;
+import org.hypertrace.agent.core.config.EnvironmentConfig;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adds the bodies captured in {@link PendingBodies} to the exported spans. The bodies are decoded
+ * here on the exporter thread instead of on the request thread.
+ */
+public class BodyDecodingSpanExporter implements SpanExporter {
+
+  private static final Logger log = LoggerFactory.getLogger(BodyDecodingSpanExporter.class);
+
+  // the properties read by the SDK autoconfiguration for the exporter it would have created
+  static final String OTEL_EXPORTER_ZIPKIN_ENDPOINT = "otel.exporter.zipkin.endpoint";
+  static final String OTEL_EXPORTER_OTLP_ENDPOINT = "otel.exporter.otlp.endpoint";
+  static final String OTEL_EXPORTER_OTLP_HEADERS = "otel.exporter.otlp.headers";
+  static final String OTEL_EXPORTER_OTLP_TIMEOUT = "otel.exporter.otlp.timeout";
+  static final String OTEL_BSP_SCHEDULE_DELAY = "otel.bsp.schedule.delay";
+  static final String OTEL_BSP_MAX_QUEUE_SIZE = "otel.bsp.max.queue.size";
+  static final String OTEL_BSP_MAX_EXPORT_BATCH_SIZE = "otel.bsp.max.export.batch.size";
+  static final String OTEL_BSP_EXPORT_TIMEOUT = "otel.bsp.export.timeout";
+
+  private final SpanExporter delegate;
+  private final PendingBodies pendingBodies;
+
+  public BodyDecodingSpanExporter(SpanExporter delegate) {
+    this(delegate, PendingBodies.get());
+  }
+
+  BodyDecodingSpanExporter(SpanExporter delegate, PendingBodies pendingBodies) {
+    this.delegate = delegate;
+    this.pendingBodies = pendingBodies;
+  }
+
+  /**
+   * Returns true if bodies should be decoded by this exporter. The OTEL exporter and its batch span
+   * processor are created by {@link #createSpanProcessor(AgentConfig)} in that case, because the
+   * exporter configured by the SDK autoconfiguration cannot be decorated.
+   */
+  public static boolean isEnabled(AgentConfig agentConfig) {
+    TraceReporterType reporterType = agentConfig.getReporting().getTraceReporterType();
+    return (reporterType == TraceReporterType.ZIPKIN || reporterType == TraceReporterType.OTLP)
+        && Boolean.parseBoolean(
+            EnvironmentConfig.getProperty(EnvironmentConfig.CAPTURE_BODY_DEFERRED_DECODING));
+  }
+
+  /**
+   * Creates the batch span processor and the exporter from the same {@code otel.*} properties as
+   * the SDK autoconfiguration, so that the settings of the user apply in the deferred mode as well.
+   */
+  public static SpanProcessor createSpanProcessor(AgentConfig agentConfig) {
+    Function<String, String> properties = EnvironmentConfig::getProperty;
+    return createSpanProcessor(
+        new BodyDecodingSpanExporter(createExporter(agentConfig, properties)), properties);
+  }
+
+  static SpanProcessor createSpanProcessor(
+      SpanExporter exporter, Function<String, String> properties) {
+    BatchSpanProcessorBuilder builder = BatchSpanProcessor.builder(exporter);
+    Long scheduleDelay = longProperty(properties, OTEL_BSP_SCHEDULE_DELAY);
+    if (scheduleDelay != null) {
+      builder.setScheduleDelay(scheduleDelay, TimeUnit.MILLISECONDS);
+    }
+    Long maxQueueSize = longProperty(properties, OTEL_BSP_MAX_QUEUE_SIZE);
+    if (maxQueueSize != null) {
+      builder.setMaxQueueSize(maxQueueSize.intValue());
+    }
+    Long maxExportBatchSize = longProperty(properties, OTEL_BSP_MAX_EXPORT_BATCH_SIZE);
+    if (maxExportBatchSize != null) {
+      builder.setMaxExportBatchSize(maxExportBatchSize.intValue());
+    }
+    Long exportTimeout = longProperty(properties, OTEL_BSP_EXPORT_TIMEOUT);
+    if (exportTimeout != null) {
+      builder.setExporterTimeout(exportTimeout, TimeUnit.MILLISECONDS);
+    }
+    return builder.build();
+  }
+
+  static SpanExporter createExporter(
+      AgentConfig agentConfig, Function<String, String> properties) {
+    // HypertraceAgentConfiguration sets the endpoints from the agent config unless overridden
+    String defaultEndpoint = agentConfig.getReporting().getEndpoint().getValue();
+    if (agentConfig.getReporting().getTraceReporterType() == TraceReporterType.ZIPKIN) {
+      return ZipkinSpanExporter.builder()
+          .setEndpoint(stringProperty(properties, OTEL_EXPORTER_ZIPKIN_ENDPOINT, defaultEndpoint))
+          .build();
+    }
+    OtlpGrpcSpanExporterBuilder builder =
+        OtlpGrpcSpanExporter.builder()
+            .setEndpoint(stringProperty(properties, OTEL_EXPORTER_OTLP_ENDPOINT, defaultEndpoint));
+    String headers = properties.apply(OTEL_EXPORTER_OTLP_HEADERS);
+    if (headers != null) {
+      for (String header : headers.split(",")) {
+        int equals = header.indexOf('=');
+        if (equals > 0) {
+          String name = header.substring(0, equals).trim();
+          builder.addHeader(name, header.substring(equals + 1).trim());
+        }
+      }
+    }
+    Long timeout = longProperty(properties, OTEL_EXPORTER_OTLP_TIMEOUT);
+    if (timeout != null) {
+      builder.setTimeout(timeout, TimeUnit.MILLISECONDS);
+    }
+    return builder.build();
+  }
+
+  private static String stringProperty(
+      Function<String, String> properties, String name, String defaultValue) {
+    String value = properties.apply(name);
+    return value == null || value.isEmpty() ? defaultValue : value;
+  }
+
+  private static Long longProperty(Function<String, String> properties, String name) {
+    String value = properties.apply(name);
+    if (value == null || value.isEmpty()) {
+      return null;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      log.warn("Invalid value {} of {}, using the default", value, name);
+      return null;
+    }
+  }
+
+  @Override
+  public CompletableResultCode export(Collection<SpanData> spans) {
+    List<SpanData> decoded = new ArrayList<>(spans.size());
+    for (SpanData span : spans) {
+      Attributes bodies = pendingBodies.take(span.getSpanId());
+      decoded.add(bodies == null ? span : new SpanDataWithBodies(span, bodies));
+    }
+    return delegate.export(decoded);
+  }
+
+  @Override
+  public CompletableResultCode flush() {
+    return delegate.flush();
+  }
+
+  @Override
+  public CompletableResultCode shutdown() {
+    return delegate.shutdown();
+  }
+
+  static class SpanDataWithBodies extends DelegatingSpanData {
+
+    private final Attributes attributes;
+    private final int totalAttributeCount;
+
+    SpanDataWithBodies(SpanData delegate, Attributes bodies) {
+      super(delegate);
+      this.attributes = delegate.getAttributes().toBuilder().putAll(bodies).build();
+      this.totalAttributeCount = delegate.getTotalAttributeCount() + bodies.size();
+    }
+
+    @Override
+    public Attributes getAttributes() {
+      return attributes;
+    }
+
+    @Override
+    public int getTotalAttributeCount() {
+      return totalAttributeCount;
+    }
+  }
+}
@@ -19,6 +19,10 @@ package org.hypertrace.agent.otel.extensions.processor;
 import com.google.auto.service.AutoService;
 import io.opentelemetry.sdk.autoconfigure.spi.SdkTracerProviderConfigurer;
 import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
+import org.hypertrace.agent.config.Config.AgentConfig;
+import org.hypertrace.agent.core.config.HypertraceConfig;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
+import org.hypertrace.agent.otel.extensions.exporter.BodyDecodingSpanExporter;
 
 /**
  * This is a workaround to add container ID tags to spans when Zipkin exporter is used. Zipkin
@@ -27,6 +31,9 @@ import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
  *
  * <p>Remove this once we migrate to OTEL exporter
  * https://github.com/hypertrace/javaagent/issues/132
+ *
+ * <p>It also installs the exporter which decodes deferred bodies, see {@link
+ * BodyDecodingSpanExporter}.
  */
 @AutoService(SdkTracerProviderConfigurer.class)
 public class HypertraceTracerCustomizer implements SdkTracerProviderConfigurer {
@@ -34,5 +41,12 @@ public class HypertraceTracerCustomizer implements SdkTracerProviderConfigurer {
   @Override
   public void configure(SdkTracerProviderBuilder tracerProvider) {
     tracerProvider.addSpanProcessor(new AddTagsSpanProcessor());
+
+    AgentConfig agentConfig = HypertraceConfig.get();
+    if (BodyDecodingSpanExporter.isEnabled(agentConfig)) {
+      // the exporter is disabled in HypertraceAgentConfiguration and added here
+      tracerProvider.addSpanProcessor(BodyDecodingSpanExporter.createSpanProcessor(agentConfig));
+      PendingBodies.enable();
+    }
   }
 }
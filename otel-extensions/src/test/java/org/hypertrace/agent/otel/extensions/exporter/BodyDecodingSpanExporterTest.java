@@ -0,0 +1,94 @@
+/*
+ * Copyright The Hypertrace Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.hypertrace.agent.otel.extensions.exporter;
+
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedBuffersFactory;
+import org.hypertrace.agent.core.instrumentation.buffer.BoundedByteArrayOutputStream;
+import org.hypertrace.agent.core.instrumentation.buffer.PendingBodies;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BodyDecodingSpanExporterTest {
+
+  private static final AttributeKey<String> BODY = AttributeKey.stringKey("body");
+
+  @Test
+  public void deferredBodyIsExported() {
+    CapturingExporter exporter = new CapturingExporter();
+    Map<String, String> properties = new HashMap<>();
+    properties.put(BodyDecodingSpanExporter.OTEL_BSP_SCHEDULE_DELAY, "10");
+    // invalid values fall back to the defaults
+    properties.put(BodyDecodingSpanExporter.OTEL_BSP_MAX_QUEUE_SIZE, "many");
+    SdkTracerProvider tracerProvider =
+        SdkTracerProvider.builder()
+            .addSpanProcessor(
+                BodyDecodingSpanExporter.createSpanProcessor(
+                    new BodyDecodingSpanExporter(exporter), properties::get))
+            .build();
+    PendingBodies.enable();
+
+    Span span = tracerProvider.get("test").spanBuilder("deferred").startSpan();
+    BoundedByteArrayOutputStream buffer =
+        BoundedBuffersFactory.createStream(StandardCharsets.UTF_8);
+    byte[] body = "{\"key\": \"\u00e9\"}".getBytes(StandardCharsets.UTF_8);
+    buffer.write(body, 0, body.length);
+    Assertions.assertTrue(PendingBodies.defer(span, BODY, buffer));
+    buffer.release();
+    span.end();
+
+    Assertions.assertTrue(tracerProvider.forceFlush().join(10, TimeUnit.SECONDS).isSuccess());
+    Assertions.assertEquals(1, exporter.spans.size());
+    SpanData spanData = exporter.spans.get(0);
+    Assertions.assertEquals("{\"key\": \"\u00e9\"}", spanData.getAttributes().get(BODY));
+    Assertions.assertEquals(1, spanData.getTotalAttributeCount());
+    Assertions.assertNull(PendingBodies.get().take(spanData.getSpanId()));
+    tracerProvider.shutdown();
+  }
+
+  static class CapturingExporter implements SpanExporter {
+    final List<SpanData> spans = new CopyOnWriteArrayList<>();
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      this.spans.addAll(spans);
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+}
@@ -30,7 +30,9 @@ import io.opentelemetry.sdk.trace.ReadWriteSpan;
 import io.opentelemetry.sdk.trace.ReadableSpan;
 import io.opentelemetry.sdk.trace.SpanProcessor;
 import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -43,6 +45,7 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.hypertrace.agent.otel.extensions.exporter.BodyDecodingSpanExporter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -63,6 +66,8 @@ public class InMemoryExporter implements SpanProcessor {
 
   private volatile boolean forceFlushCalled;
 
+  private final SpanExporter bodyDecodingExporter = new BodyDecodingSpanExporter(new Recorder());
+
   @Override
   public void onStart(Context context, ReadWriteSpan readWriteSpan) {
     SpanData sd = readWriteSpan.toSpanData();
@@ -96,7 +101,11 @@ public class InMemoryExporter implements SpanProcessor {
         sd.getParentSpanId(),
         sd.getInstrumentationLibraryInfo(),
         printSpanAttributes(sd));
-    SpanData span = readableSpan.toSpanData();
+    // the bodies deferred to the export are added the same way as by the agent's exporter
+    bodyDecodingExporter.export(Collections.singletonList(readableSpan.toSpanData()));
+  }
+
+  private void record(SpanData span) {
     synchronized (tracesLock) {
       if (!spanOrders.containsKey(span.getSpanId())) {
         // this happens on some tests where there are sporadic background traces,
@@ -361,6 +370,27 @@ public class InMemoryExporter implements SpanProcessor {
     return false;
   }
 
+  private class Recorder implements SpanExporter {
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+      for (SpanData span : spans) {
+        record(span);
+      }
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+      return CompletableResultCode.ofSuccess();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+      return CompletableResultCode.ofSuccess();
+    }
+  }
+
   private static class Node {
 
     private final SpanData span;